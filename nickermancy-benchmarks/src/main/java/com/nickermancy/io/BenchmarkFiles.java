@@ -0,0 +1,54 @@
+package com.nickermancy.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+/**
+ * Creates the files read by the benchmarks, in memory where possible, so that the benchmarks measure hashing and the
+ * cost of the I/O paths rather than the speed of a disk.
+ * <p>
+ * Files are created under the directory given by the {@code nickermancy.benchmarks.dir} system property, or else
+ * under {@code /dev/shm} if it is a writable tmpfs, or else under the temporary directory.
+ */
+final class BenchmarkFiles {
+
+    private static final int WRITE_BUFFER_SIZE = 1024 * 1024;
+
+    /**
+     * Creates a file of random bytes, which is deleted when the JVM exits if it has not been deleted before.
+     *
+     * @param size the size of the file, in bytes
+     */
+    static Path create(long size) throws IOException {
+        final var file = Files.createTempFile(directory(), "benchmark-", ".bin");
+        file.toFile().deleteOnExit();
+        final var random = new Random(size);
+        final var bytes = new byte[WRITE_BUFFER_SIZE];
+        try (final var channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            var remaining = size;
+            while (remaining > 0) {
+                random.nextBytes(bytes);
+                final var buffer = ByteBuffer.wrap(bytes, 0, (int) Math.min(bytes.length, remaining));
+                while (buffer.hasRemaining()) {
+                    remaining -= channel.write(buffer);
+                }
+            }
+        }
+        return file;
+    }
+
+    private static Path directory() {
+        final var property = System.getProperty("nickermancy.benchmarks.dir");
+        if (property != null) return Path.of(property);
+        final var shm = Path.of("/dev/shm");
+        return Files.isDirectory(shm) && Files.isWritable(shm) ? shm : Path.of(System.getProperty("java.io.tmpdir"));
+    }
+
+    private BenchmarkFiles() {
+    }
+}
@@ -0,0 +1,69 @@
+package com.nickermancy.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures the time to hash a file read through a channel into heap and direct buffers of several sizes. A direct
+ * buffer is read into without a copy, but is hashed through a copy into the heap when the digest has no intrinsic for
+ * direct buffers.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class DigestBufferBenchmarks {
+
+    @Param("67108864")
+    long fileSize;
+
+    @Param({"4096", "16384", "65536", "262144", "1048576"})
+    int bufferSize;
+
+    @Param({"false", "true"})
+    boolean direct;
+
+    @Param("SHA-256")
+    String algorithm;
+
+    private Path file;
+    private MessageDigest digest;
+    private ByteBuffer buffer;
+
+    @Setup
+    public void setUp() throws IOException, NoSuchAlgorithmException {
+        file = BenchmarkFiles.create(fileSize);
+        digest = MessageDigest.getInstance(algorithm);
+        buffer = direct ? ByteBuffer.allocateDirect(bufferSize) : ByteBuffer.allocate(bufferSize);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public byte[] channel() throws IOException {
+        digest.reset();
+        try (final var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer.clear();
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+        return digest.digest();
+    }
+}
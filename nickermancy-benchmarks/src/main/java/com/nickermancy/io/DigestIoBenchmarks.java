@@ -0,0 +1,91 @@
+package com.nickermancy.io;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures the time to hash a file through each of the I/O paths of {@link DigestEngine} and {@link TreeDigest}, for
+ * files from 4 KiB to 1 GiB. Larger files can be measured with, for example, {@code -p fileSize=4294967296}, as long
+ * as the tmpfs has room for them.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class DigestIoBenchmarks {
+
+    @Param({"4096", "1048576", "67108864", "1073741824"})
+    long fileSize;
+
+    @Param("SHA-256")
+    String algorithm;
+
+    private Path file;
+    private MessageDigest digest;
+    private DigestEngine channelEngine;
+    private DigestEngine mappingEngine;
+    private TreeDigest treeDigest;
+
+    @Setup
+    public void setUp() throws IOException, NoSuchAlgorithmException {
+        file = BenchmarkFiles.create(fileSize);
+        digest = MessageDigest.getInstance(algorithm);
+        channelEngine = new DigestEngine(DigestEngine.DEFAULT_BUFFER_SIZE, Long.MAX_VALUE,
+            DigestEngine.DEFAULT_MAPPING_WINDOW_SIZE);
+        mappingEngine = new DigestEngine(DigestEngine.DEFAULT_BUFFER_SIZE, 0, DigestEngine.DEFAULT_MAPPING_WINDOW_SIZE);
+        treeDigest = TreeDigest.getInstance(algorithm + TreeDigest.SUFFIX);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public byte[] inputStream() throws IOException {
+        digest.reset();
+        try (final var inputStream = Files.newInputStream(file)) {
+            DigestEngine.getDefault().update(digest, inputStream);
+        }
+        return digest.digest();
+    }
+
+    @Benchmark
+    public byte[] channel() throws IOException {
+        digest.reset();
+        channelEngine.update(digest, file);
+        return digest.digest();
+    }
+
+    @Benchmark
+    public byte[] mappedChannel() throws IOException {
+        digest.reset();
+        mappingEngine.update(digest, file);
+        return digest.digest();
+    }
+
+    @Benchmark
+    public byte[] defaultEngine() throws IOException {
+        digest.reset();
+        DigestEngine.getDefault().update(digest, file);
+        return digest.digest();
+    }
+
+    @Benchmark
+    public byte[] tree() throws IOException {
+        return treeDigest.digest(file);
+    }
+
+    @Benchmark
+    public String digestSupport() {
+        return MessageDigestSupport.digest(algorithm, file);
+    }
+}
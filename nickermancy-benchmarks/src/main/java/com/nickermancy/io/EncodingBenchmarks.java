@@ -0,0 +1,55 @@
+package com.nickermancy.io;
+
+import java.util.Base64;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures the encoders of {@link MessageDigestSupport} against the JDK, for the lengths of MD5, SHA-256 and SHA-512
+ * digests.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class EncodingBenchmarks {
+
+    @Param({"16", "32", "64"})
+    int length;
+
+    private byte[] bytes;
+
+    @Setup
+    public void setUp() {
+        bytes = new byte[length];
+        new Random(length).nextBytes(bytes);
+    }
+
+    @Benchmark
+    public String hexEncode() {
+        return MessageDigestSupport.hexEncode(bytes);
+    }
+
+    @Benchmark
+    public String hexFormat() {
+        final var builder = new StringBuilder(bytes.length * 2);
+        for (final var b : bytes) {
+            builder.append(String.format("%02x", b));
+        }
+        return builder.toString();
+    }
+
+    @Benchmark
+    public String base64Encode() {
+        return MessageDigestSupport.base64Encode(bytes);
+    }
+
+    @Benchmark
+    public String jdkBase64() {
+        return Base64.getEncoder().encodeToString(bytes);
+    }
+}
@@ -0,0 +1,55 @@
+package com.nickermancy.logging;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.slf4j.LoggerFactory;
+
+import static java.lang.String.format;
+
+/**
+ * Measures the cost of logging counts and durations at a disabled level. Run with {@code -prof gc} to see the
+ * allocations of each form: the primitive overloads of {@link Logger} allocate nothing, while the SLF4J methods box
+ * their arguments and the supplier methods capture them in a lambda, unless the JIT happens to eliminate those
+ * allocations.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class DisabledLoggingBenchmarks {
+
+    private static final Logger log = Logger.getLogger(DisabledLoggingBenchmarks.class);
+    private static final org.slf4j.Logger slf4jLog = LoggerFactory.getLogger(DisabledLoggingBenchmarks.class);
+
+    private long count = 1_000_000;
+    private long bytes = 1L << 40;
+    private double seconds = 1.5;
+
+    @Benchmark
+    public void primitiveArguments() {
+        log.debug("Loaded {} resources, {} bytes", count, bytes);
+    }
+
+    @Benchmark
+    public void primitiveArgumentsWithObject() {
+        log.debug("{}: loaded {} resources in {} seconds", log, count, seconds);
+    }
+
+    @Benchmark
+    public void boxedArguments() {
+        slf4jLog.debug("Loaded {} resources, {} bytes", count, bytes);
+    }
+
+    @Benchmark
+    public void varargsArguments() {
+        slf4jLog.debug("{}: loaded {} resources in {} seconds", log, count, seconds);
+    }
+
+    @Benchmark
+    public void supplier() {
+        log.debug(() -> format("Loaded %,d resources, %,d bytes", count, bytes));
+    }
+}
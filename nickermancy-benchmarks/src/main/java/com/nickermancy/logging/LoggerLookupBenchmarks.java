@@ -0,0 +1,63 @@
+package com.nickermancy.logging;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.*;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Measures the lookup of a logger by {@link Logger#getLogger()} and {@link Logger#getLogger(Class)} against a plain
+ * SLF4J lookup and against the caller detection through the class context of a {@link SecurityManager} that
+ * {@link Logger#getLogger()} used to rely on.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class LoggerLookupBenchmarks {
+
+    private static final Pattern LAMBDA_OR_INNER_CLASS_SEPARATOR = Pattern.compile("\\$\\$|\\$\\d+$");
+    private static final Pattern PROXY_CLASS_PATTERN = Pattern.compile("com\\.sun\\.proxy\\$.*");
+    private static final String LOGGING_PACKAGE_NAME = Logger.class.getPackageName();
+    private static final ClassContext CONTEXT = new ClassContext();
+
+    @Benchmark
+    public Logger callerLogger() {
+        return Logger.getLogger();
+    }
+
+    @Benchmark
+    public Logger classLogger() {
+        return Logger.getLogger(LoggerLookupBenchmarks.class);
+    }
+
+    @Benchmark
+    public org.slf4j.Logger slf4jLogger() {
+        return LoggerFactory.getLogger(LoggerLookupBenchmarks.class);
+    }
+
+    @Benchmark
+    public org.slf4j.Logger classContextLogger() {
+        return CONTEXT.getClassContextAsStream()
+            .filter(clazz -> !LOGGING_PACKAGE_NAME.equals(clazz.getPackageName())
+                && !PROXY_CLASS_PATTERN.matcher(clazz.getName()).matches())
+            .findFirst()
+            .map(Class::getName)
+            .map(LAMBDA_OR_INNER_CLASS_SEPARATOR::split)
+            .map(className -> className[0])
+            .map(LoggerFactory::getLogger)
+            .orElseThrow();
+    }
+
+    @SuppressWarnings("removal")
+    private static final class ClassContext extends SecurityManager {
+
+        Stream<Class<?>> getClassContextAsStream() {
+            return Stream.of(super.getClassContext());
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package com.nickermancy.io;
+
+import com.nickermancy.logging.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+
+import org.springframework.lang.Nullable;
+
+/**
+ * Remembers the digests of files, so that the digest of a file that has not changed since it was last hashed costs a
+ * single read of the file's attributes rather than a read of its contents.
+ * <p>
+ * Entries are keyed by the real path of a file, its file key (its device and inode, on file systems that have file
+ * keys) and the algorithm, so a file that replaces another one at the same path is hashed again even if its size and
+ * last modified time are the same. An entry is only used while the size and last modified time of the file, compared
+ * to the nanosecond where the file system records it, match the ones it was hashed with. The cache holds a bounded
+ * number of entries, evicting the least recently used one, and can be saved to a file and loaded again after a
+ * restart.
+ */
+public final class DigestCache {
+
+    private static final Logger log = Logger.getLogger();
+    private static final int VERSION = 2;
+
+    private final int maxEntries;
+    @Nullable
+    private final Path file;
+    private final Map<Key, CachedDigest> entries;
+
+    /**
+     * Creates a cache that is not persisted.
+     *
+     * @param maxEntries the maximum number of digests held
+     */
+    public DigestCache(int maxEntries) {
+        this(maxEntries, null);
+    }
+
+    /**
+     * Creates a cache that is persisted to a file, loading the entries saved to the file, if it exists.
+     *
+     * @param maxEntries the maximum number of digests held
+     * @param file       the file to which the cache is saved by {@link #save()}, or {@code null}
+     */
+    public DigestCache(int maxEntries, @Nullable Path file) {
+        if (maxEntries <= 0) throw new IllegalArgumentException("maxEntries must be positive");
+        this.maxEntries = maxEntries;
+        this.file = file;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, CachedDigest> eldest) {
+                return size() > DigestCache.this.maxEntries;
+            }
+        };
+        if (file != null) load(file);
+    }
+
+    /**
+     * Returns the digest of a file, computing it with the loader unless the cache holds the digest of the file in its
+     * current state. A computed digest is only cached if the file has not changed while it was being hashed.
+     *
+     * @param algorithm the name of the algorithm
+     * @param path      the file
+     * @param loader    computes the digest of a file with an algorithm
+     *
+     * @throws IOException if the attributes of the file could not be read
+     */
+    public String get(String algorithm, Path path, BiFunction<String, Path, String> loader) throws IOException {
+        final var attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        final var key = new Key(path.toRealPath().toString(), getFileKey(attributes), algorithm);
+        final var size = attributes.size();
+        final var lastModified = getLastModified(attributes);
+        synchronized (this) {
+            final var entry = entries.get(key);
+            if (entry != null && entry.size == size && entry.lastModified == lastModified) return entry.digest;
+        }
+        final var digest = loader.apply(algorithm, path);
+        final var hashed = Files.readAttributes(path, BasicFileAttributes.class);
+        if (hashed.size() == size && getLastModified(hashed) == lastModified
+            && getFileKey(hashed).equals(key.fileKey)) {
+            synchronized (this) {
+                entries.put(key, new CachedDigest(size, lastModified, digest));
+            }
+        }
+        return digest;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Saves the entries of the cache to its file, replacing the file atomically. Does nothing if the cache is not
+     * persisted.
+     *
+     * @throws IOException if the file could not be written
+     */
+    public void save() throws IOException {
+        if (file == null) return;
+        final List<Map.Entry<Key, CachedDigest>> snapshot;
+        synchronized (this) {
+            snapshot = new ArrayList<>(entries.entrySet());
+        }
+        final var temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (final var output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+            output.writeInt(VERSION);
+            output.writeInt(snapshot.size());
+            // Least recently used first, so that the access order is restored on loading
+            for (final var mapEntry : snapshot) {
+                output.writeUTF(mapEntry.getKey().path);
+                output.writeUTF(mapEntry.getKey().fileKey);
+                output.writeUTF(mapEntry.getKey().algorithm);
+                output.writeLong(mapEntry.getValue().size);
+                output.writeLong(mapEntry.getValue().lastModified);
+                output.writeUTF(mapEntry.getValue().digest);
+            }
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    //-- Private Implementation --------------------------------------------------------------------------------------//
+
+    private void load(Path file) {
+        try (final var input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (input.readInt() != VERSION) {
+                log.warn(() -> "Ignoring digest cache of an unknown version: " + file);
+                return;
+            }
+            final var count = input.readInt();
+            for (var i = 0; i < count; i++) {
+                final var key = new Key(input.readUTF(), input.readUTF(), input.readUTF());
+                entries.put(key, new CachedDigest(input.readLong(), input.readLong(), input.readUTF()));
+            }
+            log.debug(() -> String.format("Loaded %,d digests from %s", entries.size(), file));
+        } catch (NoSuchFileException ex) {
+            // Nothing has been saved yet
+        } catch (EOFException ex) {
+            log.warn(() -> "Ignoring the truncated end of digest cache " + file, ex);
+        } catch (IOException ex) {
+            log.warn(() -> "Failed to load digest cache " + file, ex);
+        }
+    }
+
+    /**
+     * Returns the string form of the file key of a file, or an empty string if the file system does not provide one.
+     */
+    private static String getFileKey(BasicFileAttributes attributes) {
+        final var fileKey = attributes.fileKey();
+        return fileKey == null ? "" : fileKey.toString();
+    }
+
+    private static long getLastModified(BasicFileAttributes attributes) {
+        return attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+    }
+
+    private static final class Key {
+
+        private final String path;
+        private final String fileKey;
+        private final String algorithm;
+
+        private Key(String path, String fileKey, String algorithm) {
+            this.path = path;
+            this.fileKey = fileKey;
+            this.algorithm = algorithm;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            final var that = (Key) o;
+            return path.equals(that.path) && fileKey.equals(that.fileKey) && algorithm.equals(that.algorithm);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(path, fileKey, algorithm);
+        }
+    }
+
+    private static final class CachedDigest {
+
+        private final long size;
+        private final long lastModified;
+        private final String digest;
+
+        /**
+         * @param lastModified the last modified time of the file in nanoseconds since the epoch
+         */
+        private CachedDigest(long size, long lastModified, String digest) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.digest = digest;
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package com.nickermancy.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.List;
+
+/**
+ * Feeds the contents of files and streams into {@link MessageDigest} objects.
+ * <p>
+ * Files are read through a {@link FileChannel}. Files smaller than the mapping threshold are read into a direct
+ * buffer that is reused by each thread, while larger files are mapped into memory one window at a time, so that their
+ * contents are hashed without being copied through the Java heap.
+ */
+public final class DigestEngine {
+
+    /**
+     * The default size of the direct buffer used for reading files.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+
+    /**
+     * The default file size from which files are mapped into memory rather than read into a buffer.
+     */
+    public static final long DEFAULT_MAPPING_THRESHOLD = 64L * 1024 * 1024;
+
+    /**
+     * The default size of each window of a file that is mapped into memory.
+     */
+    public static final int DEFAULT_MAPPING_WINDOW_SIZE = 64 * 1024 * 1024;
+
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+    private static final DigestEngine DEFAULT =
+        new DigestEngine(DEFAULT_BUFFER_SIZE, DEFAULT_MAPPING_THRESHOLD, DEFAULT_MAPPING_WINDOW_SIZE);
+
+    /**
+     * Returns the shared engine with the default buffer size, mapping threshold and mapping window size.
+     *
+     * @return the shared digest engine
+     */
+    public static DigestEngine getDefault() {
+        return DEFAULT;
+    }
+
+    private final int bufferSize;
+    private final long mappingThreshold;
+    private final int mappingWindowSize;
+    private final ThreadLocal<ByteBuffer> directBuffers;
+    private final ThreadLocal<byte[]> streamBuffers = ThreadLocal.withInitial(() -> new byte[STREAM_BUFFER_SIZE]);
+
+    /**
+     * @param bufferSize        the size of the direct buffer used by each thread for reading files
+     * @param mappingThreshold  the file size from which files are mapped into memory
+     * @param mappingWindowSize the size of each window of a file that is mapped into memory
+     */
+    public DigestEngine(int bufferSize, long mappingThreshold, int mappingWindowSize) {
+        if (bufferSize <= 0) throw new IllegalArgumentException("bufferSize must be positive");
+        if (mappingWindowSize <= 0) throw new IllegalArgumentException("mappingWindowSize must be positive");
+        this.bufferSize = bufferSize;
+        this.mappingThreshold = mappingThreshold;
+        this.mappingWindowSize = mappingWindowSize;
+        this.directBuffers = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(this.bufferSize));
+    }
+
+    /**
+     * Updates the digest with the contents of the file at the given path.
+     *
+     * @param digest the digest to be updated
+     * @param path   the path of the file to be read
+     *
+     * @throws IOException if the file could not be read
+     */
+    public void update(MessageDigest digest, Path path) throws IOException {
+        try (final var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            update(digest, channel);
+        }
+    }
+
+    /**
+     * Updates the digest with the contents of the file channel, from its current position to the end of the file.
+     *
+     * @param digest  the digest to be updated
+     * @param channel the file channel to be read
+     *
+     * @throws IOException if the file could not be read
+     */
+    public void update(MessageDigest digest, FileChannel channel) throws IOException {
+        final var position = channel.position();
+        final var size = channel.size();
+        if (size - position >= mappingThreshold) {
+            updateMapped(digest, channel, position, size);
+        } else {
+            updateBuffered(digest, channel);
+        }
+    }
+
+    /**
+     * Updates the digest with the remaining contents of the channel, which is not closed. File channels are read as
+     * described by {@link #update(MessageDigest, FileChannel)}; other channels are read into the direct buffer of
+     * the calling thread.
+     *
+     * @param digest  the digest to be updated
+     * @param channel the channel to be read
+     *
+     * @throws IOException if the channel could not be read
+     */
+    public void update(MessageDigest digest, ReadableByteChannel channel) throws IOException {
+        if (channel instanceof FileChannel) {
+            update(digest, (FileChannel) channel);
+            return;
+        }
+        final var buffer = directBuffers.get().clear();
+        while (channel.read(buffer) != -1) {
+            digest.update(buffer.flip());
+            buffer.clear();
+        }
+    }
+
+    /**
+     * Updates the digest with a range of the contents of the file channel, using positional reads that leave the
+     * position of the channel unchanged, so that several threads can read different ranges of the same channel.
+     *
+     * @param digest   the digest to be updated
+     * @param channel  the file channel to be read
+     * @param position the position of the range in the file
+     * @param length   the length of the range, which is cut short at the end of the file
+     *
+     * @throws IOException if the file could not be read
+     */
+    public void update(MessageDigest digest, FileChannel channel, long position, long length) throws IOException {
+        final var buffer = directBuffers.get();
+        final var end = position + length;
+        for (var offset = position; offset < end; ) {
+            buffer.clear().limit((int) Math.min(buffer.capacity(), end - offset));
+            final var bytesRead = channel.read(buffer, offset);
+            if (bytesRead == -1) break;
+            digest.update(buffer.flip());
+            offset += bytesRead;
+        }
+    }
+
+    /**
+     * Updates the digest with the remaining contents of the input stream. The stream is not closed.
+     *
+     * @param digest      the digest to be updated
+     * @param inputStream the input stream to be read
+     *
+     * @throws IOException if the input stream could not be read
+     */
+    public void update(MessageDigest digest, InputStream inputStream) throws IOException {
+        final var buffer = streamBuffers.get();
+        int bytesRead;
+        while ((bytesRead = inputStream.read(buffer)) != -1) {
+            digest.update(buffer, 0, bytesRead);
+        }
+    }
+
+    /**
+     * Updates each of the digests with the contents of the file at the given path, which is read only once: each
+     * buffer or mapped window of the file is fed to every digest before the next one is read.
+     *
+     * @param digests the digests to be updated
+     * @param path    the path of the file to be read
+     *
+     * @throws IOException if the file could not be read
+     */
+    public void update(List<MessageDigest> digests, Path path) throws IOException {
+        try (final var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final var size = channel.size();
+            if (size >= mappingThreshold) {
+                for (var offset = 0L; offset < size; offset += mappingWindowSize) {
+                    final var window = channel.map(FileChannel.MapMode.READ_ONLY, offset,
+                        Math.min(mappingWindowSize, size - offset));
+                    updateAll(digests, window);
+                }
+            } else {
+                final var buffer = directBuffers.get().clear();
+                while (channel.read(buffer) != -1) {
+                    updateAll(digests, buffer.flip());
+                    buffer.clear();
+                }
+            }
+        }
+    }
+
+    /**
+     * Updates each of the digests with the remaining contents of the input stream, which is read only once. The stream
+     * is not closed.
+     *
+     * @param digests     the digests to be updated
+     * @param inputStream the input stream to be read
+     *
+     * @throws IOException if the input stream could not be read
+     */
+    public void update(List<MessageDigest> digests, InputStream inputStream) throws IOException {
+        final var buffer = streamBuffers.get();
+        int bytesRead;
+        while ((bytesRead = inputStream.read(buffer)) != -1) {
+            for (var i = 0; i < digests.size(); i++) {
+                digests.get(i).update(buffer, 0, bytesRead);
+            }
+        }
+    }
+
+    //-- Private Implementation --------------------------------------------------------------------------------------//
+
+    private static void updateAll(List<MessageDigest> digests, ByteBuffer buffer) {
+        for (var i = 0; i < digests.size(); i++) {
+            digests.get(i).update(buffer.rewind());
+        }
+    }
+
+    private void updateBuffered(MessageDigest digest, FileChannel channel) throws IOException {
+        final var buffer = directBuffers.get().clear();
+        while (channel.read(buffer) != -1) {
+            digest.update(buffer.flip());
+            buffer.clear();
+        }
+    }
+
+    private void updateMapped(MessageDigest digest, FileChannel channel, long position, long size) throws IOException {
+        for (var offset = position; offset < size; offset += mappingWindowSize) {
+            final var length = Math.min(mappingWindowSize, size - offset);
+            digest.update(channel.map(FileChannel.MapMode.READ_ONLY, offset, length));
+        }
+        channel.position(size);
+    }
+}
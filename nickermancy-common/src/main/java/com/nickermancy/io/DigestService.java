@@ -0,0 +1,285 @@
+package com.nickermancy.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Computes the digests of files asynchronously, on bounded pools of threads of its own, reading no more than a
+ * budget of bytes per second in the background.
+ * <p>
+ * Each digest has a {@link Priority}. Foreground digests run on threads of their own, so they never wait for
+ * background digests, and read as fast as they can, but the bytes they read are charged to the budget, so that
+ * background digests yield to them; so are the bytes read from the streams opened by {@link #newInputStream}.
+ * Background digests read their files sequentially while the budget is limited, waiting after each read until the
+ * budget allows it. Otherwise, they read their files as foreground digests do, and tree algorithms (see
+ * {@link TreeDigest}) hash the chunks of a file in parallel.
+ */
+public class DigestService {
+
+    /**
+     * The budget of a service whose reads are not limited.
+     */
+    public static final long UNLIMITED = 0;
+
+    private final ExecutorService foregroundExecutor;
+    private final ExecutorService backgroundExecutor;
+    private final Object budgetLock = new Object();
+    private volatile long bytesPerSecond;
+    private long nextFreeNanos = System.nanoTime();
+
+    /**
+     * @param threads        the number of files of each priority that are read at the same time
+     * @param bytesPerSecond the number of bytes per second that may be read, or {@link #UNLIMITED}
+     */
+    public DigestService(int threads, long bytesPerSecond) {
+        if (threads <= 0) throw new IllegalArgumentException("threads must be positive");
+        setBytesPerSecond(bytesPerSecond);
+        this.foregroundExecutor = newExecutor(threads, "digest-foreground-");
+        this.backgroundExecutor = newExecutor(threads, "digest-background-");
+    }
+
+    public long getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    /**
+     * Sets the number of bytes per second that may be read, which applies to the following reads of the digests in
+     * progress.
+     *
+     * @param bytesPerSecond the number of bytes per second, or {@link #UNLIMITED}
+     */
+    public void setBytesPerSecond(long bytesPerSecond) {
+        if (bytesPerSecond < 0) throw new IllegalArgumentException("bytesPerSecond must not be negative");
+        this.bytesPerSecond = bytesPerSecond;
+    }
+
+    /**
+     * Returns a {@link Mono} of the hex-encoded digest of a file, which is queued when the Mono is subscribed to and
+     * dequeued if the subscription is cancelled before the digest is started.
+     *
+     * @param algorithm the name of the algorithm
+     * @param path      the file
+     * @param priority  the priority of the digest
+     */
+    public Mono<String> digest(String algorithm, Path path, Priority priority) {
+        return Mono.defer(() -> {
+            final var future = submit(algorithm, path, priority);
+            return Mono.fromFuture(future)
+                .map(MessageDigestSupport::hexEncode)
+                .doOnCancel(() -> future.cancel(false));
+        });
+    }
+
+    /**
+     * Returns a future of the hex-encoded digest of a file. The digest is not started if the future is cancelled
+     * before it is dequeued.
+     *
+     * @param algorithm the name of the algorithm
+     * @param path      the file
+     * @param priority  the priority of the digest
+     */
+    public CompletableFuture<String> digestAsync(String algorithm, Path path, Priority priority) {
+        final var future = submit(algorithm, path, priority);
+        final var result = future.thenApply(MessageDigestSupport::hexEncode);
+        result.whenComplete((digest, ex) -> {
+            if (ex instanceof CancellationException) future.cancel(false);
+        });
+        return result;
+    }
+
+    /**
+     * Returns a future of the digest of a file. The future is completed exceptionally with a
+     * {@link MessageDigestException} if the algorithm is not supported or if the file could not be read.
+     *
+     * @param algorithm the name of the algorithm
+     * @param path      the file
+     * @param priority  the priority of the digest
+     */
+    public CompletableFuture<byte[]> submit(String algorithm, Path path, Priority priority) {
+        final var task = new Task(algorithm, path, priority);
+        (priority == Priority.FOREGROUND ? foregroundExecutor : backgroundExecutor).execute(task);
+        return task.future;
+    }
+
+    /**
+     * Opens a file to be read in the foreground, for example to serve its contents, and charges the bytes read from
+     * the stream to the budget, so that background digests yield to the read. The read itself is never slowed down.
+     *
+     * @param path the file
+     *
+     * @throws IOException if the file could not be opened
+     */
+    public InputStream newInputStream(Path path) throws IOException {
+        return Channels.newInputStream(new ChargedChannel(FileChannel.open(path, StandardOpenOption.READ), false));
+    }
+
+    /**
+     * Stops the threads of the service, cancelling the digests that have not completed.
+     */
+    public void destroy() {
+        for (final var executor : List.of(foregroundExecutor, backgroundExecutor)) {
+            for (final var runnable : executor.shutdownNow()) {
+                ((Task) runnable).future.cancel(false);
+            }
+        }
+    }
+
+    //-- Private Implementation --------------------------------------------------------------------------------------//
+
+    private static ExecutorService newExecutor(int threads, String namePrefix) {
+        final var threadCount = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, runnable -> {
+            final var thread = new Thread(runnable, namePrefix + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private byte[] compute(String algorithm, Path path, Priority priority) throws IOException {
+        if (priority == Priority.FOREGROUND || bytesPerSecond == UNLIMITED) {
+            try (final var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                final byte[] digest;
+                if (TreeDigest.isTreeAlgorithm(algorithm)) {
+                    digest = TreeDigest.getInstance(algorithm).digest(channel);
+                } else {
+                    final var messageDigest = getMessageDigest(algorithm);
+                    DigestEngine.getDefault().update(messageDigest, channel);
+                    digest = messageDigest.digest();
+                }
+                if (priority == Priority.FOREGROUND) charge(channel.size(), false);
+                return digest;
+            }
+        }
+        // A limited budget is far below the speed of hashing, so the chunks of tree algorithms are read one at a time
+        try (final var channel = new ChargedChannel(FileChannel.open(path, StandardOpenOption.READ), true)) {
+            if (TreeDigest.isTreeAlgorithm(algorithm)) {
+                return TreeDigest.getInstance(algorithm).digest(Channels.newInputStream(channel));
+            }
+            final var messageDigest = getMessageDigest(algorithm);
+            DigestEngine.getDefault().update(messageDigest, channel);
+            return messageDigest.digest();
+        }
+    }
+
+    private static MessageDigest getMessageDigest(String algorithm) {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new MessageDigestException("No such algorithm: " + algorithm, ex);
+        }
+    }
+
+    /**
+     * Charges bytes that have been read to the budget, waiting, if asked to, until the budget has paid for them.
+     * The budget is kept as the time at which all of the bytes read so far have been paid for.
+     */
+    private void charge(long bytes, boolean wait) throws InterruptedIOException {
+        final var budget = bytesPerSecond;
+        if (budget == UNLIMITED || bytes <= 0) return;
+        final var cost = (long) (bytes * 1_000_000_000d / budget);
+        final long delay;
+        synchronized (budgetLock) {
+            final var now = System.nanoTime();
+            nextFreeNanos = Math.max(nextFreeNanos, now) + cost;
+            delay = nextFreeNanos - now;
+        }
+        if (!wait) return;
+        try {
+            TimeUnit.NANOSECONDS.sleep(delay);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the read budget");
+        }
+    }
+
+    public enum Priority {
+
+        /**
+         * A digest that someone is waiting for, which does not wait for background digests and is not slowed down by
+         * the budget.
+         */
+        FOREGROUND,
+
+        /**
+         * A digest that no one is waiting for, such as that of an imported file, which reads within the budget.
+         */
+        BACKGROUND
+    }
+
+    private final class Task implements Runnable {
+
+        private final String algorithm;
+        private final Path path;
+        private final Priority priority;
+        private final CompletableFuture<byte[]> future = new CompletableFuture<>();
+
+        private Task(String algorithm, Path path, Priority priority) {
+            this.algorithm = algorithm;
+            this.path = path;
+            this.priority = priority;
+        }
+
+        @Override
+        public void run() {
+            if (future.isDone()) return;
+            try {
+                future.complete(compute(algorithm, path, priority));
+            } catch (IOException ex) {
+                future.completeExceptionally(
+                    new MessageDigestException("Failed to compute digest: " + ex.getMessage(), ex));
+            } catch (RuntimeException ex) {
+                future.completeExceptionally(ex);
+            }
+        }
+    }
+
+    /**
+     * A channel that charges the bytes read from it to the budget, waiting, if asked to, until they have been paid
+     * for.
+     */
+    private final class ChargedChannel implements ReadableByteChannel {
+
+        private final ReadableByteChannel channel;
+        private final boolean wait;
+
+        private ChargedChannel(ReadableByteChannel channel, boolean wait) {
+            this.channel = channel;
+            this.wait = wait;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            final var bytesRead = channel.read(dst);
+            charge(bytesRead, wait);
+            return bytesRead;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return channel.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.nickermancy.io;
+
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import static com.nickermancy.io.FileChangeEvent.Type.*;
+
+/**
+ * The names, sizes and modification times of the entries of a single directory, held in parallel arrays sorted by
+ * name so that two snapshots of the same directory can be compared in a single pass.
+ */
+final class DirectorySnapshot {
+
+    static final DirectorySnapshot EMPTY = new DirectorySnapshot(new String[0], new long[0], new long[0], new BitSet());
+
+    /**
+     * Takes a snapshot of the entries of a directory. Entries that disappear while the snapshot is taken are left
+     * out, and a directory that does not exist has an empty snapshot.
+     *
+     * @throws IOException if the directory could not be read
+     */
+    static DirectorySnapshot of(Path directory) throws IOException {
+        final var entries = new ArrayList<Entry>();
+        try (final var stream = Files.newDirectoryStream(directory)) {
+            for (final var path : stream) {
+                try {
+                    final var attributes = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    entries.add(new Entry(path.getFileName().toString(), attributes));
+                } catch (NoSuchFileException ex) {
+                    // Deleted since it was listed
+                }
+            }
+        } catch (NoSuchFileException ex) {
+            return EMPTY;
+        } catch (DirectoryIteratorException ex) {
+            throw ex.getCause();
+        }
+        entries.sort((a, b) -> a.name.compareTo(b.name));
+        final var names = new String[entries.size()];
+        final var sizes = new long[entries.size()];
+        final var modificationTimes = new long[entries.size()];
+        final var directories = new BitSet(entries.size());
+        for (var i = 0; i < names.length; i++) {
+            final var entry = entries.get(i);
+            names[i] = entry.name;
+            sizes[i] = entry.attributes.size();
+            modificationTimes[i] = entry.attributes.lastModifiedTime().toMillis();
+            directories.set(i, entry.attributes.isDirectory());
+        }
+        return new DirectorySnapshot(names, sizes, modificationTimes, directories);
+    }
+
+    private final String[] names;
+    private final long[] sizes;
+    private final long[] modificationTimes;
+    private final BitSet directories;
+
+    private DirectorySnapshot(String[] names, long[] sizes, long[] modificationTimes, BitSet directories) {
+        this.names = names;
+        this.sizes = sizes;
+        this.modificationTimes = modificationTimes;
+        this.directories = directories;
+    }
+
+    int size() {
+        return names.length;
+    }
+
+    /**
+     * Returns the names of the subdirectories, in name order.
+     */
+    List<String> getDirectoryNames() {
+        final var directoryNames = new ArrayList<String>(directories.cardinality());
+        for (var i = directories.nextSetBit(0); i >= 0; i = directories.nextSetBit(i + 1)) {
+            directoryNames.add(names[i]);
+        }
+        return directoryNames;
+    }
+
+    /**
+     * Returns the latest modification time of the entries, in milliseconds, or {@link Long#MIN_VALUE} if there are
+     * none.
+     */
+    long getLatestModificationTime() {
+        var latest = Long.MIN_VALUE;
+        for (final var modificationTime : modificationTimes) {
+            latest = Math.max(latest, modificationTime);
+        }
+        return latest;
+    }
+
+    boolean isDirectory(String name) {
+        final var index = Arrays.binarySearch(names, name);
+        return index >= 0 && directories.get(index);
+    }
+
+    /**
+     * Returns the changes that turn this snapshot into a newer snapshot of the same directory. Files whose size or
+     * modification time differ are reported as modified; directories are only reported when they are created or
+     * deleted, since their modification times change with their contents. An entry that has turned from a file into
+     * a directory, or vice versa, is reported as deleted and created.
+     *
+     * @param directory the directory of both snapshots
+     * @param newer     the newer snapshot
+     */
+    List<FileChangeEvent> diff(Path directory, DirectorySnapshot newer) {
+        final var events = new ArrayList<FileChangeEvent>();
+        var i = 0;
+        var j = 0;
+        while (i < names.length || j < newer.names.length) {
+            final var comparison = i == names.length ? 1
+                : j == newer.names.length ? -1
+                : names[i].compareTo(newer.names[j]);
+            if (comparison < 0) {
+                events.add(new FileChangeEvent(DELETED, directory.resolve(names[i++])));
+            } else if (comparison > 0) {
+                events.add(new FileChangeEvent(CREATED, directory.resolve(newer.names[j++])));
+            } else {
+                final var path = directory.resolve(names[i]);
+                if (directories.get(i) != newer.directories.get(j)) {
+                    events.add(new FileChangeEvent(DELETED, path));
+                    events.add(new FileChangeEvent(CREATED, path));
+                } else if (!directories.get(i)
+                    && (sizes[i] != newer.sizes[j] || modificationTimes[i] != newer.modificationTimes[j])) {
+                    events.add(new FileChangeEvent(MODIFIED, path));
+                }
+                i++;
+                j++;
+            }
+        }
+        return events;
+    }
+
+    private static final class Entry {
+
+        private final String name;
+        private final BasicFileAttributes attributes;
+
+        private Entry(String name, BasicFileAttributes attributes) {
+            this.name = name;
+            this.attributes = attributes;
+        }
+    }
+}
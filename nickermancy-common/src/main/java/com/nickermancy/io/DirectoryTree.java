@@ -0,0 +1,134 @@
+package com.nickermancy.io;
+
+import com.nickermancy.logging.Logger;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Consumer;
+
+/**
+ * The snapshots of a directory and of all of its subdirectories, taken by walking the tree in parallel.
+ */
+final class DirectoryTree {
+
+    private static final Logger log = Logger.getLogger();
+
+    /**
+     * Takes the snapshots of a directory tree on the common fork-join pool. Subdirectories that are excluded by the
+     * filter, or that cannot be read, are left out.
+     *
+     * @param path            the root of the tree
+     * @param filter          the filter whose excluded names are left out
+     * @param scannedListener called, on any thread, with each directory once it has been scanned
+     *
+     * @throws IOException if the root of the tree could not be read
+     */
+    static DirectoryTree scan(Path path, FileWatchFilter filter, Consumer<Path> scannedListener) throws IOException {
+        try {
+            return ForkJoinPool.commonPool().invoke(new Scan(path, filter, scannedListener));
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+    }
+
+    private final Path path;
+    private final DirectorySnapshot snapshot;
+    private final List<DirectoryTree> children;
+    private final long latestModificationTime;
+    private final int size;
+
+    private DirectoryTree(Path path, DirectorySnapshot snapshot, List<DirectoryTree> children) {
+        this.path = path;
+        this.snapshot = snapshot;
+        this.children = children;
+        var latestModificationTime = snapshot.getLatestModificationTime();
+        var size = 1;
+        for (final var child : children) {
+            latestModificationTime = Math.max(latestModificationTime, child.latestModificationTime);
+            size += child.size;
+        }
+        this.latestModificationTime = latestModificationTime;
+        this.size = size;
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    DirectorySnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    List<DirectoryTree> getChildren() {
+        return children;
+    }
+
+    /**
+     * Returns the latest modification time, in milliseconds, of the entries in this tree, which tells how recently
+     * the tree has changed.
+     */
+    long getLatestModificationTime() {
+        return latestModificationTime;
+    }
+
+    /**
+     * Returns the number of directories in this tree, including its root.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Calls an action with the root of this tree and each of its subtrees, parents before children.
+     */
+    void forEach(Consumer<DirectoryTree> action) {
+        action.accept(this);
+        for (final var child : children) {
+            child.forEach(action);
+        }
+    }
+
+    private static final class Scan extends RecursiveTask<DirectoryTree> {
+
+        private final Path path;
+        private final FileWatchFilter filter;
+        private final Consumer<Path> scannedListener;
+
+        private Scan(Path path, FileWatchFilter filter, Consumer<Path> scannedListener) {
+            this.path = path;
+            this.filter = filter;
+            this.scannedListener = scannedListener;
+        }
+
+        @Override
+        protected DirectoryTree compute() {
+            final DirectorySnapshot snapshot;
+            try {
+                snapshot = DirectorySnapshot.of(path);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+            scannedListener.accept(path);
+
+            final var scans = new ArrayList<Scan>();
+            for (final var name : snapshot.getDirectoryNames()) {
+                final var child = path.resolve(name);
+                if (!filter.excludes(child.getFileName())) scans.add(new Scan(child, filter, scannedListener));
+            }
+            final var children = new ArrayList<DirectoryTree>(scans.size());
+            for (final var scan : invokeAll(scans)) {
+                if (scan.getException() == null) {
+                    children.add(scan.join());
+                } else {
+                    log.warn(() -> "Failed to scan " + scan.path, scan.getException());
+                }
+            }
+            return new DirectoryTree(path, snapshot, children);
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.nickermancy.io;
+
+import java.util.List;
+
+/**
+ * Receives the changes to a watched folder in batches (see {@link FileWatchOptions#withDebounce}).
+ */
+public interface FileChangeBatchListener {
+
+    void accept(List<FileChangeEvent> events);
+}
@@ -0,0 +1,115 @@
+package com.nickermancy.io;
+
+import com.nickermancy.logging.Logger;
+
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+import reactor.core.Exceptions;
+import reactor.core.publisher.FluxSink;
+
+/**
+ * Holds the changes to a watched folder until the subscriber of a flux requests them, and emits them in the order
+ * they were observed. At most a fixed number of changes are held; further changes are handled according to a
+ * {@link FileChangeOverflowStrategy}.
+ */
+class FileChangeBuffer {
+
+    private static final Logger log = Logger.getLogger();
+
+    private final FluxSink<FileChangeEvent> sink;
+    private final int capacity;
+    private final FileChangeOverflowStrategy overflowStrategy;
+    private final Queue<FileChangeEvent> queue = new ArrayDeque<>();
+    private final Map<Path, FileChangeEvent.Type> latest = new LinkedHashMap<>();
+    private long droppedCount;
+    private boolean failed;
+
+    /**
+     * @param sink             the sink to which changes are emitted
+     * @param capacity         the maximum number of held changes
+     * @param overflowStrategy what happens to changes while the buffer is full
+     */
+    FileChangeBuffer(FluxSink<FileChangeEvent> sink, int capacity, FileChangeOverflowStrategy overflowStrategy) {
+        this.sink = sink;
+        this.capacity = capacity;
+        this.overflowStrategy = overflowStrategy;
+        sink.onRequest(requested -> drain());
+    }
+
+    synchronized void addAll(List<FileChangeEvent> events) {
+        for (final var event : events) {
+            if (failed) return;
+            add(event);
+        }
+        drain();
+    }
+
+    synchronized long getDroppedCount() {
+        return droppedCount;
+    }
+
+    //-- Private Implementation --------------------------------------------------------------------------------------//
+
+    private void add(FileChangeEvent event) {
+        if (overflowStrategy == FileChangeOverflowStrategy.LATEST_PER_PATH) {
+            final var merged = FileChangeDebouncer.merge(latest.get(event.getPath()), event.getType());
+            if (merged == null) {
+                latest.remove(event.getPath());
+                return;
+            }
+            if (latest.put(event.getPath(), merged) == null && latest.size() > capacity) {
+                final Iterator<Path> oldest = latest.keySet().iterator();
+                oldest.next();
+                oldest.remove();
+                dropped();
+            }
+            return;
+        }
+        if (queue.size() == capacity) {
+            if (overflowStrategy == FileChangeOverflowStrategy.ERROR) {
+                failed = true;
+                queue.clear();
+                sink.error(Exceptions.failWithOverflow(
+                    "The subscriber has fallen behind by more than " + capacity + " file changes"));
+                return;
+            }
+            queue.remove();
+            dropped();
+        }
+        queue.add(event);
+    }
+
+    private void dropped() {
+        if (droppedCount++ == 0) {
+            log.warn(() -> "File change subscriber has fallen behind, dropping events (" + overflowStrategy + ")");
+        }
+    }
+
+    /**
+     * Emits as many held changes as the subscriber has requested. A subscriber that requests more while it receives
+     * a change re-enters this method on the same thread, which keeps the changes in order, since each change is
+     * emitted as soon as it is removed from the buffer.
+     */
+    private synchronized void drain() {
+        while (!failed && sink.requestedFromDownstream() > 0 && !sink.isCancelled()) {
+            final FileChangeEvent event;
+            if (overflowStrategy == FileChangeOverflowStrategy.LATEST_PER_PATH) {
+                final var oldest = latest.entrySet().iterator();
+                if (!oldest.hasNext()) return;
+                final var entry = oldest.next();
+                oldest.remove();
+                event = new FileChangeEvent(entry.getValue(), entry.getKey());
+            } else {
+                event = queue.poll();
+                if (event == null) return;
+            }
+            sink.next(event);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.nickermancy.io;
+
+import com.nickermancy.logging.Logger;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.lang.Nullable;
+
+import static com.nickermancy.io.FileChangeEvent.Type.*;
+
+/**
+ * Holds back file change events until there have been no new events for a quiet period, or until the oldest held
+ * back event has waited for a maximum delay, and then delivers them as a single batch with one event per path.
+ */
+class FileChangeDebouncer {
+
+    private static final Logger log = Logger.getLogger();
+
+    private final long quietPeriodNanos;
+    private final long maxDelayNanos;
+    private final ScheduledExecutorService scheduler;
+    private final FileChangeBatchListener listener;
+    private final Map<Path, FileChangeEvent.Type> pending = new LinkedHashMap<>();
+    private long firstEventTime;
+    private long lastEventTime;
+    @Nullable
+    private ScheduledFuture<?> scheduled;
+
+    FileChangeDebouncer(Duration quietPeriod, Duration maxDelay, ScheduledExecutorService scheduler,
+                        FileChangeBatchListener listener) {
+        this.quietPeriodNanos = quietPeriod.toNanos();
+        this.maxDelayNanos = maxDelay.toNanos();
+        this.scheduler = scheduler;
+        this.listener = listener;
+    }
+
+    synchronized void add(FileChangeEvent event) {
+        final var now = System.nanoTime();
+        if (pending.isEmpty()) firstEventTime = now;
+        lastEventTime = now;
+        final var merged = merge(pending.get(event.getPath()), event.getType());
+        if (merged == null) {
+            pending.remove(event.getPath());
+        } else {
+            pending.put(event.getPath(), merged);
+        }
+        if (scheduled == null) schedule(quietPeriodNanos);
+    }
+
+    synchronized void cancel() {
+        if (scheduled != null) scheduled.cancel(false);
+        scheduled = null;
+        pending.clear();
+    }
+
+    /**
+     * Returns the net effect of a change to a path that already has a pending change, or {@code null} if the changes
+     * cancel each other out.
+     */
+    @Nullable
+    static FileChangeEvent.Type merge(@Nullable FileChangeEvent.Type pending, FileChangeEvent.Type next) {
+        if (pending == null) return next;
+        switch (pending) {
+            case CREATED:
+                return next == DELETED ? null : CREATED;
+            case DELETED:
+                return next == DELETED ? DELETED : MODIFIED;
+            default:
+                return next == DELETED ? DELETED : MODIFIED;
+        }
+    }
+
+    //-- Private Implementation --------------------------------------------------------------------------------------//
+
+    private void schedule(long delayNanos) {
+        scheduled = scheduler.schedule(this::deliver, delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private void deliver() {
+        final List<FileChangeEvent> batch;
+        synchronized (this) {
+            scheduled = null;
+            if (pending.isEmpty()) return;
+            final var now = System.nanoTime();
+            final var due = Math.min(lastEventTime + quietPeriodNanos, firstEventTime + maxDelayNanos);
+            if (now - due < 0) {
+                schedule(due - now);
+                return;
+            }
+            batch = new ArrayList<>(pending.size());
+            pending.forEach((path, type) -> batch.add(new FileChangeEvent(type, path)));
+            pending.clear();
+        }
+        try {
+            listener.accept(batch);
+        } catch (RuntimeException ex) {
+            log.error(() -> "File change listener failed to accept " + batch.size() + " events", ex);
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.nickermancy.io;
+
+import com.nickermancy.io.FileWatchOptions.SaturationPolicy;
+import com.nickermancy.logging.Logger;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Delivers file change events to a single listener on a shared pool of worker threads.
+ * <p>
+ * Deliveries are spread over a number of stripes, each of which delivers its events one at a time and in order, so
+ * the events of a path stay ordered as long as they are always dispatched to the same stripe, while the events of
+ * different stripes are delivered in parallel. At most a fixed number of deliveries are queued across all stripes;
+ * further deliveries are handled according to a {@link SaturationPolicy}.
+ */
+class FileChangeDispatcher {
+
+    private static final Logger log = Logger.getLogger();
+    private static final int MAX_DELIVERIES_PER_RUN = 64;
+
+    private final Executor executor;
+    private final FileChangeBatchListener listener;
+    private final SaturationPolicy saturationPolicy;
+    private final Consumer<List<FileChangeEvent>> dropHandler;
+    private final Semaphore permits;
+    private final Stripe[] stripes;
+    private final AtomicBoolean saturated = new AtomicBoolean();
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    /**
+     * @param executor         the worker threads on which events are delivered
+     * @param stripeCount      the number of stripes over which deliveries are spread
+     * @param queueCapacity    the maximum number of queued deliveries
+     * @param saturationPolicy what happens to deliveries while the queue is full
+     * @param listener         the listener to which events are delivered
+     * @param dropHandler      receives the events of deliveries that are dropped
+     */
+    FileChangeDispatcher(Executor executor, int stripeCount, int queueCapacity, SaturationPolicy saturationPolicy,
+                         FileChangeBatchListener listener, Consumer<List<FileChangeEvent>> dropHandler) {
+        this.executor = executor;
+        this.listener = listener;
+        this.saturationPolicy = saturationPolicy;
+        this.dropHandler = dropHandler;
+        this.permits = new Semaphore(queueCapacity);
+        this.stripes = new Stripe[stripeCount];
+        for (var i = 0; i < stripeCount; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    /**
+     * Queues a single event on the stripe of its path.
+     */
+    void dispatch(FileChangeEvent event) {
+        dispatch(Math.floorMod(event.getPath().hashCode(), stripes.length), List.of(event));
+    }
+
+    /**
+     * Queues a batch of events on the first stripe, so that batches are delivered in order.
+     */
+    void dispatch(List<FileChangeEvent> events) {
+        dispatch(0, events);
+    }
+
+    long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    //-- Private Implementation --------------------------------------------------------------------------------------//
+
+    private void dispatch(int stripe, List<FileChangeEvent> events) {
+        if (!acquire()) {
+            droppedCount.addAndGet(events.size());
+            if (saturated.compareAndSet(false, true)) {
+                log.warn(() -> "File change listener has fallen behind, dropping events (" + saturationPolicy + ")");
+            }
+            dropHandler.accept(events);
+            return;
+        }
+        saturated.set(false);
+        stripes[stripe].add(events);
+    }
+
+    private boolean acquire() {
+        if (saturationPolicy != SaturationPolicy.BLOCK) return permits.tryAcquire();
+        try {
+            permits.acquire();
+            return true;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void deliver(List<FileChangeEvent> events) {
+        try {
+            listener.accept(events);
+        } catch (RuntimeException ex) {
+            log.error(() -> "File change listener failed to accept " + events, ex);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private final class Stripe implements Runnable {
+
+        private final Queue<List<FileChangeEvent>> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        private void add(List<FileChangeEvent> events) {
+            queue.add(events);
+            schedule();
+        }
+
+        private void schedule() {
+            if (!scheduled.compareAndSet(false, true)) return;
+            try {
+                executor.execute(this);
+            } catch (RejectedExecutionException ex) {
+                scheduled.set(false);
+                log.debug(() -> "Discarding file change events, the watch service has been stopped");
+            }
+        }
+
+        @Override
+        public void run() {
+            // Deliver a limited number of events before yielding the worker thread to other stripes
+            for (var i = 0; i < MAX_DELIVERIES_PER_RUN; i++) {
+                final var events = queue.poll();
+                if (events == null) break;
+                deliver(events);
+            }
+            scheduled.set(false);
+            if (!queue.isEmpty()) schedule();
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.nickermancy.io;
 
 import java.nio.file.Path;
+import java.util.Objects;
 
 public class FileChangeEvent {
 
@@ -23,4 +24,22 @@ public class FileChangeEvent {
     public Path getPath() {
         return path;
     }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof FileChangeEvent)) return false;
+        final var that = (FileChangeEvent) o;
+        return type == that.type && path.equals(that.path);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(type, path);
+    }
+
+    @Override
+    public String toString() {
+        return type + " " + path;
+    }
 }
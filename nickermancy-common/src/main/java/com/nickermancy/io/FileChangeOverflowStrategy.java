@@ -0,0 +1,28 @@
+package com.nickermancy.io;
+
+import java.nio.file.Path;
+
+/**
+ * Describes what happens to the changes to a watched folder while the buffer of a
+ * {@link FileWatchService#watch(Path, int, FileChangeOverflowStrategy) watching flux} is full, that is, while its
+ * subscriber has not requested them.
+ */
+public enum FileChangeOverflowStrategy {
+
+    /**
+     * The oldest buffered change is discarded to make room for the new change.
+     */
+    DROP_OLDEST,
+
+    /**
+     * Only the net effect of the changes to each path is buffered (see {@link FileWatchOptions#withDebounce}), so the
+     * buffer fills up with distinct paths rather than with changes. When it holds as many paths as it can, the pending
+     * change that has waited longest is discarded.
+     */
+    LATEST_PER_PATH,
+
+    /**
+     * The flux fails with an overflow exception, and the folder is no longer watched.
+     */
+    ERROR
+}
@@ -0,0 +1,96 @@
+package com.nickermancy.io;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Objects;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * A cheap summary of a file's state, made up of its size, last modified time and file key, that can be used to detect
+ * whether the file has changed without reading its contents.
+ */
+public final class FileFingerprint {
+
+    /**
+     * Returns the fingerprint of the file at the given path, following symbolic links. Only the file's attributes
+     * are read.
+     *
+     * @param path the path of the file
+     *
+     * @return the fingerprint of the file
+     *
+     * @throws IOException if the file's attributes could not be read
+     */
+    public static FileFingerprint of(Path path) throws IOException {
+        return of(Files.readAttributes(path, BasicFileAttributes.class));
+    }
+
+    /**
+     * Returns the fingerprint described by the given file attributes.
+     *
+     * @param attributes the attributes of a file
+     *
+     * @return the fingerprint of the file
+     */
+    public static FileFingerprint of(BasicFileAttributes attributes) {
+        final var fileKey = attributes.fileKey();
+        return new FileFingerprint(attributes.size(), attributes.lastModifiedTime().to(NANOSECONDS),
+            fileKey == null ? null : fileKey.toString());
+    }
+
+    private final long size;
+    private final long lastModified;
+    private final String fileKey;
+
+    /**
+     * @param size         the size of the file in bytes
+     * @param lastModified the last modified time of the file in nanoseconds since the epoch
+     * @param fileKey      the string form of the file key (e.g. device and inode), or {@code null} if the file system
+     *                     does not provide one
+     */
+    public FileFingerprint(long size, long lastModified, String fileKey) {
+        this.size = size;
+        this.lastModified = lastModified;
+        this.fileKey = fileKey;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * @return the last modified time of the file in nanoseconds since the epoch, so that a rewrite of the same size
+     * within the same millisecond is still detected on file systems that record finer times
+     */
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * @return the string form of the file key, or {@code null} if the file system does not provide one
+     */
+    public String getFileKey() {
+        return fileKey;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof FileFingerprint)) return false;
+        final var that = (FileFingerprint) o;
+        return size == that.size && lastModified == that.lastModified && Objects.equals(fileKey, that.fileKey);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(size, lastModified, fileKey);
+    }
+
+    @Override
+    public String toString() {
+        return "FileFingerprint{size=" + size + ", lastModified=" + lastModified + ", fileKey=" + fileKey + "}";
+    }
+}
@@ -0,0 +1,157 @@
+package com.nickermancy.io;
+
+import com.nickermancy.logging.Logger;
+
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.BiPredicate;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.springframework.lang.Nullable;
+
+public class FileTreeSupport {
+
+    private static final Logger log = Logger.getLogger();
+
+    /**
+     * Returns a lazily populated stream of the files in a tree that match a predicate, along with the attributes that
+     * were read while walking the tree, so that each file is stat'ed exactly once. Like {@link Files#find}, the tree
+     * is walked depth first, parents before children, and symbolic links are not followed. Unlike it, directories that
+     * cannot be read are logged and skipped rather than failing the stream.
+     *
+     * @param start   the root of the tree
+     * @param matcher the predicate of the files to be included, which is given the attributes of each file
+     *
+     * @return a stream of the matching files, which must be closed
+     *
+     * @throws IOException if the attributes of the root could not be read
+     */
+    public static Stream<FoundFile> find(Path start, BiPredicate<Path, BasicFileAttributes> matcher) throws IOException {
+        final var walk = new Walk(start, Files.readAttributes(start, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS));
+        return StreamSupport
+            .stream(Spliterators.spliteratorUnknownSize(walk, Spliterator.ORDERED | Spliterator.NONNULL), false)
+            .onClose(walk::close)
+            .filter(found -> matcher.test(found.path, found.attributes));
+    }
+
+    /**
+     * A file found in a tree, with the attributes that were read while walking the tree.
+     */
+    public static final class FoundFile {
+
+        private final Path path;
+        private final BasicFileAttributes attributes;
+
+        private FoundFile(Path path, BasicFileAttributes attributes) {
+            this.path = path;
+            this.attributes = attributes;
+        }
+
+        public Path getPath() {
+            return path;
+        }
+
+        /**
+         * @return the attributes of the file, or of the link itself if the file is a symbolic link
+         */
+        public BasicFileAttributes getAttributes() {
+            return attributes;
+        }
+    }
+
+    //-- Private Implementation --------------------------------------------------------------------------------------//
+
+    private static final class Walk implements Iterator<FoundFile> {
+
+        private final Deque<DirectoryStream<Path>> streams = new ArrayDeque<>();
+        private final Deque<Iterator<Path>> iterators = new ArrayDeque<>();
+        @Nullable
+        private FoundFile next;
+
+        private Walk(Path start, BasicFileAttributes attributes) {
+            this.next = visit(start, attributes);
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && !iterators.isEmpty()) {
+                final Path path;
+                try {
+                    if (!iterators.peek().hasNext()) {
+                        pop();
+                        continue;
+                    }
+                    path = iterators.peek().next();
+                } catch (DirectoryIteratorException ex) {
+                    log.warn(() -> "Failed to read directory entries: " + ex.getCause().getMessage(), ex.getCause());
+                    pop();
+                    continue;
+                }
+                try {
+                    next = visit(path, Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS));
+                } catch (NoSuchFileException ex) {
+                    // Deleted since it was listed
+                } catch (IOException ex) {
+                    log.warn(() -> "Failed to read file attributes: " + ex.getMessage(), ex);
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public FoundFile next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            final var found = next;
+            next = null;
+            return found;
+        }
+
+        private FoundFile visit(Path path, BasicFileAttributes attributes) {
+            if (attributes.isDirectory()) {
+                try {
+                    final var stream = Files.newDirectoryStream(path);
+                    streams.push(stream);
+                    iterators.push(stream.iterator());
+                } catch (NoSuchFileException ex) {
+                    // Deleted since it was listed
+                } catch (IOException ex) {
+                    log.warn(() -> "Failed to read directory: " + ex.getMessage(), ex);
+                }
+            }
+            return new FoundFile(path, attributes);
+        }
+
+        private void pop() {
+            iterators.pop();
+            closeQuietly(streams.pop());
+        }
+
+        private void close() {
+            while (!streams.isEmpty()) {
+                closeQuietly(streams.pop());
+            }
+            iterators.clear();
+        }
+
+        private static void closeQuietly(DirectoryStream<Path> stream) {
+            try {
+                stream.close();
+            } catch (IOException ex) {
+                log.warn(() -> "Failed to close directory: " + ex.getMessage(), ex);
+            }
+        }
+    }
+}
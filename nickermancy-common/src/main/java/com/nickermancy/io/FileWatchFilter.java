@@ -0,0 +1,100 @@
+package com.nickermancy.io;
+
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.Arrays;
+import java.util.function.Predicate;
+
+/**
+ * Selects the changes of a watched folder that are delivered to its listener by the names of the changed files and
+ * folders. Excluded names apply to both files and folders, and the changes within excluded folders are not observed
+ * at all; included names only apply to files, so the creation and deletion of folders are delivered unless they are
+ * excluded. Instances are immutable.
+ * <p>
+ * The filter is applied by the thread that receives the events of the file system, before the changes are queued for
+ * delivery, so it should be cheap and must not block.
+ */
+public final class FileWatchFilter {
+
+    private static final FileWatchFilter ALL = new FileWatchFilter(name -> true, name -> false);
+
+    /**
+     * Returns the filter that includes all files, and excludes nothing.
+     */
+    public static FileWatchFilter all() {
+        return ALL;
+    }
+
+    /**
+     * Returns a filter that includes the files whose names match the predicate.
+     *
+     * @param fileNameFilter tests the name of a file, as a single-element path
+     */
+    public static FileWatchFilter include(Predicate<Path> fileNameFilter) {
+        return new FileWatchFilter(fileNameFilter, ALL.exclude);
+    }
+
+    /**
+     * Returns a filter that includes the files whose names match any of the glob patterns (see
+     * {@link java.nio.file.FileSystem#getPathMatcher}), for example {@code *.png}.
+     */
+    public static FileWatchFilter include(String... globs) {
+        return include(matcher(globs));
+    }
+
+    private final Predicate<Path> include;
+    private final Predicate<Path> exclude;
+
+    private FileWatchFilter(Predicate<Path> include, Predicate<Path> exclude) {
+        this.include = include;
+        this.exclude = exclude;
+    }
+
+    /**
+     * Returns a filter that additionally excludes the files and folders whose names match the predicate.
+     *
+     * @param nameFilter tests the name of a file or folder, as a single-element path
+     */
+    public FileWatchFilter exclude(Predicate<Path> nameFilter) {
+        return new FileWatchFilter(include, exclude.or(nameFilter));
+    }
+
+    /**
+     * Returns a filter that additionally excludes the files and folders whose names match any of the glob patterns,
+     * for example {@code *.part} or {@code .git}.
+     */
+    public FileWatchFilter exclude(String... globs) {
+        return exclude(matcher(globs));
+    }
+
+    /**
+     * Returns whether the changes to a file with the given name are delivered, unless the name is excluded.
+     */
+    public boolean includes(Path fileName) {
+        return this == ALL || include.test(fileName);
+    }
+
+    /**
+     * Returns whether the changes to a file or folder with the given name, or within a folder with that name, are
+     * ignored.
+     */
+    public boolean excludes(Path name) {
+        return this != ALL && exclude.test(name);
+    }
+
+    //-- Private Implementation --------------------------------------------------------------------------------------//
+
+    private static Predicate<Path> matcher(String... globs) {
+        final var fileSystem = FileSystems.getDefault();
+        final var matchers = Arrays.stream(globs)
+            .map(glob -> fileSystem.getPathMatcher("glob:" + glob))
+            .toArray(PathMatcher[]::new);
+        return name -> {
+            for (final var matcher : matchers) {
+                if (matcher.matches(name)) return true;
+            }
+            return false;
+        };
+    }
+}
@@ -0,0 +1,197 @@
+package com.nickermancy.io;
+
+import java.time.Duration;
+
+import org.springframework.lang.Nullable;
+
+/**
+ * Describes how the changes to a watched folder are delivered to its listener. Instances are immutable; each
+ * {@code with} method returns a modified copy.
+ */
+public final class FileWatchOptions {
+
+    /**
+     * The default maximum number of deliveries queued for a listener.
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 10_000;
+
+    /**
+     * The default interval at which changing directories are polled.
+     */
+    public static final Duration DEFAULT_MIN_POLL_INTERVAL = Duration.ofSeconds(2);
+
+    /**
+     * The default interval at which unchanging directories are polled.
+     */
+    public static final Duration DEFAULT_MAX_POLL_INTERVAL = Duration.ofMinutes(1);
+
+    private static final FileWatchOptions DEFAULTS = new FileWatchOptions(null, null, DEFAULT_QUEUE_CAPACITY,
+        SaturationPolicy.BLOCK, false, DEFAULT_MIN_POLL_INTERVAL, DEFAULT_MAX_POLL_INTERVAL, FileWatchFilter.all());
+
+    /**
+     * Returns the default options, with which each change is delivered as soon as it is observed.
+     */
+    public static FileWatchOptions defaults() {
+        return DEFAULTS;
+    }
+
+    @Nullable
+    private final Duration quietPeriod;
+    @Nullable
+    private final Duration maxDelay;
+    private final int queueCapacity;
+    private final SaturationPolicy saturationPolicy;
+    private final boolean polling;
+    private final Duration minPollInterval;
+    private final Duration maxPollInterval;
+    private final FileWatchFilter filter;
+
+    private FileWatchOptions(@Nullable Duration quietPeriod, @Nullable Duration maxDelay, int queueCapacity,
+                             SaturationPolicy saturationPolicy, boolean polling, Duration minPollInterval,
+                             Duration maxPollInterval, FileWatchFilter filter) {
+        this.quietPeriod = quietPeriod;
+        this.maxDelay = maxDelay;
+        this.queueCapacity = queueCapacity;
+        this.saturationPolicy = saturationPolicy;
+        this.polling = polling;
+        this.minPollInterval = minPollInterval;
+        this.maxPollInterval = maxPollInterval;
+        this.filter = filter;
+    }
+
+    /**
+     * Returns options with which changes are held back until the watched folder has gone without changes for the
+     * quiet period, or until the oldest held back change has waited for the maximum delay. The held back changes are
+     * then delivered as a single batch with at most one event per path, formed by merging the events of each path:
+     * for example, a file that is created, modified and deleted within a batch produces no event at all.
+     *
+     * @param quietPeriod the time without changes after which held back changes are delivered
+     * @param maxDelay    the maximum time that a change is held back
+     */
+    public FileWatchOptions withDebounce(Duration quietPeriod, Duration maxDelay) {
+        if (quietPeriod.isNegative() || quietPeriod.isZero()) {
+            throw new IllegalArgumentException("quietPeriod must be positive");
+        }
+        if (maxDelay.compareTo(quietPeriod) < 0) {
+            throw new IllegalArgumentException("maxDelay must not be less than quietPeriod");
+        }
+        return new FileWatchOptions(quietPeriod, maxDelay, queueCapacity, saturationPolicy, polling,
+            minPollInterval, maxPollInterval, filter);
+    }
+
+    /**
+     * Returns options with which at most the given number of deliveries are queued for the listener, and with which
+     * further changes are handled according to the saturation policy. Each delivery is a single event, or a batch of
+     * events when changes are debounced.
+     *
+     * @param queueCapacity    the maximum number of deliveries queued for the listener
+     * @param saturationPolicy what happens to changes while the queue is full
+     */
+    public FileWatchOptions withQueue(int queueCapacity, SaturationPolicy saturationPolicy) {
+        if (queueCapacity <= 0) throw new IllegalArgumentException("queueCapacity must be positive");
+        return new FileWatchOptions(quietPeriod, maxDelay, queueCapacity, saturationPolicy, polling,
+            minPollInterval, maxPollInterval, filter);
+    }
+
+    /**
+     * Returns options with which changes are found by polling rather than by the watch service of the file system,
+     * for file systems whose watch service misses or floods changes, such as network and overlay file systems.
+     * <p>
+     * Each directory is polled on its own schedule: a directory that has changed is polled again after the minimum
+     * interval, and each poll that finds no changes doubles its interval, up to the maximum interval.
+     *
+     * @param minPollInterval the interval at which changing directories are polled
+     * @param maxPollInterval the interval at which unchanging directories are polled
+     */
+    public FileWatchOptions withPolling(Duration minPollInterval, Duration maxPollInterval) {
+        final var intervals = withPollIntervals(minPollInterval, maxPollInterval);
+        return new FileWatchOptions(quietPeriod, maxDelay, queueCapacity, saturationPolicy, true,
+            intervals.minPollInterval, intervals.maxPollInterval, filter);
+    }
+
+    /**
+     * Returns options with which directories are polled at the given intervals when they are polled. Unless polling is
+     * enabled by {@link #withPolling}, this only applies to the directories of a tree that are polled because the watch
+     * service of the file system has run out of watches (see {@link FileWatchService#setWatchBudget}).
+     *
+     * @param minPollInterval the interval at which changing directories are polled
+     * @param maxPollInterval the interval at which unchanging directories are polled
+     */
+    public FileWatchOptions withPollIntervals(Duration minPollInterval, Duration maxPollInterval) {
+        if (minPollInterval.isNegative() || minPollInterval.isZero()) {
+            throw new IllegalArgumentException("minPollInterval must be positive");
+        }
+        if (maxPollInterval.compareTo(minPollInterval) < 0) {
+            throw new IllegalArgumentException("maxPollInterval must not be less than minPollInterval");
+        }
+        return new FileWatchOptions(quietPeriod, maxDelay, queueCapacity, saturationPolicy, polling, minPollInterval,
+            maxPollInterval, filter);
+    }
+
+    /**
+     * Returns options with which only the changes selected by the filter are delivered, and with which excluded
+     * folders are neither watched nor polled.
+     */
+    public FileWatchOptions withFilter(FileWatchFilter filter) {
+        return new FileWatchOptions(quietPeriod, maxDelay, queueCapacity, saturationPolicy, polling, minPollInterval,
+            maxPollInterval, filter);
+    }
+
+    public boolean isDebounced() {
+        return quietPeriod != null;
+    }
+
+    @Nullable
+    public Duration getQuietPeriod() {
+        return quietPeriod;
+    }
+
+    @Nullable
+    public Duration getMaxDelay() {
+        return maxDelay;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public SaturationPolicy getSaturationPolicy() {
+        return saturationPolicy;
+    }
+
+    public boolean isPolling() {
+        return polling;
+    }
+
+    public Duration getMinPollInterval() {
+        return minPollInterval;
+    }
+
+    public Duration getMaxPollInterval() {
+        return maxPollInterval;
+    }
+
+    public FileWatchFilter getFilter() {
+        return filter;
+    }
+
+    public enum SaturationPolicy {
+
+        /**
+         * The watch service waits for the listener to catch up, which may cause the events of the file system to
+         * overflow; overflowing directories are rescanned.
+         */
+        BLOCK,
+
+        /**
+         * Changes are discarded while the queue is full.
+         */
+        DROP,
+
+        /**
+         * Changes are discarded while the queue is full, and the directories they occurred in are rescanned later, so
+         * the listener eventually receives the net effect of the discarded changes.
+         */
+        RESCAN
+    }
+}
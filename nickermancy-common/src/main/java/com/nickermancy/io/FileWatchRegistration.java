@@ -0,0 +1,76 @@
+package com.nickermancy.io;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static java.lang.String.format;
+
+/**
+ * Reports the progress of registering a folder and its subfolders with a {@link FileWatchService}: the folders are
+ * first scanned, and then each of them is either watched by the watch service of the file system, or polled once the
+ * watch budget of the service has run out.
+ */
+public final class FileWatchRegistration {
+
+    private final Path path;
+    private final long scannedCount;
+    private final long watchedCount;
+    private final long polledCount;
+    private final Duration elapsed;
+    private final boolean complete;
+
+    FileWatchRegistration(Path path, long scannedCount, long watchedCount, long polledCount, Duration elapsed,
+                          boolean complete) {
+        this.path = path;
+        this.scannedCount = scannedCount;
+        this.watchedCount = watchedCount;
+        this.polledCount = polledCount;
+        this.elapsed = elapsed;
+        this.complete = complete;
+    }
+
+    /**
+     * Returns the registered folder.
+     */
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Returns the number of folders scanned so far.
+     */
+    public long getScannedCount() {
+        return scannedCount;
+    }
+
+    /**
+     * Returns the number of folders watched by the watch service of the file system.
+     */
+    public long getWatchedCount() {
+        return watchedCount;
+    }
+
+    /**
+     * Returns the number of folders that are polled.
+     */
+    public long getPolledCount() {
+        return polledCount;
+    }
+
+    public Duration getElapsed() {
+        return elapsed;
+    }
+
+    /**
+     * Returns whether the registration has completed, in which case each scanned folder is either watched or polled.
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    @Override
+    public String toString() {
+        return format("%s: %,d folders scanned, %,d watched, %,d polled in %,d ms%s", path, scannedCount, watchedCount,
+            polledCount, elapsed.toMillis(), complete ? "" : " (in progress)");
+    }
+}
@@ -4,48 +4,263 @@ import com.nickermancy.logging.Logger;
 
 import java.io.IOException;
 import java.nio.file.*;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import org.springframework.lang.Nullable;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
 
 import static com.nickermancy.io.FileChangeEvent.Type.*;
 import static java.lang.String.format;
+import static java.util.Objects.requireNonNull;
 import static java.nio.file.StandardWatchEventKinds.*;
-import static java.util.function.Predicate.isEqual;
-import static java.util.function.Predicate.not;
 
 public class FileWatchService {
 
+    /**
+     * The default minimum time between two rescans of the same directory after its events have overflowed.
+     */
+    public static final Duration DEFAULT_RESCAN_INTERVAL = Duration.ofSeconds(1);
+
     private static final Logger log = Logger.getLogger();
+    private static final Path MAX_USER_WATCHES = Path.of("/proc/sys/fs/inotify/max_user_watches");
+    private static final int PROGRESS_INTERVAL = 10_000;
 
-    private final Map<WatchKey, Path> registrations = new ConcurrentHashMap<>();
-    private final Map<WatchKey, FileChangeListener> listeners = new ConcurrentHashMap<>();
+    // A folder watched for several subscriptions has a single key, and one directory for each subscription
+    private final Map<WatchKey, List<WatchedDirectory>> registrations = new ConcurrentHashMap<>();
+    private final Map<Path, List<WatchedDirectory>> watchedDirectories = new ConcurrentHashMap<>();
 
     private final WatchService watchService;
+    private final long rescanIntervalNanos;
+    private final int dispatchThreads;
+    private final FileWatchOptions defaultOptions;
     private final AtomicBoolean listening = new AtomicBoolean(false);
+    private volatile long watchBudget = defaultWatchBudget();
     private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final ExecutorService dispatchExecutor;
+    private final ScheduledExecutorService pollExecutor;
+    private final ScheduledExecutorService debounceExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        final var thread = new Thread(runnable, "file-watch-debounce");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ScheduledExecutorService rescanExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        final var thread = new Thread(runnable, "file-watch-rescan");
+        thread.setDaemon(true);
+        return thread;
+    });
 
     public FileWatchService(WatchService watchService) {
+        this(watchService, DEFAULT_RESCAN_INTERVAL);
+    }
+
+    /**
+     * @param watchService   the watch service to be listened to
+     * @param rescanInterval the minimum time between two rescans of the same directory after its events have
+     *                       overflowed
+     */
+    public FileWatchService(WatchService watchService, Duration rescanInterval) {
+        this(watchService, rescanInterval, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param watchService    the watch service to be listened to
+     * @param rescanInterval  the minimum time between two rescans of the same directory after its events have
+     *                        overflowed
+     * @param dispatchThreads the number of worker threads on which changes are delivered to listeners
+     */
+    public FileWatchService(WatchService watchService, Duration rescanInterval, int dispatchThreads) {
+        this(watchService, rescanInterval, dispatchThreads, FileWatchOptions.defaults());
+    }
+
+    /**
+     * @param watchService    the watch service to be listened to
+     * @param rescanInterval  the minimum time between two rescans of the same directory after its events have
+     *                        overflowed
+     * @param dispatchThreads the number of worker threads on which changes are delivered to listeners, and on which
+     *                        directories are polled
+     * @param defaultOptions  the options of the listeners registered without options; with polling options, none of
+     *                        those listeners rely on the watch service
+     */
+    public FileWatchService(WatchService watchService, Duration rescanInterval, int dispatchThreads,
+                            FileWatchOptions defaultOptions) {
+        if (dispatchThreads <= 0) throw new IllegalArgumentException("dispatchThreads must be positive");
         this.watchService = watchService;
+        this.rescanIntervalNanos = rescanInterval.toNanos();
+        this.dispatchThreads = dispatchThreads;
+        this.defaultOptions = defaultOptions;
+        final var dispatchThreadCount = new AtomicInteger();
+        this.dispatchExecutor = Executors.newFixedThreadPool(dispatchThreads, runnable -> {
+            final var thread = new Thread(runnable, "file-watch-dispatch-" + dispatchThreadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        final var pollThreadCount = new AtomicInteger();
+        this.pollExecutor = Executors.newScheduledThreadPool(dispatchThreads, runnable -> {
+            final var thread = new Thread(runnable, "file-watch-poll-" + pollThreadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
     }
 
     public void destroy() throws IOException {
         this.listening.set(false);
         watchService.close();
         executor.shutdownNow();
+        debounceExecutor.shutdownNow();
+        rescanExecutor.shutdownNow();
+        dispatchExecutor.shutdownNow();
+        pollExecutor.shutdownNow();
     }
 
     public void register(Path path, FileChangeListener fileChangeListener) throws IOException {
-        final var key = path.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+        register(path, new Subscription(events -> events.forEach(fileChangeListener::accept), defaultOptions));
+    }
 
-        log.trace(() -> format("Registered with the file system watch service: %s", path));
+    /**
+     * Registers a listener for the changes to a folder and its subfolders, delivered as described by the options.
+     * <p>
+     * The thread that receives the events of the file system only queues them for delivery. Changes are delivered on
+     * a pool of worker threads: the changes to any one path are delivered in order, while changes to different paths
+     * may be delivered in parallel. Debounced batches are delivered one at a time, in order.
+     *
+     * @param path                    the folder to be watched
+     * @param fileChangeBatchListener the listener to receive the changes
+     * @param options                 describes how changes are delivered to the listener
+     *
+     * @throws IOException if the folder could not be registered with the watch service
+     */
+    public void register(Path path, FileChangeBatchListener fileChangeBatchListener, FileWatchOptions options)
+        throws IOException {
+        register(path, new Subscription(fileChangeBatchListener, options));
+    }
 
-        registrations.put(key, path);
-        listeners.put(key, fileChangeListener);
+    /**
+     * Registers a listener for the changes to a folder and its subfolders, as {@link #register(Path,
+     * FileChangeBatchListener, FileWatchOptions)} does, reporting the progress of the registration of a large tree.
+     * <p>
+     * The tree is scanned in parallel before any of its folders is registered. The folders are then watched by the
+     * watch service of the file system, most recently changed subtrees first, for as long as the watch budget of this
+     * service lasts; the remaining subtrees, which are the ones that have gone without changes for the longest time,
+     * are polled at the poll intervals of the options instead.
+     *
+     * @param path                    the folder to be watched
+     * @param fileChangeBatchListener the listener to receive the changes
+     * @param options                 describes how changes are delivered to the listener
+     * @param progressListener        called, on any thread, as the folders are scanned, and once more when the
+     *                                registration is complete
+     *
+     * @return the completed registration
+     *
+     * @throws IOException if the folder could not be registered
+     */
+    public FileWatchRegistration register(Path path, FileChangeBatchListener fileChangeBatchListener,
+                                          FileWatchOptions options, Consumer<FileWatchRegistration> progressListener)
+        throws IOException {
+        return register(path, new Subscription(fileChangeBatchListener, options), progressListener);
+    }
+
+    /**
+     * Returns a flux of the changes to a folder and its subfolders, which buffers the last
+     * {@link FileWatchOptions#DEFAULT_QUEUE_CAPACITY} changes to distinct paths until they are requested.
+     *
+     * @param path the folder to be watched
+     * @see #watch(Path, int, FileChangeOverflowStrategy)
+     */
+    public Flux<FileChangeEvent> watch(Path path) {
+        return watch(path, FileWatchOptions.DEFAULT_QUEUE_CAPACITY, FileChangeOverflowStrategy.LATEST_PER_PATH);
+    }
 
-        if (isDirectory(path)) registerChildren(path, fileChangeListener);
+    /**
+     * Returns a flux of the changes to a folder and its subfolders. The folder is registered, with the default
+     * options of this service, for each subscriber, and is no longer watched for a subscriber that cancels its
+     * subscription. Changes are buffered until the subscriber requests them; while the buffer is full, they are
+     * handled according to the overflow strategy.
+     * <p>
+     * As with listeners, the changes observed by the watch service are only delivered once the service has been
+     * {@link #start() started}.
+     *
+     * @param path             the folder to be watched
+     * @param bufferSize       the maximum number of changes held for the subscriber
+     * @param overflowStrategy what happens to changes while the buffer is full
+     */
+    public Flux<FileChangeEvent> watch(Path path, int bufferSize, FileChangeOverflowStrategy overflowStrategy) {
+        return watch(path, defaultOptions, bufferSize, overflowStrategy);
+    }
+
+    /**
+     * Returns a flux of the changes to a folder and its subfolders that are selected by the filter, as
+     * {@link #watch(Path)} does.
+     *
+     * @param path   the folder to be watched
+     * @param filter selects the changes to be emitted, and the subfolders to be watched
+     */
+    public Flux<FileChangeEvent> watch(Path path, FileWatchFilter filter) {
+        return watch(path, defaultOptions.withFilter(filter), FileWatchOptions.DEFAULT_QUEUE_CAPACITY,
+            FileChangeOverflowStrategy.LATEST_PER_PATH);
+    }
+
+    /**
+     * Returns a flux of the changes to a folder and its subfolders, collected into batches of at most the given size
+     * that are emitted at the latest after the given delay.
+     *
+     * @param path          the folder to be watched
+     * @param maxBatchSize  the maximum number of changes in a batch
+     * @param maxBatchDelay the maximum time that a change waits for its batch to be emitted
+     * @see Flux#bufferTimeout(int, Duration)
+     */
+    public Flux<List<FileChangeEvent>> watch(Path path, int maxBatchSize, Duration maxBatchDelay) {
+        return watch(path).bufferTimeout(maxBatchSize, maxBatchDelay);
+    }
+
+    /**
+     * Returns the maximum number of folders watched by the watch service of the file system. By default, this is half
+     * of the inotify watches available to the user on Linux, which leaves the other half to other processes, and
+     * unlimited elsewhere.
+     */
+    public long getWatchBudget() {
+        return watchBudget;
+    }
+
+    /**
+     * Sets the maximum number of folders watched by the watch service of the file system. Folders registered beyond
+     * this budget are polled instead; folders that are already watched remain watched.
+     */
+    public void setWatchBudget(long watchBudget) {
+        if (watchBudget < 0) throw new IllegalArgumentException("watchBudget must not be negative");
+        this.watchBudget = watchBudget;
+    }
+
+    /**
+     * Returns the number of folders watched by the watch service of the file system.
+     */
+    public int getWatchCount() {
+        return registrations.size();
+    }
+
+    /**
+     * Returns the number of folders that are polled.
+     */
+    public long getPolledCount() {
+        return watchedDirectories.values().stream().flatMap(List::stream).filter(WatchedDirectory::isPolled).count();
     }
 
     public void start() {
@@ -55,25 +270,158 @@ public class FileWatchService {
 
     //-- Private Implementation --------------------------------------------------------------------------------------//
 
+    private Flux<FileChangeEvent> watch(Path path, FileWatchOptions options, int bufferSize,
+                                        FileChangeOverflowStrategy overflowStrategy) {
+        if (bufferSize <= 0) throw new IllegalArgumentException("bufferSize must be positive");
+        return Flux.create(sink -> {
+            final var buffer = new FileChangeBuffer(sink, bufferSize, overflowStrategy);
+            final var subscription = new Subscription(buffer::addAll, options);
+            sink.onDispose(subscription::cancel);
+            try {
+                register(path, subscription);
+            } catch (IOException | RuntimeException ex) {
+                sink.error(ex);
+            }
+        }, FluxSink.OverflowStrategy.ERROR);
+    }
+
+    /**
+     * Reads the maximum number of inotify watches of the user, and returns half of it.
+     */
+    static long defaultWatchBudget() {
+        try {
+            return Long.parseLong(Files.readString(MAX_USER_WATCHES).trim()) / 2;
+        } catch (IOException | NumberFormatException ex) {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    private void register(Path path, Subscription subscription) throws IOException {
+        register(path, subscription, registration -> {});
+    }
+
+    private FileWatchRegistration register(Path path, Subscription subscription,
+                                           Consumer<FileWatchRegistration> progressListener) throws IOException {
+        if (!isDirectory(path)) throw new NotDirectoryException(path.toString());
+        final var started = System.nanoTime();
+        final var scannedCount = new AtomicLong();
+        final var tree = DirectoryTree.scan(path, subscription.options.getFilter(), scanned -> {
+            final var count = scannedCount.incrementAndGet();
+            if (count % PROGRESS_INTERVAL == 0) {
+                progressListener.accept(new FileWatchRegistration(path, count, 0, 0,
+                    Duration.ofNanos(System.nanoTime() - started), false));
+            }
+        });
+
+        var watchedCount = 0L;
+        if (!subscription.options.isPolling()) {
+            // Spend the watch budget on the most recently changed subtrees, and poll the remaining ones
+            final var available = watchBudget - registrations.size();
+            final var subtrees = new PriorityQueue<>(
+                Comparator.comparingLong(DirectoryTree::getLatestModificationTime).reversed());
+            subtrees.add(tree);
+            while (watchedCount < available && !subtrees.isEmpty()) {
+                final var subtree = subtrees.poll();
+                if (watchDirectory(subtree, subscription)) {
+                    watchedCount++;
+                    subtrees.addAll(subtree.getChildren());
+                } else {
+                    pollTree(subtree, subscription);
+                }
+            }
+            subtrees.forEach(subtree -> pollTree(subtree, subscription));
+        } else {
+            pollTree(tree, subscription);
+        }
+
+        final var registration = new FileWatchRegistration(path, tree.size(), watchedCount, tree.size() - watchedCount,
+            Duration.ofNanos(System.nanoTime() - started), true);
+        if (registration.getPolledCount() > 0 && !subscription.options.isPolling()) {
+            log.warn(() -> format("Out of watches, polling %,d folders: %s", registration.getPolledCount(), path));
+        }
+        log.debug(registration::toString);
+        progressListener.accept(registration);
+        return registration;
+    }
+
+    /**
+     * Registers a directory with the watch service.
+     *
+     * @return whether the directory is watched, which is not the case if the watch service has run out of watches
+     */
+    private boolean watchDirectory(DirectoryTree tree, Subscription subscription) {
+        final var path = tree.getPath();
+        final var directory = new WatchedDirectory(path, subscription, tree.getSnapshot());
+        WatchKey key;
+        do {
+            try {
+                // Returns the key of the directory if it is already registered for another subscription
+                key = path.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+            } catch (IOException ex) {
+                log.warn(() -> format("Failed to register with the file system watch service %s: %s", path, ex));
+                return false;
+            }
+            registrations.compute(key, (watchKey, directories) -> add(directories, directory));
+            // The key may have been cancelled by the last of the other subscriptions in the meantime
+            if (key.isValid()) break;
+            removeRegistration(key, watched -> watched == directory);
+        } while (true);
+        log.trace("Registered with the file system watch service: {}", path);
+        watchedDirectories.compute(path, (watchedPath, directories) -> add(directories, directory));
+        return true;
+    }
+
+    /**
+     * Schedules each directory of a tree to be polled. Unless the subscription is polling, the directories have been
+     * left to polling because they are the least recently changed ones, so their first poll is spread over the
+     * maximum poll interval.
+     */
+    private void pollTree(DirectoryTree tree, Subscription subscription) {
+        final var options = subscription.options;
+        final var minPollIntervalNanos = options.getMinPollInterval().toNanos();
+        final var maxPollIntervalNanos = options.getMaxPollInterval().toNanos();
+        tree.forEach(subtree -> {
+            final var directory = new WatchedDirectory(subtree.getPath(), subscription, subtree.getSnapshot(),
+                minPollIntervalNanos, maxPollIntervalNanos);
+            watchedDirectories.compute(directory.path, (path, directories) -> add(directories, directory));
+            if (options.isPolling()) {
+                schedulePoll(directory, minPollIntervalNanos);
+            } else {
+                directory.pollIntervalNanos = maxPollIntervalNanos;
+                schedulePoll(directory, ThreadLocalRandom.current().nextLong(maxPollIntervalNanos));
+            }
+        });
+    }
+
     private void listen() {
         try {
             while (listening.get()) {
                 final var queuedKey = watchService.take();
-                queuedKey.pollEvents().stream()
-                    .filter(not(isEqual(OVERFLOW)))
-                    .forEach(event -> {
-                        final var childPath = (Path) event.context();
-                        final var parentPath = registrations.get(queuedKey);
-                        final var path = parentPath.resolve(childPath);
+                final var directories = registrations.get(queuedKey);
+                if (directories == null) {
+                    queuedKey.cancel();
+                    continue;
+                }
+                final var events = queuedKey.pollEvents();
+                for (final var directory : directories) {
+                    for (final var event : events) {
+                        if (event.kind() == OVERFLOW) {
+                            scheduleRescan(directory);
+                            continue;
+                        }
+                        final var name = (Path) event.context();
+                        if (!accepts(directory, name, event.kind())) continue;
+                        final var path = directory.path.resolve(name);
                         if (event.kind() == ENTRY_CREATE) {
-                            handleFileCreated(queuedKey, new FileChangeEvent(CREATED, path));
+                            handleFileCreated(directory, new FileChangeEvent(CREATED, path));
                         } else if (event.kind() == ENTRY_MODIFY) {
-                            handleFileModified(queuedKey, new FileChangeEvent(MODIFIED, path));
+                            handleFileModified(directory, new FileChangeEvent(MODIFIED, path));
                         } else if (event.kind() == ENTRY_DELETE) {
-                            handleFileDeleted(queuedKey, new FileChangeEvent(DELETED, path), parentPath);
+                            handleFileDeleted(queuedKey, directory, new FileChangeEvent(DELETED, path));
                         }
-                    });
-                if (!queuedKey.reset()) registrations.remove(queuedKey);
+                    }
+                }
+                if (!queuedKey.reset()) directories.forEach(directory -> unregister(queuedKey, directory));
                 if (registrations.isEmpty()) break;
             }
         } catch (InterruptedException ex) {
@@ -83,46 +431,265 @@ public class FileWatchService {
         }
     }
 
-    private void registerChildren(Path path, FileChangeListener fileChangeListener) {
-        try {
-            Files.list(path)
-                .filter(this::isDirectory)
-                .forEach(p -> {
-                    try {
-                        register(p, fileChangeListener);
-                    } catch (IOException ex) {
-                        log.error(ex.getMessage(), ex);
-                    }
-                });
-        } catch (IOException ex) {
-            log.error(ex.getMessage(), ex);
+    /**
+     * Returns whether an event of the watch service passes the filter of its subscription. Names that are not included
+     * may still be those of folders, whose creation and deletion are accepted.
+     */
+    private boolean accepts(WatchedDirectory directory, Path name, WatchEvent.Kind<?> kind) {
+        final var filter = directory.subscription.options.getFilter();
+        if (filter.excludes(name)) return false;
+        if (filter.includes(name)) return true;
+        if (kind == ENTRY_CREATE) return isDirectory(directory.path.resolve(name));
+        if (kind == ENTRY_DELETE) {
+            return directory.snapshot.isDirectory(name.toString())
+                || findDirectory(directory.path.resolve(name), directory.subscription) != null;
         }
+        return false;
     }
 
-    private void handleFileCreated(WatchKey queuedKey, FileChangeEvent event) {
+    private void handleFileCreated(WatchedDirectory directory, FileChangeEvent event) {
         if (isDirectory(event.getPath())) {
             try {
-                register(event.getPath(), listeners.get(queuedKey));
+                register(event.getPath(), directory.subscription);
             } catch (IOException e) {
                 log.error(() -> format("Failed to register with the file system watch service %s", event.getPath()));
             }
         }
-        listeners.get(queuedKey).accept(event);
+        directory.subscription.accept(event);
+    }
+
+    private void handleFileModified(WatchedDirectory directory, FileChangeEvent event) {
+        directory.subscription.accept(event);
+    }
+
+    private void handleFileDeleted(WatchKey queuedKey, WatchedDirectory directory, FileChangeEvent event) {
+        if (event.getPath().equals(directory.path)) {
+            unregister(queuedKey, directory);
+        }
+        directory.subscription.accept(event);
+    }
+
+    private void schedulePoll(WatchedDirectory directory, long delayNanos) {
+        try {
+            pollExecutor.schedule(() -> poll(directory), delayNanos, TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException ex) {
+            log.debug("Not polling {}, the watch service has been stopped", directory.path);
+        }
+    }
+
+    /**
+     * Compares a polled directory with its last snapshot, and adapts its poll interval: a directory that has changed
+     * is polled again after the minimum interval, while a directory that has not changed is polled half as often.
+     */
+    private void poll(WatchedDirectory directory) {
+        if (findDirectory(directory.path, directory.subscription) != directory) return;
+        if (!isDirectory(directory.path)) {
+            removeDirectories(directory.path, watched -> watched == directory);
+            // The deletion of a subfolder is found by polling its parent
+            final var parent = directory.path.getParent();
+            if (parent == null || findDirectory(parent, directory.subscription) == null) {
+                directory.subscription.accept(new FileChangeEvent(DELETED, directory.path));
+            }
+            return;
+        }
+        final var changes = refresh(directory);
+        directory.pollIntervalNanos = changes > 0
+            ? directory.minPollIntervalNanos
+            : Math.min(directory.maxPollIntervalNanos, directory.pollIntervalNanos * 2);
+        schedulePoll(directory, directory.pollIntervalNanos);
+    }
+
+    private void unregister(WatchKey key, WatchedDirectory directory) {
+        removeRegistration(key, watched -> watched == directory);
+        removeDirectories(directory.path, watched -> watched == directory);
+    }
+
+    /**
+     * Removes the directories of a key that match a predicate, and cancels the key once none are left.
+     */
+    private void removeRegistration(WatchKey key, Predicate<WatchedDirectory> predicate) {
+        registrations.computeIfPresent(key, (watchKey, directories) -> {
+            directories.removeIf(predicate);
+            if (!directories.isEmpty()) return directories;
+            watchKey.cancel();
+            return null;
+        });
+    }
+
+    private void removeDirectories(Path path, Predicate<WatchedDirectory> predicate) {
+        watchedDirectories.computeIfPresent(path, (watchedPath, directories) -> {
+            directories.removeIf(predicate);
+            return directories.isEmpty() ? null : directories;
+        });
+    }
+
+    /**
+     * Returns the directory with the given path that is watched or polled for a subscription, if any.
+     */
+    @Nullable
+    private WatchedDirectory findDirectory(Path path, Subscription subscription) {
+        final var directories = watchedDirectories.get(path);
+        if (directories == null) return null;
+        for (final var directory : directories) {
+            if (directory.subscription == subscription) return directory;
+        }
+        return null;
+    }
+
+    private void rescanDropped(Subscription subscription, List<FileChangeEvent> events) {
+        for (final var event : events) {
+            final var parent = event.getPath().getParent();
+            final var directory = parent == null ? null : findDirectory(parent, subscription);
+            if (directory != null) scheduleRescan(directory);
+        }
+    }
+
+    private static List<WatchedDirectory> add(@Nullable List<WatchedDirectory> directories,
+                                              WatchedDirectory directory) {
+        final var added = directories != null ? directories : new CopyOnWriteArrayList<WatchedDirectory>();
+        added.add(directory);
+        return added;
     }
 
-    private void handleFileModified(WatchKey queuedKey, FileChangeEvent event) {
-        listeners.get(queuedKey).accept(event);
+    /**
+     * Schedules a rescan of a directory whose events have overflowed. Overflows of a directory that is already due to
+     * be rescanned are absorbed by the pending rescan, and each directory is rescanned at most once per rescan
+     * interval, so a storm of overflows costs at most one directory listing per directory and interval.
+     */
+    private void scheduleRescan(WatchedDirectory directory) {
+        if (!directory.rescanPending.compareAndSet(false, true)) return;
+        final var delay = Math.max(0, directory.scannedAt + rescanIntervalNanos - System.nanoTime());
+        log.debug("Events overflowed, rescanning {} in {} ms", directory.path, delay / 1_000_000);
+        rescanExecutor.schedule(() -> rescan(directory), delay, TimeUnit.NANOSECONDS);
     }
 
-    private void handleFileDeleted(WatchKey queuedKey, FileChangeEvent event, Path parentPath) {
-        if (event.getPath().equals(parentPath)) {
-            registrations.remove(queuedKey);
-            listeners.remove(queuedKey);
+    /**
+     * Compares a directory with its last snapshot, and delivers the differences as synthetic events. Changes that
+     * were delivered before the overflow may be delivered again.
+     */
+    private void rescan(WatchedDirectory directory) {
+        directory.rescanPending.set(false);
+        refresh(directory);
+    }
+
+    /**
+     * Compares a directory with its last snapshot, and delivers the differences as synthetic events.
+     *
+     * @return the number of changes found
+     */
+    private int refresh(WatchedDirectory directory) {
+        try {
+            final var previous = directory.snapshot;
+            final var snapshot = DirectorySnapshot.of(directory.path);
+            final var events = previous.diff(directory.path, snapshot);
+            directory.snapshot = snapshot;
+            directory.scannedAt = System.nanoTime();
+            log.trace("Scanned {}, found {} changes", directory.path, events.size());
+            final var filter = directory.subscription.options.getFilter();
+            for (final var event : events) {
+                final var name = event.getPath().getFileName();
+                if (filter.excludes(name)) continue;
+                if (!filter.includes(name)
+                    && !(event.getType() == DELETED ? previous : snapshot).isDirectory(name.toString())) continue;
+                if (event.getType() == CREATED) {
+                    handleFileCreated(directory, event);
+                } else {
+                    directory.subscription.accept(event);
+                }
+            }
+            return events.size();
+        } catch (IOException | RuntimeException ex) {
+            log.error(() -> "Failed to scan " + directory.path, ex);
+            return 0;
         }
-        listeners.get(queuedKey).accept(event);
     }
 
     private boolean isDirectory(Path path) {
         return Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS);
     }
+
+    /**
+     * A directory registered with the watch service or polled, along with the snapshot that it is compared with when it
+     * is polled or when its events overflow.
+     */
+    private static final class WatchedDirectory {
+
+        private final Path path;
+        private final Subscription subscription;
+        private final AtomicBoolean rescanPending = new AtomicBoolean();
+        private final long minPollIntervalNanos;
+        private final long maxPollIntervalNanos;
+        private volatile DirectorySnapshot snapshot;
+        private volatile long scannedAt = System.nanoTime();
+        private volatile long pollIntervalNanos;
+
+        /**
+         * Creates a directory watched by the watch service.
+         */
+        private WatchedDirectory(Path path, Subscription subscription, DirectorySnapshot snapshot) {
+            this(path, subscription, snapshot, 0, 0);
+        }
+
+        /**
+         * Creates a directory that is polled at intervals between the given bounds, or one watched by the watch
+         * service if the bounds are zero.
+         */
+        private WatchedDirectory(Path path, Subscription subscription, DirectorySnapshot snapshot,
+                                 long minPollIntervalNanos, long maxPollIntervalNanos) {
+            this.path = path;
+            this.subscription = subscription;
+            this.snapshot = snapshot;
+            this.minPollIntervalNanos = minPollIntervalNanos;
+            this.maxPollIntervalNanos = maxPollIntervalNanos;
+            this.pollIntervalNanos = minPollIntervalNanos;
+        }
+
+        private boolean isPolled() {
+            return minPollIntervalNanos > 0;
+        }
+    }
+
+    private final class Subscription {
+
+        private final FileWatchOptions options;
+        private final FileChangeDispatcher dispatcher;
+        @Nullable
+        private final FileChangeDebouncer debouncer;
+        private volatile boolean cancelled;
+
+        private Subscription(FileChangeBatchListener listener, FileWatchOptions options) {
+            this.options = options;
+            final Consumer<List<FileChangeEvent>> dropHandler =
+                options.getSaturationPolicy() == FileWatchOptions.SaturationPolicy.RESCAN
+                    ? events -> rescanDropped(this, events)
+                    : events -> {};
+            this.dispatcher = new FileChangeDispatcher(dispatchExecutor, dispatchThreads, options.getQueueCapacity(),
+                options.getSaturationPolicy(), listener, dropHandler);
+            this.debouncer = options.isDebounced()
+                ? new FileChangeDebouncer(requireNonNull(options.getQuietPeriod()), requireNonNull(options.getMaxDelay()),
+                    debounceExecutor, dispatcher::dispatch)
+                : null;
+        }
+
+        private void accept(FileChangeEvent event) {
+            if (cancelled) return;
+            if (debouncer != null) {
+                debouncer.add(event);
+            } else {
+                dispatcher.dispatch(event);
+            }
+        }
+
+        /**
+         * Stops watching the directories of this subscription. The directories that are also watched for other
+         * subscriptions remain registered with the watch service.
+         */
+        private void cancel() {
+            cancelled = true;
+            if (debouncer != null) debouncer.cancel();
+            final Predicate<WatchedDirectory> ofThis = directory -> directory.subscription == this;
+            registrations.keySet().forEach(key -> removeRegistration(key, ofThis));
+            watchedDirectories.keySet().forEach(path -> removeDirectories(path, ofThis));
+        }
+    }
 }
@@ -4,18 +4,50 @@ import com.nickermancy.logging.Logger;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.file.Files;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.file.Path;
+import java.security.DigestException;
 import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
+import org.springframework.lang.Nullable;
+
 import lombok.val;
 
+/**
+ * Computes hex-encoded digests of files, streams, channels and buffers.
+ * <p>
+ * Each thread keeps its own {@link MessageDigest} for each algorithm, along with the arrays into which digests are
+ * computed and encoded, so that once a thread has computed a digest with an algorithm, computing another one only
+ * allocates the resulting string (and, for files, the channel that reads them). A digest must therefore not be
+ * computed from within the input of another digest on the same thread.
+ */
 public class MessageDigestSupport {
 
     private static final Logger log = Logger.getLogger();
     private static final Map<String, MessageDigest> digestCache = new ConcurrentHashMap<>();
+    private static final ThreadLocal<Workspace> workspaces = ThreadLocal.withInitial(Workspace::new);
+    @Nullable
+    private static volatile DigestCache cache;
+
+    private static final char[] HEX_PAIRS = new char[512];
+    private static final char[] BASE64 =
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+
+    static {
+        val hexDigits = "0123456789abcdef".toCharArray();
+        for (var i = 0; i < 256; i++) {
+            HEX_PAIRS[2 * i] = hexDigits[i >>> 4];
+            HEX_PAIRS[2 * i + 1] = hexDigits[i & 0xF];
+        }
+    }
 
     public static String md5(Path path) {
         return digest("MD5", path);
@@ -41,36 +73,180 @@ public class MessageDigestSupport {
         return digest("SHA-256", inputStream);
     }
 
+    /**
+     * Sets the cache in which the digests computed by {@link #digest(String, Path)}, and by the methods that call it,
+     * are looked up before files are read. There is no cache by default.
+     *
+     * @param digestCache the cache, or {@code null} to disable caching
+     */
+    public static void setCache(@Nullable DigestCache digestCache) {
+        cache = digestCache;
+    }
+
     public static String digest(String algorithm, Path path) {
-        try (InputStream in = Files.newInputStream(path)) {
-            return digest(algorithm, in);
+        val digestCache = cache;
+        if (digestCache != null) {
+            try {
+                return digestCache.get(algorithm, path, MessageDigestSupport::computeDigest);
+            } catch (IOException ex) {
+                throw new MessageDigestException("Failed to compute digest: " + ex.getMessage(), ex);
+            }
+        }
+        return computeDigest(algorithm, path);
+    }
+
+    private static String computeDigest(String algorithm, Path path) {
+        if (TreeDigest.isTreeAlgorithm(algorithm)) {
+            try {
+                return hexEncode(TreeDigest.getInstance(algorithm).digest(path));
+            } catch (IOException ex) {
+                throw new MessageDigestException("Failed to compute digest: " + ex.getMessage(), ex);
+            }
+        }
+        val workspace = workspaces.get();
+        val digest = workspace.getDigest(algorithm);
+        try {
+            DigestEngine.getDefault().update(digest, path);
         } catch (IOException ex) {
             throw new MessageDigestException("Failed to compute digest: " + ex.getMessage(), ex);
         }
+        return workspace.hexDigest(digest);
     }
 
     public static String digest(String algorithm, InputStream inputStream) {
-        val digest = cloneCachedInstance(algorithm);
-        val buffer = new byte[8192];
-        int len;
+        if (TreeDigest.isTreeAlgorithm(algorithm)) {
+            try {
+                return hexEncode(TreeDigest.getInstance(algorithm).digest(inputStream));
+            } catch (IOException ex) {
+                throw new MessageDigestException("Failed to compute digest: " + ex.getMessage(), ex);
+            }
+        }
+        val workspace = workspaces.get();
+        val digest = workspace.getDigest(algorithm);
+        try {
+            DigestEngine.getDefault().update(digest, inputStream);
+        } catch (IOException ex) {
+            throw new MessageDigestException("Failed to compute digest: " + ex.getMessage(), ex);
+        }
+        return workspace.hexDigest(digest);
+    }
+
+    /**
+     * Returns the digest of the remaining bytes of the buffer, leaving the buffer at its limit.
+     */
+    public static String digest(String algorithm, ByteBuffer buffer) {
+        val workspace = workspaces.get();
+        val digest = workspace.getDigest(algorithm);
+        digest.update(buffer);
+        return workspace.hexDigest(digest);
+    }
+
+    /**
+     * Returns the digest of the remaining contents of the channel, which is not closed. File channels are read as
+     * described by {@link DigestEngine#update(MessageDigest, java.nio.channels.FileChannel)}.
+     */
+    public static String digest(String algorithm, ReadableByteChannel channel) {
+        val workspace = workspaces.get();
+        val digest = workspace.getDigest(algorithm);
+        try {
+            DigestEngine.getDefault().update(digest, channel);
+        } catch (IOException ex) {
+            throw new MessageDigestException("Failed to compute digest: " + ex.getMessage(), ex);
+        }
+        return workspace.hexDigest(digest);
+    }
+
+    /**
+     * Returns the digests of a file for several algorithms, reading the file only once. Tree algorithms (see
+     * {@link TreeDigest}) read the file once more, since their chunks are read in parallel.
+     *
+     * @param path       the file to be read
+     * @param algorithms the names of the algorithms
+     *
+     * @return the hex-encoded digests by algorithm, in the order of the algorithms
+     */
+    public static Map<String, String> digestAll(Path path, String... algorithms) {
+        val workspace = workspaces.get();
+        val names = new ArrayList<String>(algorithms.length);
+        val digests = new ArrayList<MessageDigest>(algorithms.length);
+        val treeAlgorithms = new ArrayList<String>();
+        for (val algorithm : new LinkedHashSet<>(Arrays.asList(algorithms))) {
+            if (TreeDigest.isTreeAlgorithm(algorithm)) {
+                treeAlgorithms.add(algorithm);
+            } else {
+                names.add(algorithm);
+                digests.add(workspace.getDigest(algorithm));
+            }
+        }
         try {
-            while ((len = inputStream.read(buffer)) != -1) {
-                digest.update(buffer, 0, len);
+            DigestEngine.getDefault().update(digests, path);
+        } catch (IOException ex) {
+            throw new MessageDigestException("Failed to compute digest: " + ex.getMessage(), ex);
+        }
+        val results = new HashMap<String, String>();
+        for (var i = 0; i < digests.size(); i++) {
+            results.put(names.get(i), workspace.hexDigest(digests.get(i)));
+        }
+        for (val algorithm : treeAlgorithms) {
+            results.put(algorithm, digest(algorithm, path));
+        }
+        return ordered(results, algorithms);
+    }
+
+    /**
+     * Returns the digests of the remaining contents of an input stream for several algorithms, reading the stream
+     * only once. The stream is not closed.
+     *
+     * @param inputStream the input stream to be read
+     * @param algorithms  the names of the algorithms, which must not be tree algorithms
+     *
+     * @return the hex-encoded digests by algorithm, in the order of the algorithms
+     */
+    public static Map<String, String> digestAll(InputStream inputStream, String... algorithms) {
+        val workspace = workspaces.get();
+        val names = new ArrayList<String>(algorithms.length);
+        val digests = new ArrayList<MessageDigest>(algorithms.length);
+        for (val algorithm : new LinkedHashSet<>(Arrays.asList(algorithms))) {
+            if (TreeDigest.isTreeAlgorithm(algorithm)) {
+                throw new MessageDigestException("Tree algorithms require a file: " + algorithm, null);
             }
+            names.add(algorithm);
+            digests.add(workspace.getDigest(algorithm));
+        }
+        try {
+            DigestEngine.getDefault().update(digests, inputStream);
         } catch (IOException ex) {
             throw new MessageDigestException("Failed to compute digest: " + ex.getMessage(), ex);
         }
-        return hexEncode(digest.digest());
+        val results = new HashMap<String, String>();
+        for (var i = 0; i < digests.size(); i++) {
+            results.put(names.get(i), workspace.hexDigest(digests.get(i)));
+        }
+        return ordered(results, algorithms);
+    }
+
+    /**
+     * Returns the lowercase hexadecimal encoding of the bytes.
+     */
+    public static String hexEncode(byte[] bytes) {
+        return workspaces.get().hexEncode(bytes, bytes.length);
+    }
+
+    /**
+     * Returns the Base64 encoding of the bytes, with padding, as {@link java.util.Base64#getEncoder()} does.
+     */
+    public static String base64Encode(byte[] bytes) {
+        return workspaces.get().base64Encode(bytes, bytes.length);
     }
 
-    private static String hexEncode(byte[] bytes) {
-        val sb = new StringBuilder(bytes.length);
-        for (val b : bytes) {
-            val s = Integer.toHexString(Byte.toUnsignedInt(b));
-            if (s.length() == 1) sb.append("0");
-            sb.append(s);
+    //-- Private Implementation --------------------------------------------------------------------------------------//
+
+    private static Map<String, String> ordered(Map<String, String> results, String... algorithms) {
+        val ordered = new LinkedHashMap<String, String>();
+        for (val algorithm : algorithms) {
+            ordered.put(algorithm, results.get(algorithm));
         }
-        return sb.toString();
+        return ordered;
     }
 
     private static MessageDigest getInstance(String algorithm) {
@@ -96,4 +272,78 @@ public class MessageDigestSupport {
         }
         return digest;
     }
+
+    /**
+     * The digests of a thread, and the arrays into which they are computed and encoded.
+     */
+    private static final class Workspace {
+
+        private final Map<String, MessageDigest> digests = new HashMap<>();
+        private byte[] bytes = new byte[64];
+        private char[] chars = new char[128];
+
+        private MessageDigest getDigest(String algorithm) {
+            var digest = digests.get(algorithm);
+            if (digest == null) {
+                digest = cloneCachedInstance(algorithm);
+                digests.put(algorithm, digest);
+            } else {
+                digest.reset();
+            }
+            return digest;
+        }
+
+        private String hexDigest(MessageDigest digest) {
+            val length = digest.getDigestLength();
+            // Providers that do not know the length of their digests in advance return zero
+            if (length == 0) {
+                val result = digest.digest();
+                return hexEncode(result, result.length);
+            }
+            if (bytes.length < length) bytes = new byte[length];
+            try {
+                digest.digest(bytes, 0, length);
+            } catch (DigestException ex) {
+                throw new MessageDigestException("Failed to compute digest: " + ex.getMessage(), ex);
+            }
+            return hexEncode(bytes, length);
+        }
+
+        private String hexEncode(byte[] bytes, int length) {
+            val chars = chars(2 * length);
+            for (var i = 0; i < length; i++) {
+                val pair = 2 * (bytes[i] & 0xFF);
+                chars[2 * i] = HEX_PAIRS[pair];
+                chars[2 * i + 1] = HEX_PAIRS[pair + 1];
+            }
+            return new String(chars, 0, 2 * length);
+        }
+
+        private String base64Encode(byte[] bytes, int length) {
+            val chars = chars((length + 2) / 3 * 4);
+            var j = 0;
+            var i = 0;
+            for (; i + 2 < length; i += 3) {
+                val triple = (bytes[i] & 0xFF) << 16 | (bytes[i + 1] & 0xFF) << 8 | bytes[i + 2] & 0xFF;
+                chars[j++] = BASE64[triple >>> 18];
+                chars[j++] = BASE64[triple >>> 12 & 0x3F];
+                chars[j++] = BASE64[triple >>> 6 & 0x3F];
+                chars[j++] = BASE64[triple & 0x3F];
+            }
+            if (i < length) {
+                val remaining = length - i;
+                val pair = (bytes[i] & 0xFF) << 16 | (remaining == 2 ? (bytes[i + 1] & 0xFF) << 8 : 0);
+                chars[j++] = BASE64[pair >>> 18];
+                chars[j++] = BASE64[pair >>> 12 & 0x3F];
+                chars[j++] = remaining == 2 ? BASE64[pair >>> 6 & 0x3F] : '=';
+                chars[j++] = '=';
+            }
+            return new String(chars, 0, j);
+        }
+
+        private char[] chars(int length) {
+            if (chars.length < length) chars = new char[length];
+            return chars;
+        }
+    }
 }
@@ -0,0 +1,243 @@
+package com.nickermancy.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Computes the root of a Merkle tree over the fixed-size chunks of a file, so that the chunks of a large file can be
+ * hashed in parallel. Tree algorithms are named after the algorithm of their hashes with a {@code -TREE} suffix, for
+ * example {@code SHA-256-TREE}.
+ * <p>
+ * The tree is shaped as in RFC 6962: each leaf is the hash of a zero byte followed by a chunk, each node is the hash
+ * of a one byte followed by its two children, and a tree of {@code n} chunks is split after the largest power of two
+ * that is less than {@code n}. The root of an empty file is the hash of no data. The root depends on the chunk size,
+ * so digests are only comparable if they were computed with the same chunk size.
+ */
+public final class TreeDigest {
+
+    /**
+     * The suffix of the names of tree algorithms.
+     */
+    public static final String SUFFIX = "-TREE";
+
+    /**
+     * The default size of the chunks of a file.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 4 * 1024 * 1024;
+
+    private static final byte LEAF_PREFIX = 0;
+    private static final byte NODE_PREFIX = 1;
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+    private static final Map<String, TreeDigest> instances = new ConcurrentHashMap<>();
+
+    /**
+     * Returns whether the algorithm is a tree algorithm.
+     */
+    public static boolean isTreeAlgorithm(String algorithm) {
+        return algorithm.toUpperCase(Locale.ROOT).endsWith(SUFFIX);
+    }
+
+    /**
+     * Returns the shared instance of a tree algorithm, with the default chunk size, which hashes chunks on the common
+     * fork-join pool.
+     *
+     * @param algorithm the name of the tree algorithm
+     *
+     * @throws MessageDigestException if the algorithm is not a tree algorithm, or if its hashes are not supported
+     */
+    public static TreeDigest getInstance(String algorithm) {
+        return instances.computeIfAbsent(algorithm.toUpperCase(Locale.ROOT),
+            name -> new TreeDigest(name, DEFAULT_CHUNK_SIZE, ForkJoinPool.commonPool()));
+    }
+
+    private final String algorithm;
+    private final String hashAlgorithm;
+    private final int chunkSize;
+    private final ForkJoinPool pool;
+    private final ThreadLocal<MessageDigest> digests;
+
+    /**
+     * @param algorithm the name of the tree algorithm
+     * @param chunkSize the size of the chunks of a file
+     * @param pool      the pool on which chunks are hashed
+     *
+     * @throws MessageDigestException if the algorithm is not a tree algorithm, or if its hashes are not supported
+     */
+    public TreeDigest(String algorithm, int chunkSize, ForkJoinPool pool) {
+        if (!isTreeAlgorithm(algorithm)) throw new MessageDigestException("Not a tree algorithm: " + algorithm, null);
+        if (chunkSize <= 0) throw new IllegalArgumentException("chunkSize must be positive");
+        final var hashAlgorithm = algorithm.substring(0, algorithm.length() - SUFFIX.length());
+        try {
+            MessageDigest.getInstance(hashAlgorithm);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new MessageDigestException("No such algorithm: " + algorithm, ex);
+        }
+        this.algorithm = algorithm;
+        this.hashAlgorithm = hashAlgorithm;
+        this.chunkSize = chunkSize;
+        this.pool = pool;
+        this.digests = ThreadLocal.withInitial(() -> {
+            try {
+                return MessageDigest.getInstance(hashAlgorithm);
+            } catch (NoSuchAlgorithmException ex) {
+                throw new MessageDigestException("No such algorithm: " + algorithm, ex);
+            }
+        });
+    }
+
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    /**
+     * Returns the name of the algorithm of the hashes of the tree, which produces digests of the same length.
+     */
+    public String getHashAlgorithm() {
+        return hashAlgorithm;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * Returns the root of the tree over the chunks of the file at the given path.
+     *
+     * @throws IOException if the file could not be read
+     */
+    public byte[] digest(Path path) throws IOException {
+        try (final var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return digest(channel);
+        }
+    }
+
+    /**
+     * Returns the root of the tree over the chunks of the whole file, regardless of the position of the channel. The
+     * chunks are read with positional reads, in parallel if there is more than one.
+     *
+     * @throws IOException if the file could not be read
+     */
+    public byte[] digest(FileChannel channel) throws IOException {
+        final var chunkCount = (channel.size() + chunkSize - 1) / chunkSize;
+        if (chunkCount == 0) {
+            final var digest = digests.get();
+            digest.reset();
+            return digest.digest();
+        }
+        final var subtree = new Subtree(channel, 0, chunkCount);
+        if (chunkCount == 1) return subtree.leaf(0);
+        try {
+            return pool.invoke(subtree);
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+    }
+
+    /**
+     * Returns the root of the tree over the chunks of the remaining contents of the input stream, which are hashed
+     * one at a time. The stream is not closed.
+     *
+     * @throws IOException if the input stream could not be read
+     */
+    public byte[] digest(InputStream inputStream) throws IOException {
+        final var digest = digests.get();
+        final var buffer = new byte[STREAM_BUFFER_SIZE];
+        // The roots of the complete subtrees read so far, with their chunk counts, largest first
+        final var roots = new ArrayDeque<byte[]>();
+        final var sizes = new ArrayDeque<Long>();
+        while (true) {
+            digest.reset();
+            digest.update(LEAF_PREFIX);
+            var remaining = chunkSize;
+            while (remaining > 0) {
+                final var bytesRead = inputStream.read(buffer, 0, Math.min(buffer.length, remaining));
+                if (bytesRead == -1) break;
+                digest.update(buffer, 0, bytesRead);
+                remaining -= bytesRead;
+            }
+            if (remaining == chunkSize) break;
+            var root = digest.digest();
+            var size = 1L;
+            while (!sizes.isEmpty() && sizes.peekLast() == size) {
+                root = node(roots.removeLast(), root);
+                size += sizes.removeLast();
+            }
+            roots.addLast(root);
+            sizes.addLast(size);
+            if (remaining > 0) break;
+        }
+        if (roots.isEmpty()) {
+            digest.reset();
+            return digest.digest();
+        }
+        var root = roots.removeLast();
+        while (!roots.isEmpty()) {
+            root = node(roots.removeLast(), root);
+        }
+        return root;
+    }
+
+    //-- Private Implementation --------------------------------------------------------------------------------------//
+
+    private byte[] node(byte[] left, byte[] right) {
+        final var digest = digests.get();
+        digest.reset();
+        digest.update(NODE_PREFIX);
+        digest.update(left);
+        digest.update(right);
+        return digest.digest();
+    }
+
+    /**
+     * Computes the root of the subtree over a range of chunks, forking the left half of the range.
+     */
+    private final class Subtree extends RecursiveTask<byte[]> {
+
+        private final FileChannel channel;
+        private final long from;
+        private final long to;
+
+        private Subtree(FileChannel channel, long from, long to) {
+            this.channel = channel;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected byte[] compute() {
+            final var count = to - from;
+            if (count == 1) {
+                try {
+                    return leaf(from);
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            }
+            final var split = from + Long.highestOneBit(count - 1);
+            final var left = new Subtree(channel, from, split);
+            left.fork();
+            final var right = new Subtree(channel, split, to).compute();
+            return node(left.join(), right);
+        }
+
+        private byte[] leaf(long chunk) throws IOException {
+            final var digest = digests.get();
+            digest.reset();
+            digest.update(LEAF_PREFIX);
+            DigestEngine.getDefault().update(digest, channel, chunk * chunkSize, chunkSize);
+            return digest.digest();
+        }
+    }
+}
@@ -0,0 +1,383 @@
+package com.nickermancy.logging;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+import org.slf4j.Marker;
+import org.slf4j.event.Level;
+import org.slf4j.helpers.MessageFormatter;
+import org.slf4j.spi.LocationAwareLogger;
+import org.springframework.lang.Nullable;
+
+/**
+ * Switches the loggers of this package to an asynchronous mode, in which the threads that log an event only copy its
+ * level, logger, marker, template and arguments into a preallocated ring buffer, and a background thread formats the
+ * events and forwards them to the SLF4J loggers. Asynchronous logging is off until it is {@linkplain #start started},
+ * and is stopped, after the events in the buffer have been forwarded, when the JVM shuts down.
+ * <p>
+ * The levels of events are checked by the threads that log them, so disabled events never reach the buffer. The
+ * arguments of events are formatted later, by the background thread, so they should not be changed after they are
+ * logged. Messages built by the supplier and primitive methods of {@link Logger} are formatted before they are
+ * buffered. The caller data and the MDC of events are not carried over to the background thread.
+ * <p>
+ * SLF4J gives no way to set the thread or the time of an event, so the events are forwarded with the name of the
+ * background thread and the time at which they are forwarded. The name of the thread that logged an event and the
+ * time at which it was logged are put in the MDC of the forwarded event instead, under {@link #THREAD_MDC_KEY} and
+ * {@link #TIMESTAMP_MDC_KEY}, where layouts can show them in place of the thread and date of the event.
+ */
+public final class AsyncLogging {
+
+    /**
+     * The default number of events that the buffer holds.
+     */
+    public static final int DEFAULT_CAPACITY = 8192;
+
+    /**
+     * The MDC key of the name of the thread that logged a forwarded event.
+     */
+    public static final String THREAD_MDC_KEY = "loggingThread";
+
+    /**
+     * The MDC key of the time at which a forwarded event was logged, in milliseconds since the epoch.
+     */
+    public static final String TIMESTAMP_MDC_KEY = "loggingTimestamp";
+
+    // Logs directly to SLF4J, so that its own events are not buffered
+    private static final org.slf4j.Logger log = LoggerFactory.getLogger(AsyncLogging.class);
+    private static final String FQCN = LoggerImpl.class.getName();
+    private static final long IDLE_PARK_NANOS = 1_000_000;
+    private static final long FULL_PARK_NANOS = 50_000;
+    private static final Object lock = new Object();
+
+    @Nullable
+    private static volatile AsyncLogging current;
+    @Nullable
+    private static Thread shutdownHook;
+
+    /**
+     * Starts logging asynchronously with a buffer of the default capacity, which makes the threads that log wait for
+     * room in the buffer when it is full. Does nothing if asynchronous logging has already been started.
+     */
+    public static void start() {
+        start(DEFAULT_CAPACITY, OverflowPolicy.BLOCK);
+    }
+
+    /**
+     * Starts logging asynchronously. Does nothing if asynchronous logging has already been started.
+     *
+     * @param capacity       the number of events that the buffer holds, which is rounded up to a power of two
+     * @param overflowPolicy what happens to the events that are logged while the buffer is full
+     */
+    public static void start(int capacity, OverflowPolicy overflowPolicy) {
+        if (capacity <= 0) throw new IllegalArgumentException("capacity must be positive");
+        synchronized (lock) {
+            if (current != null) return;
+            final var asyncLogging = new AsyncLogging(capacity, overflowPolicy);
+            asyncLogging.consumer.start();
+            shutdownHook = new Thread(AsyncLogging::stopOnShutdown, "async-logging-shutdown");
+            Runtime.getRuntime().addShutdownHook(shutdownHook);
+            current = asyncLogging;
+        }
+    }
+
+    /**
+     * Stops logging asynchronously, once the events in the buffer have been forwarded. The events logged after this
+     * method returns are forwarded by the threads that log them.
+     */
+    public static void stop() {
+        synchronized (lock) {
+            stopCurrent();
+            if (shutdownHook != null) Runtime.getRuntime().removeShutdownHook(shutdownHook);
+            shutdownHook = null;
+        }
+    }
+
+    public static boolean isStarted() {
+        return current != null;
+    }
+
+    /**
+     * Waits until the events that have been logged before this method was called have been forwarded.
+     */
+    public static void flush() {
+        final var asyncLogging = current;
+        if (asyncLogging != null) asyncLogging.awaitForwarded(asyncLogging.tail.get());
+    }
+
+    /**
+     * Returns the number of events that have been dropped because the buffer was full, since asynchronous logging
+     * was last started.
+     */
+    public static long getDroppedCount() {
+        final var asyncLogging = current;
+        return asyncLogging != null ? asyncLogging.dropped.sum() : 0;
+    }
+
+    @Nullable
+    static AsyncLogging current() {
+        return current;
+    }
+
+    private final Slot[] slots;
+    private final int mask;
+    private final OverflowPolicy overflowPolicy;
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong forwarded = new AtomicLong();
+    private final LongAdder dropped = new LongAdder();
+    private final Thread consumer;
+    private volatile boolean stopping;
+    private long reportedDropped;
+
+    private AsyncLogging(int capacity, OverflowPolicy overflowPolicy) {
+        final var size = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.slots = new Slot[size];
+        for (var i = 0; i < size; i++) {
+            slots[i] = new Slot(i);
+        }
+        this.mask = size - 1;
+        this.overflowPolicy = overflowPolicy;
+        this.consumer = new Thread(this::forwardEvents, "async-logging");
+        consumer.setDaemon(true);
+    }
+
+    /**
+     * Copies an event into the buffer, if there is room for it or once there is, depending on the overflow policy.
+     *
+     * @param arity the number of arguments, or -1 if they are in the {@code arguments} array
+     */
+    void offer(org.slf4j.Logger logger, Level level, @Nullable Marker marker, String format, int arity,
+               @Nullable Object arg1, @Nullable Object arg2, @Nullable Object[] arguments,
+               @Nullable Throwable thrown) {
+        var position = tail.get();
+        while (true) {
+            final var slot = slots[(int) position & mask];
+            final var difference = slot.sequence - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    slot.set(logger, level, marker, format, arity, arg1, arg2, arguments, thrown);
+                    slot.capture(Thread.currentThread().getName(), System.currentTimeMillis());
+                    slot.sequence = position + 1;
+                    // The final drain may have missed the event if logging was stopped while it was being offered
+                    if (stopping) drainStopped();
+                    return;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                // The buffer is full
+                if (overflowPolicy == OverflowPolicy.DROP
+                    || overflowPolicy == OverflowPolicy.DROP_BELOW_WARN && level.compareTo(Level.WARN) > 0) {
+                    dropped.increment();
+                    return;
+                }
+                LockSupport.parkNanos(FULL_PARK_NANOS);
+                position = tail.get();
+            } else {
+                position = tail.get();
+            }
+        }
+    }
+
+    //-- Private Implementation --------------------------------------------------------------------------------------//
+
+    private static void stopOnShutdown() {
+        synchronized (lock) {
+            stopCurrent();
+            shutdownHook = null;
+        }
+    }
+
+    private static void stopCurrent() {
+        final var asyncLogging = current;
+        if (asyncLogging == null) return;
+        current = null;
+        asyncLogging.stopping = true;
+        LockSupport.unpark(asyncLogging.consumer);
+        try {
+            asyncLogging.consumer.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        // Events that were being offered while the consumer stopped
+        asyncLogging.drainStopped();
+        asyncLogging.reportDropped();
+    }
+
+    private void forwardEvents() {
+        while (!stopping) {
+            if (drain() == 0) LockSupport.parkNanos(IDLE_PARK_NANOS);
+            reportDropped();
+        }
+        drain();
+    }
+
+    /**
+     * Forwards the events in the buffer, returning their number.
+     */
+    private int drain() {
+        var count = 0;
+        var position = forwarded.get();
+        while (true) {
+            final var slot = slots[(int) position & mask];
+            if (slot.sequence != position + 1) return count;
+            try {
+                slot.forward();
+            } catch (RuntimeException ex) {
+                log.error("Failed to forward a log event", ex);
+            }
+            slot.clear();
+            slot.sequence = position + slots.length;
+            forwarded.lazySet(++position);
+            count++;
+        }
+    }
+
+    /**
+     * Forwards the events left in the buffer once the consumer has stopped, on the calling thread. Events offered by
+     * the consumer itself, from the loggers it forwards to, are left to its own final drain.
+     */
+    private synchronized void drainStopped() {
+        if (Thread.currentThread() == consumer) return;
+        try {
+            consumer.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        drain();
+    }
+
+    private void reportDropped() {
+        final var droppedCount = dropped.sum();
+        if (droppedCount > reportedDropped) {
+            log.warn("Dropped {} log events because the async logging buffer was full", droppedCount - reportedDropped);
+            reportedDropped = droppedCount;
+        }
+    }
+
+    private void awaitForwarded(long position) {
+        while (forwarded.get() < position && consumer.isAlive()) {
+            LockSupport.parkNanos(IDLE_PARK_NANOS);
+        }
+    }
+
+    public enum OverflowPolicy {
+
+        /**
+         * Threads that log while the buffer is full wait until there is room in the buffer.
+         */
+        BLOCK,
+
+        /**
+         * Events below {@code WARN} that are logged while the buffer is full are dropped and counted, while threads
+         * that log warnings and errors wait until there is room in the buffer.
+         */
+        DROP_BELOW_WARN,
+
+        /**
+         * Events that are logged while the buffer is full are dropped and counted.
+         */
+        DROP
+    }
+
+    /**
+     * An element of the buffer, which holds an event while its sequence is one past its position in the buffer, and
+     * is free for the position one lap ahead while its sequence is that position.
+     */
+    private static final class Slot {
+
+        private volatile long sequence;
+        private org.slf4j.Logger logger;
+        private Level level;
+        private Marker marker;
+        private String format;
+        private int arity;
+        private Object arg1;
+        private Object arg2;
+        private Object[] arguments;
+        private Throwable thrown;
+        private String threadName;
+        private long timestamp;
+
+        private Slot(long sequence) {
+            this.sequence = sequence;
+        }
+
+        private void set(org.slf4j.Logger logger, Level level, @Nullable Marker marker, String format, int arity,
+                         @Nullable Object arg1, @Nullable Object arg2, @Nullable Object[] arguments,
+                         @Nullable Throwable thrown) {
+            this.logger = logger;
+            this.level = level;
+            this.marker = marker;
+            this.format = format;
+            this.arity = arity;
+            this.arg1 = arg1;
+            this.arg2 = arg2;
+            this.arguments = arguments;
+            this.thrown = thrown;
+        }
+
+        private void capture(String threadName, long timestamp) {
+            this.threadName = threadName;
+            this.timestamp = timestamp;
+        }
+
+        private void clear() {
+            set(null, null, null, null, 0, null, null, null, null);
+            capture(null, 0);
+        }
+
+        private void forward() {
+            MDC.put(THREAD_MDC_KEY, threadName);
+            MDC.put(TIMESTAMP_MDC_KEY, Long.toString(timestamp));
+            try {
+                forwardEvent();
+            } finally {
+                MDC.remove(THREAD_MDC_KEY);
+                MDC.remove(TIMESTAMP_MDC_KEY);
+            }
+        }
+
+        private void forwardEvent() {
+            final Object[] argumentArray;
+            switch (arity) {
+                case 0:
+                    argumentArray = null;
+                    break;
+                case 1:
+                    argumentArray = new Object[]{ arg1 };
+                    break;
+                case 2:
+                    argumentArray = new Object[]{ arg1, arg2 };
+                    break;
+                default:
+                    argumentArray = arguments;
+            }
+            if (logger instanceof LocationAwareLogger) {
+                ((LocationAwareLogger) logger).log(marker, FQCN, level.toInt(), format, argumentArray, thrown);
+                return;
+            }
+            final var formatted = MessageFormatter.arrayFormat(format, argumentArray, thrown);
+            final var message = formatted.getMessage();
+            final var throwable = formatted.getThrowable();
+            switch (level) {
+                case ERROR:
+                    logger.error(marker, message, throwable);
+                    break;
+                case WARN:
+                    logger.warn(marker, message, throwable);
+                    break;
+                case INFO:
+                    logger.info(marker, message, throwable);
+                    break;
+                case DEBUG:
+                    logger.debug(marker, message, throwable);
+                    break;
+                default:
+                    logger.trace(marker, message, throwable);
+            }
+        }
+    }
+}
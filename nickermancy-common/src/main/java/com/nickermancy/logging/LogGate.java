@@ -0,0 +1,142 @@
+package com.nickermancy.logging;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides which of the enabled events of a logger are let through, and counts the events that are suppressed until
+ * they are summarized. A gate is meant to guard a single call site, such as the logging of each file of an import,
+ * and is safe to use from several threads without locking.
+ * <p>
+ * The suppressed events are summarized when an event is suppressed at least a summary interval after the previous
+ * summary, so the events that are suppressed after the last summary of a burst are only summarized with the next
+ * burst, unless the gate is flushed at the end of the burst.
+ */
+abstract class LogGate {
+
+    static final Duration SUMMARY_INTERVAL = Duration.ofMinutes(1);
+
+    /**
+     * Returns a gate that lets at most one event through per interval, and summarizes the others at most once per
+     * interval or per summary interval, whichever is longer.
+     */
+    static LogGate atMostEvery(Duration interval, Duration summaryInterval) {
+        if (interval.isNegative() || interval.isZero()) throw new IllegalArgumentException("interval must be positive");
+        final var longerInterval = interval.compareTo(summaryInterval) > 0 ? interval : summaryInterval;
+        return new IntervalGate(interval.toNanos(), longerInterval.toNanos());
+    }
+
+    /**
+     * Returns a gate that lets the first event through, and then one in every {@code oneIn} events.
+     */
+    static LogGate sampled(int oneIn, Duration summaryInterval) {
+        if (oneIn <= 0) throw new IllegalArgumentException("oneIn must be positive");
+        return new SamplingGate(oneIn, summaryInterval.toNanos());
+    }
+
+    /**
+     * Returns a gate that lets the first {@code count} events through, and then only summaries of the others.
+     */
+    static LogGate first(int count, Duration summaryInterval) {
+        if (count < 0) throw new IllegalArgumentException("count must not be negative");
+        return new FirstGate(count, summaryInterval.toNanos());
+    }
+
+    private final long summaryIntervalNanos;
+    private final AtomicLong suppressed = new AtomicLong();
+    private final AtomicLong nextSummaryNanos;
+
+    private LogGate(long summaryIntervalNanos) {
+        this.summaryIntervalNanos = summaryIntervalNanos;
+        this.nextSummaryNanos = new AtomicLong(System.nanoTime() + summaryIntervalNanos);
+    }
+
+    /**
+     * Returns whether an enabled event is let through, and counts it as suppressed otherwise.
+     */
+    final boolean admit() {
+        if (pass()) return true;
+        suppressed.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Returns the number of events that have been suppressed since the previous summary, if it is time for the next
+     * one, or 0 otherwise. Only one of the threads that poll at the same time gets the number.
+     */
+    final long pollSuppressed() {
+        final var now = System.nanoTime();
+        final var next = nextSummaryNanos.get();
+        if (now - next < 0 || !nextSummaryNanos.compareAndSet(next, now + summaryIntervalNanos)) return 0;
+        return suppressed.getAndSet(0);
+    }
+
+    /**
+     * Returns the number of events that have been suppressed since the previous summary, which starts a new summary
+     * interval.
+     */
+    final long flushSuppressed() {
+        nextSummaryNanos.set(System.nanoTime() + summaryIntervalNanos);
+        return suppressed.getAndSet(0);
+    }
+
+    final long getSuppressedCount() {
+        return suppressed.get();
+    }
+
+    abstract boolean pass();
+
+    //-- Private Implementation --------------------------------------------------------------------------------------//
+
+    private static final class IntervalGate extends LogGate {
+
+        private final long intervalNanos;
+        private final AtomicLong nextEventNanos;
+
+        private IntervalGate(long intervalNanos, long summaryIntervalNanos) {
+            super(summaryIntervalNanos);
+            this.intervalNanos = intervalNanos;
+            this.nextEventNanos = new AtomicLong(System.nanoTime());
+        }
+
+        @Override
+        boolean pass() {
+            final var now = System.nanoTime();
+            final var next = nextEventNanos.get();
+            return now - next >= 0 && nextEventNanos.compareAndSet(next, now + intervalNanos);
+        }
+    }
+
+    private static final class SamplingGate extends LogGate {
+
+        private final int oneIn;
+        private final AtomicLong events = new AtomicLong();
+
+        private SamplingGate(int oneIn, long summaryIntervalNanos) {
+            super(summaryIntervalNanos);
+            this.oneIn = oneIn;
+        }
+
+        @Override
+        boolean pass() {
+            return events.getAndIncrement() % oneIn == 0;
+        }
+    }
+
+    private static final class FirstGate extends LogGate {
+
+        private final int count;
+        private final AtomicLong events = new AtomicLong();
+
+        private FirstGate(int count, long summaryIntervalNanos) {
+            super(summaryIntervalNanos);
+            this.count = count;
+        }
+
+        @Override
+        boolean pass() {
+            // Reads the counter first, so that it stops growing once the count has been reached
+            return events.get() < count && events.getAndIncrement() < count;
+        }
+    }
+}
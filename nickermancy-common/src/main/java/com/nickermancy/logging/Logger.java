@@ -1,5 +1,6 @@
 package com.nickermancy.logging;
 
+import java.time.Duration;
 import java.util.function.Supplier;
 
 import org.slf4j.Marker;
@@ -7,7 +8,7 @@ import org.slf4j.Marker;
 public interface Logger extends org.slf4j.Logger {
 
     static Logger getLogger() {
-        return new LoggerImpl();
+        return LoggerImpl.getCallerLogger();
     }
 
     static Logger getLogger(String className) {
@@ -15,7 +16,7 @@ public interface Logger extends org.slf4j.Logger {
     }
 
     static Logger getLogger(Class<?> clazz) {
-        return new LoggerImpl(clazz);
+        return LoggerImpl.getClassLogger(clazz);
     }
 
     static Logger getLogger(org.slf4j.Logger logger) {
@@ -101,4 +102,237 @@ public interface Logger extends org.slf4j.Logger {
     default void trace(Marker marker, Supplier<String> messageSupplier, Throwable thrown) {
         if (isTraceEnabled()) trace(marker, messageSupplier.get(), thrown);
     }
+
+    //-- Rate Limiting -----------------------------------------------------------------------------------------------//
+
+    // The following methods return loggers that let only some of their enabled events through, and count the others,
+    // which are summarized at the level of the event that triggers the summary, at most once a minute, and when the
+    // logger is flushed. Each returned logger keeps its own lock-free counters, so it should be held in a field of the
+    // call site that it guards, and used with message templates, which are not formatted for events that are
+    // suppressed. See LogGate for details.
+
+    default Logger atMostEvery(Duration interval) {
+        return LoggerImpl.getGatedLogger(this, LogGate.atMostEvery(interval, LogGate.SUMMARY_INTERVAL));
+    }
+
+    default Logger sampled(int oneIn) {
+        return LoggerImpl.getGatedLogger(this, LogGate.sampled(oneIn, LogGate.SUMMARY_INTERVAL));
+    }
+
+    default Logger first(int count) {
+        return LoggerImpl.getGatedLogger(this, LogGate.first(count, LogGate.SUMMARY_INTERVAL));
+    }
+
+    /**
+     * Summarizes the events that have been suppressed since the previous summary, at the level of the last of them.
+     * Loops that log through a rate-limited logger call this once they are done, so that the events suppressed at the
+     * end of the loop are not left unreported. Does nothing for loggers that are not rate-limited.
+     */
+    default void flushSuppressed() {
+    }
+
+    //-- Primitive Arguments -----------------------------------------------------------------------------------------//
+
+    // The following methods format messages with primitive arguments, which are neither boxed nor collected into an
+    // array, once the level has been found to be enabled. See MessageTemplates for the format of the templates.
+
+    default void error(String format, long arg) {
+        if (isErrorEnabled()) error(MessageTemplates.format(format, arg));
+    }
+
+    default void error(String format, int arg) {
+        if (isErrorEnabled()) error(MessageTemplates.format(format, arg));
+    }
+
+    default void error(String format, double arg) {
+        if (isErrorEnabled()) error(MessageTemplates.format(format, arg));
+    }
+
+    default void error(String format, boolean arg) {
+        if (isErrorEnabled()) error(MessageTemplates.format(format, arg));
+    }
+
+    default void error(String format, long arg1, long arg2) {
+        if (isErrorEnabled()) error(MessageTemplates.format(format, arg1, arg2));
+    }
+
+    default void error(String format, long arg1, double arg2) {
+        if (isErrorEnabled()) error(MessageTemplates.format(format, arg1, arg2));
+    }
+
+    default void error(String format, Object arg1, long arg2) {
+        if (isErrorEnabled()) error(MessageTemplates.format(format, arg1, arg2));
+    }
+
+    default void error(String format, long arg1, long arg2, long arg3) {
+        if (isErrorEnabled()) error(MessageTemplates.format(format, arg1, arg2, arg3));
+    }
+
+    default void error(String format, Object arg1, long arg2, long arg3) {
+        if (isErrorEnabled()) error(MessageTemplates.format(format, arg1, arg2, arg3));
+    }
+
+    default void error(String format, Object arg1, long arg2, double arg3) {
+        if (isErrorEnabled()) error(MessageTemplates.format(format, arg1, arg2, arg3));
+    }
+
+    default void warn(String format, long arg) {
+        if (isWarnEnabled()) warn(MessageTemplates.format(format, arg));
+    }
+
+    default void warn(String format, int arg) {
+        if (isWarnEnabled()) warn(MessageTemplates.format(format, arg));
+    }
+
+    default void warn(String format, double arg) {
+        if (isWarnEnabled()) warn(MessageTemplates.format(format, arg));
+    }
+
+    default void warn(String format, boolean arg) {
+        if (isWarnEnabled()) warn(MessageTemplates.format(format, arg));
+    }
+
+    default void warn(String format, long arg1, long arg2) {
+        if (isWarnEnabled()) warn(MessageTemplates.format(format, arg1, arg2));
+    }
+
+    default void warn(String format, long arg1, double arg2) {
+        if (isWarnEnabled()) warn(MessageTemplates.format(format, arg1, arg2));
+    }
+
+    default void warn(String format, Object arg1, long arg2) {
+        if (isWarnEnabled()) warn(MessageTemplates.format(format, arg1, arg2));
+    }
+
+    default void warn(String format, long arg1, long arg2, long arg3) {
+        if (isWarnEnabled()) warn(MessageTemplates.format(format, arg1, arg2, arg3));
+    }
+
+    default void warn(String format, Object arg1, long arg2, long arg3) {
+        if (isWarnEnabled()) warn(MessageTemplates.format(format, arg1, arg2, arg3));
+    }
+
+    default void warn(String format, Object arg1, long arg2, double arg3) {
+        if (isWarnEnabled()) warn(MessageTemplates.format(format, arg1, arg2, arg3));
+    }
+
+    default void info(String format, long arg) {
+        if (isInfoEnabled()) info(MessageTemplates.format(format, arg));
+    }
+
+    default void info(String format, int arg) {
+        if (isInfoEnabled()) info(MessageTemplates.format(format, arg));
+    }
+
+    default void info(String format, double arg) {
+        if (isInfoEnabled()) info(MessageTemplates.format(format, arg));
+    }
+
+    default void info(String format, boolean arg) {
+        if (isInfoEnabled()) info(MessageTemplates.format(format, arg));
+    }
+
+    default void info(String format, long arg1, long arg2) {
+        if (isInfoEnabled()) info(MessageTemplates.format(format, arg1, arg2));
+    }
+
+    default void info(String format, long arg1, double arg2) {
+        if (isInfoEnabled()) info(MessageTemplates.format(format, arg1, arg2));
+    }
+
+    default void info(String format, Object arg1, long arg2) {
+        if (isInfoEnabled()) info(MessageTemplates.format(format, arg1, arg2));
+    }
+
+    default void info(String format, long arg1, long arg2, long arg3) {
+        if (isInfoEnabled()) info(MessageTemplates.format(format, arg1, arg2, arg3));
+    }
+
+    default void info(String format, Object arg1, long arg2, long arg3) {
+        if (isInfoEnabled()) info(MessageTemplates.format(format, arg1, arg2, arg3));
+    }
+
+    default void info(String format, Object arg1, long arg2, double arg3) {
+        if (isInfoEnabled()) info(MessageTemplates.format(format, arg1, arg2, arg3));
+    }
+
+    default void debug(String format, long arg) {
+        if (isDebugEnabled()) debug(MessageTemplates.format(format, arg));
+    }
+
+    default void debug(String format, int arg) {
+        if (isDebugEnabled()) debug(MessageTemplates.format(format, arg));
+    }
+
+    default void debug(String format, double arg) {
+        if (isDebugEnabled()) debug(MessageTemplates.format(format, arg));
+    }
+
+    default void debug(String format, boolean arg) {
+        if (isDebugEnabled()) debug(MessageTemplates.format(format, arg));
+    }
+
+    default void debug(String format, long arg1, long arg2) {
+        if (isDebugEnabled()) debug(MessageTemplates.format(format, arg1, arg2));
+    }
+
+    default void debug(String format, long arg1, double arg2) {
+        if (isDebugEnabled()) debug(MessageTemplates.format(format, arg1, arg2));
+    }
+
+    default void debug(String format, Object arg1, long arg2) {
+        if (isDebugEnabled()) debug(MessageTemplates.format(format, arg1, arg2));
+    }
+
+    default void debug(String format, long arg1, long arg2, long arg3) {
+        if (isDebugEnabled()) debug(MessageTemplates.format(format, arg1, arg2, arg3));
+    }
+
+    default void debug(String format, Object arg1, long arg2, long arg3) {
+        if (isDebugEnabled()) debug(MessageTemplates.format(format, arg1, arg2, arg3));
+    }
+
+    default void debug(String format, Object arg1, long arg2, double arg3) {
+        if (isDebugEnabled()) debug(MessageTemplates.format(format, arg1, arg2, arg3));
+    }
+
+    default void trace(String format, long arg) {
+        if (isTraceEnabled()) trace(MessageTemplates.format(format, arg));
+    }
+
+    default void trace(String format, int arg) {
+        if (isTraceEnabled()) trace(MessageTemplates.format(format, arg));
+    }
+
+    default void trace(String format, double arg) {
+        if (isTraceEnabled()) trace(MessageTemplates.format(format, arg));
+    }
+
+    default void trace(String format, boolean arg) {
+        if (isTraceEnabled()) trace(MessageTemplates.format(format, arg));
+    }
+
+    default void trace(String format, long arg1, long arg2) {
+        if (isTraceEnabled()) trace(MessageTemplates.format(format, arg1, arg2));
+    }
+
+    default void trace(String format, long arg1, double arg2) {
+        if (isTraceEnabled()) trace(MessageTemplates.format(format, arg1, arg2));
+    }
+
+    default void trace(String format, Object arg1, long arg2) {
+        if (isTraceEnabled()) trace(MessageTemplates.format(format, arg1, arg2));
+    }
+
+    default void trace(String format, long arg1, long arg2, long arg3) {
+        if (isTraceEnabled()) trace(MessageTemplates.format(format, arg1, arg2, arg3));
+    }
+
+    default void trace(String format, Object arg1, long arg2, long arg3) {
+        if (isTraceEnabled()) trace(MessageTemplates.format(format, arg1, arg2, arg3));
+    }
+
+    default void trace(String format, Object arg1, long arg2, double arg3) {
+        if (isTraceEnabled()) trace(MessageTemplates.format(format, arg1, arg2, arg3));
+    }
 }
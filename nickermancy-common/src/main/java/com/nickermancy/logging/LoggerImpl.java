@@ -1,51 +1,114 @@
 package com.nickermancy.logging;
 
-import java.util.regex.Pattern;
-import java.util.stream.Stream;
+import java.lang.reflect.Proxy;
+import java.util.Set;
 
 import org.slf4j.LoggerFactory;
 import org.slf4j.Marker;
+import org.slf4j.event.Level;
+import org.springframework.lang.Nullable;
 
 class LoggerImpl implements Logger {
 
     private static final org.slf4j.Logger ROOT_LOGGER = LoggerFactory.getLogger("root");
-    private static final CallingContext CONTEXT = new CallingContext();
-    private static final Pattern LAMBDA_OR_INNER_CLASS_SEPARATOR = Pattern.compile("\\$\\$|\\$\\d+$");
-    private static final Pattern PROXY_CLASS_PATTERN = Pattern.compile("com\\.sun\\.proxy\\$.*");
+    // Hidden frames are shown so that the lambda classes of method references to Logger.getLogger are found, and the
+    // caller is usually within the first few frames, which are all that the walker fetches in its first batch
+    private static final StackWalker STACK_WALKER = StackWalker.getInstance(
+        Set.of(StackWalker.Option.RETAIN_CLASS_REFERENCE, StackWalker.Option.SHOW_HIDDEN_FRAMES), 4);
     private static final String LOGGING_PACKAGE_NAME = Logger.class.getPackageName();
+    private static final String METHOD_HANDLE_PACKAGE_NAME = "java.lang.invoke";
+    private static final String LAMBDA_SEPARATOR = "$$";
     private static final String FALLBACK_MESSAGE = //@formatter:off
         "Failed to detect class name of caller. Please use Logger.getLogger(String) or " +
         "Logger.getLogger(Class) instead. Falling back to \"root\" logger."; //@formatter:on
+    private static final String SUMMARY_MESSAGE = "Suppressed {} similar log events";
 
-    private static boolean isExternalCaller(Class<?> clazz) {
-        return !LOGGING_PACKAGE_NAME.equals(clazz.getPackageName())
-            && !PROXY_CLASS_PATTERN.matcher(clazz.getName()).matches();
+    private static final ClassValue<Logger> CALLER_LOGGERS = new ClassValue<>() {
+        @Override
+        protected Logger computeValue(Class<?> type) {
+            return new LoggerImpl(LoggerFactory.getLogger(getCallerName(type)));
+        }
+    };
+
+    private static final ClassValue<Logger> CLASS_LOGGERS = new ClassValue<>() {
+        @Override
+        protected Logger computeValue(Class<?> type) {
+            return new LoggerImpl(type);
+        }
+    };
+
+    /**
+     * Returns the logger of the first class on the stack that is neither in the logging package nor a proxy, which
+     * is shared by all of the loggers looked up from that class.
+     */
+    static Logger getCallerLogger() {
+        final var caller = STACK_WALKER.walk(frames -> frames
+            .map(StackWalker.StackFrame::getDeclaringClass)
+            .filter(LoggerImpl::isExternalCaller)
+            .findFirst());
+        return caller.map(CALLER_LOGGERS::get).orElseGet(() -> new LoggerImpl(ROOT_LOGGER));
     }
 
-    private final org.slf4j.Logger delegate;
+    /**
+     * Returns the logger named after a class, which is shared by all of the loggers looked up for that class.
+     */
+    static Logger getClassLogger(Class<?> clazz) {
+        return CLASS_LOGGERS.get(clazz);
+    }
 
-    LoggerImpl() {
-        this.delegate = CONTEXT.getClassContextAsStream()
-            .filter(LoggerImpl::isExternalCaller)
-            .findFirst()
-            .map(Class::getName)
-            // Lambdas and anonymous inner classes should take the the name of the encapsulating class
-            .map(LAMBDA_OR_INNER_CLASS_SEPARATOR::split)
-            .map(className -> className[0])
-            .map(LoggerFactory::getLogger)
-            .orElse(ROOT_LOGGER);
+    /**
+     * Returns a logger that lets the events of another logger through a gate. Gated loggers are not shared, since
+     * each of them counts the events of its own call site.
+     */
+    static Logger getGatedLogger(Logger logger, LogGate gate) {
+        final var delegate = logger instanceof LoggerImpl && ((LoggerImpl) logger).gate == null
+            ? ((LoggerImpl) logger).delegate
+            : logger;
+        return new LoggerImpl(delegate, gate);
+    }
+
+    private static boolean isExternalCaller(Class<?> clazz) {
+        final var packageName = clazz.getPackageName();
+        return !LOGGING_PACKAGE_NAME.equals(packageName)
+            && !METHOD_HANDLE_PACKAGE_NAME.equals(packageName)
+            && !Proxy.isProxyClass(clazz);
+    }
+
+    /**
+     * Returns the name of the logger of a caller. Lambdas and anonymous inner classes take the name of the
+     * encapsulating class.
+     */
+    private static String getCallerName(Class<?> clazz) {
+        var caller = clazz;
+        while (caller.isAnonymousClass()) {
+            caller = caller.getEnclosingClass();
+        }
+        final var name = caller.getName();
+        final var lambdaSeparator = name.indexOf(LAMBDA_SEPARATOR);
+        return lambdaSeparator < 0 ? name : name.substring(0, lambdaSeparator);
     }
 
+    private final org.slf4j.Logger delegate;
+    @Nullable
+    private final LogGate gate;
+    // The level of the last suppressed event, at which the suppressed events are summarized when flushed
+    private volatile Level suppressedLevel = Level.INFO;
+
     LoggerImpl(String name) {
-        this.delegate = LoggerFactory.getLogger(name);
+        this(LoggerFactory.getLogger(name));
     }
 
     LoggerImpl(Class<?> clazz) {
-        this.delegate = LoggerFactory.getLogger(clazz);
+        this(LoggerFactory.getLogger(clazz));
     }
 
     LoggerImpl(org.slf4j.Logger logger) {
+        this(logger, null);
+    }
+
+    private LoggerImpl(org.slf4j.Logger logger, @Nullable LogGate gate) {
         this.delegate = logger;
+        this.gate = gate;
     }
 
     @Override
@@ -60,27 +123,27 @@ class LoggerImpl implements Logger {
 
     @Override
     public void trace(String msg) {
-        delegate.trace(msg);
+        if (!intercept(Level.TRACE, null, msg, 0, null, null, null, null)) delegate.trace(msg);
     }
 
     @Override
     public void trace(String format, Object arg) {
-        delegate.trace(format, arg);
+        if (!intercept(Level.TRACE, null, format, 1, arg, null, null, null)) delegate.trace(format, arg);
     }
 
     @Override
     public void trace(String format, Object arg1, Object arg2) {
-        delegate.trace(format, arg1, arg2);
+        if (!intercept(Level.TRACE, null, format, 2, arg1, arg2, null, null)) delegate.trace(format, arg1, arg2);
     }
 
     @Override
     public void trace(String format, Object... arguments) {
-        delegate.trace(format, arguments);
+        if (!intercept(Level.TRACE, null, format, -1, null, null, arguments, null)) delegate.trace(format, arguments);
     }
 
     @Override
     public void trace(String msg, Throwable t) {
-        delegate.trace(msg, t);
+        if (!intercept(Level.TRACE, null, msg, 0, null, null, null, t)) delegate.trace(msg, t);
     }
 
     @Override
@@ -90,27 +153,27 @@ class LoggerImpl implements Logger {
 
     @Override
     public void trace(Marker marker, String msg) {
-        delegate.trace(marker, msg);
+        if (!intercept(Level.TRACE, marker, msg, 0, null, null, null, null)) delegate.trace(marker, msg);
     }
 
     @Override
     public void trace(Marker marker, String format, Object arg) {
-        delegate.trace(marker, format, arg);
+        if (!intercept(Level.TRACE, marker, format, 1, arg, null, null, null)) delegate.trace(marker, format, arg);
     }
 
     @Override
     public void trace(Marker marker, String format, Object arg1, Object arg2) {
-        delegate.trace(marker, format, arg1, arg2);
+        if (!intercept(Level.TRACE, marker, format, 2, arg1, arg2, null, null)) delegate.trace(marker, format, arg1, arg2);
     }
 
     @Override
     public void trace(Marker marker, String format, Object... argArray) {
-        delegate.trace(marker, format, argArray);
+        if (!intercept(Level.TRACE, marker, format, -1, null, null, argArray, null)) delegate.trace(marker, format, argArray);
     }
 
     @Override
     public void trace(Marker marker, String msg, Throwable t) {
-        delegate.trace(marker, msg, t);
+        if (!intercept(Level.TRACE, marker, msg, 0, null, null, null, t)) delegate.trace(marker, msg, t);
     }
 
     @Override
@@ -120,27 +183,27 @@ class LoggerImpl implements Logger {
 
     @Override
     public void debug(String msg) {
-        delegate.debug(msg);
+        if (!intercept(Level.DEBUG, null, msg, 0, null, null, null, null)) delegate.debug(msg);
     }
 
     @Override
     public void debug(String format, Object arg) {
-        delegate.debug(format, arg);
+        if (!intercept(Level.DEBUG, null, format, 1, arg, null, null, null)) delegate.debug(format, arg);
     }
 
     @Override
     public void debug(String format, Object arg1, Object arg2) {
-        delegate.debug(format, arg1, arg2);
+        if (!intercept(Level.DEBUG, null, format, 2, arg1, arg2, null, null)) delegate.debug(format, arg1, arg2);
     }
 
     @Override
     public void debug(String format, Object... arguments) {
-        delegate.debug(format, arguments);
+        if (!intercept(Level.DEBUG, null, format, -1, null, null, arguments, null)) delegate.debug(format, arguments);
     }
 
     @Override
     public void debug(String msg, Throwable t) {
-        delegate.debug(msg, t);
+        if (!intercept(Level.DEBUG, null, msg, 0, null, null, null, t)) delegate.debug(msg, t);
     }
 
     @Override
@@ -150,27 +213,27 @@ class LoggerImpl implements Logger {
 
     @Override
     public void debug(Marker marker, String msg) {
-        delegate.debug(marker, msg);
+        if (!intercept(Level.DEBUG, marker, msg, 0, null, null, null, null)) delegate.debug(marker, msg);
     }
 
     @Override
     public void debug(Marker marker, String format, Object arg) {
-        delegate.debug(marker, format, arg);
+        if (!intercept(Level.DEBUG, marker, format, 1, arg, null, null, null)) delegate.debug(marker, format, arg);
     }
 
     @Override
     public void debug(Marker marker, String format, Object arg1, Object arg2) {
-        delegate.debug(marker, format, arg1, arg2);
+        if (!intercept(Level.DEBUG, marker, format, 2, arg1, arg2, null, null)) delegate.debug(marker, format, arg1, arg2);
     }
 
     @Override
     public void debug(Marker marker, String format, Object... arguments) {
-        delegate.debug(marker, format, arguments);
+        if (!intercept(Level.DEBUG, marker, format, -1, null, null, arguments, null)) delegate.debug(marker, format, arguments);
     }
 
     @Override
     public void debug(Marker marker, String msg, Throwable t) {
-        delegate.debug(marker, msg, t);
+        if (!intercept(Level.DEBUG, marker, msg, 0, null, null, null, t)) delegate.debug(marker, msg, t);
     }
 
     @Override
@@ -180,27 +243,27 @@ class LoggerImpl implements Logger {
 
     @Override
     public void info(String msg) {
-        delegate.info(msg);
+        if (!intercept(Level.INFO, null, msg, 0, null, null, null, null)) delegate.info(msg);
     }
 
     @Override
     public void info(String format, Object arg) {
-        delegate.info(format, arg);
+        if (!intercept(Level.INFO, null, format, 1, arg, null, null, null)) delegate.info(format, arg);
     }
 
     @Override
     public void info(String format, Object arg1, Object arg2) {
-        delegate.info(format, arg1, arg2);
+        if (!intercept(Level.INFO, null, format, 2, arg1, arg2, null, null)) delegate.info(format, arg1, arg2);
     }
 
     @Override
     public void info(String format, Object... arguments) {
-        delegate.info(format, arguments);
+        if (!intercept(Level.INFO, null, format, -1, null, null, arguments, null)) delegate.info(format, arguments);
     }
 
     @Override
     public void info(String msg, Throwable t) {
-        delegate.info(msg, t);
+        if (!intercept(Level.INFO, null, msg, 0, null, null, null, t)) delegate.info(msg, t);
     }
 
     @Override
@@ -210,27 +273,27 @@ class LoggerImpl implements Logger {
 
     @Override
     public void info(Marker marker, String msg) {
-        delegate.info(marker, msg);
+        if (!intercept(Level.INFO, marker, msg, 0, null, null, null, null)) delegate.info(marker, msg);
     }
 
     @Override
     public void info(Marker marker, String format, Object arg) {
-        delegate.info(marker, format, arg);
+        if (!intercept(Level.INFO, marker, format, 1, arg, null, null, null)) delegate.info(marker, format, arg);
     }
 
     @Override
     public void info(Marker marker, String format, Object arg1, Object arg2) {
-        delegate.info(marker, format, arg1, arg2);
+        if (!intercept(Level.INFO, marker, format, 2, arg1, arg2, null, null)) delegate.info(marker, format, arg1, arg2);
     }
 
     @Override
     public void info(Marker marker, String format, Object... arguments) {
-        delegate.info(marker, format, arguments);
+        if (!intercept(Level.INFO, marker, format, -1, null, null, arguments, null)) delegate.info(marker, format, arguments);
     }
 
     @Override
     public void info(Marker marker, String msg, Throwable t) {
-        delegate.info(marker, msg, t);
+        if (!intercept(Level.INFO, marker, msg, 0, null, null, null, t)) delegate.info(marker, msg, t);
     }
 
     @Override
@@ -240,27 +303,27 @@ class LoggerImpl implements Logger {
 
     @Override
     public void warn(String msg) {
-        delegate.warn(msg);
+        if (!intercept(Level.WARN, null, msg, 0, null, null, null, null)) delegate.warn(msg);
     }
 
     @Override
     public void warn(String format, Object arg) {
-        delegate.warn(format, arg);
+        if (!intercept(Level.WARN, null, format, 1, arg, null, null, null)) delegate.warn(format, arg);
     }
 
     @Override
     public void warn(String format, Object... arguments) {
-        delegate.warn(format, arguments);
+        if (!intercept(Level.WARN, null, format, -1, null, null, arguments, null)) delegate.warn(format, arguments);
     }
 
     @Override
     public void warn(String format, Object arg1, Object arg2) {
-        delegate.warn(format, arg1, arg2);
+        if (!intercept(Level.WARN, null, format, 2, arg1, arg2, null, null)) delegate.warn(format, arg1, arg2);
     }
 
     @Override
     public void warn(String msg, Throwable t) {
-        delegate.warn(msg, t);
+        if (!intercept(Level.WARN, null, msg, 0, null, null, null, t)) delegate.warn(msg, t);
     }
 
     @Override
@@ -270,27 +333,27 @@ class LoggerImpl implements Logger {
 
     @Override
     public void warn(Marker marker, String msg) {
-        delegate.warn(marker, msg);
+        if (!intercept(Level.WARN, marker, msg, 0, null, null, null, null)) delegate.warn(marker, msg);
     }
 
     @Override
     public void warn(Marker marker, String format, Object arg) {
-        delegate.warn(marker, format, arg);
+        if (!intercept(Level.WARN, marker, format, 1, arg, null, null, null)) delegate.warn(marker, format, arg);
     }
 
     @Override
     public void warn(Marker marker, String format, Object arg1, Object arg2) {
-        delegate.warn(marker, format, arg1, arg2);
+        if (!intercept(Level.WARN, marker, format, 2, arg1, arg2, null, null)) delegate.warn(marker, format, arg1, arg2);
     }
 
     @Override
     public void warn(Marker marker, String format, Object... arguments) {
-        delegate.warn(marker, format, arguments);
+        if (!intercept(Level.WARN, marker, format, -1, null, null, arguments, null)) delegate.warn(marker, format, arguments);
     }
 
     @Override
     public void warn(Marker marker, String msg, Throwable t) {
-        delegate.warn(marker, msg, t);
+        if (!intercept(Level.WARN, marker, msg, 0, null, null, null, t)) delegate.warn(marker, msg, t);
     }
 
     @Override
@@ -300,27 +363,27 @@ class LoggerImpl implements Logger {
 
     @Override
     public void error(String msg) {
-        delegate.error(msg);
+        if (!intercept(Level.ERROR, null, msg, 0, null, null, null, null)) delegate.error(msg);
     }
 
     @Override
     public void error(String format, Object arg) {
-        delegate.error(format, arg);
+        if (!intercept(Level.ERROR, null, format, 1, arg, null, null, null)) delegate.error(format, arg);
     }
 
     @Override
     public void error(String format, Object arg1, Object arg2) {
-        delegate.error(format, arg1, arg2);
+        if (!intercept(Level.ERROR, null, format, 2, arg1, arg2, null, null)) delegate.error(format, arg1, arg2);
     }
 
     @Override
     public void error(String format, Object... arguments) {
-        delegate.error(format, arguments);
+        if (!intercept(Level.ERROR, null, format, -1, null, null, arguments, null)) delegate.error(format, arguments);
     }
 
     @Override
     public void error(String msg, Throwable t) {
-        delegate.error(msg, t);
+        if (!intercept(Level.ERROR, null, msg, 0, null, null, null, t)) delegate.error(msg, t);
     }
 
     @Override
@@ -330,33 +393,95 @@ class LoggerImpl implements Logger {
 
     @Override
     public void error(Marker marker, String msg) {
-        delegate.error(marker, msg);
+        if (!intercept(Level.ERROR, marker, msg, 0, null, null, null, null)) delegate.error(marker, msg);
     }
 
     @Override
     public void error(Marker marker, String format, Object arg) {
-        delegate.error(marker, format, arg);
+        if (!intercept(Level.ERROR, marker, format, 1, arg, null, null, null)) delegate.error(marker, format, arg);
     }
 
     @Override
     public void error(Marker marker, String format, Object arg1, Object arg2) {
-        delegate.error(marker, format, arg1, arg2);
+        if (!intercept(Level.ERROR, marker, format, 2, arg1, arg2, null, null)) delegate.error(marker, format, arg1, arg2);
     }
 
     @Override
     public void error(Marker marker, String format, Object... arguments) {
-        delegate.error(marker, format, arguments);
+        if (!intercept(Level.ERROR, marker, format, -1, null, null, arguments, null)) delegate.error(marker, format, arguments);
     }
 
     @Override
     public void error(Marker marker, String msg, Throwable t) {
-        delegate.error(marker, msg, t);
+        if (!intercept(Level.ERROR, marker, msg, 0, null, null, null, t)) delegate.error(marker, msg, t);
+    }
+
+    //-- Private Implementation --------------------------------------------------------------------------------------//
+
+    /**
+     * Intercepts an event that is suppressed by the gate of this logger, or that is offered to the asynchronous
+     * logging buffer, returning whether the event has been taken care of. Disabled events are taken care of by
+     * ignoring them.
+     */
+    private boolean intercept(Level level, @Nullable Marker marker, String format, int arity, @Nullable Object arg1,
+                              @Nullable Object arg2, @Nullable Object[] arguments, @Nullable Throwable thrown) {
+        final var asyncLogging = AsyncLogging.current();
+        if (gate == null && asyncLogging == null) return false;
+        if (!isEnabled(level, marker)) return true;
+        if (gate != null && !gate.admit()) {
+            suppressedLevel = level;
+            final var suppressed = gate.pollSuppressed();
+            if (suppressed > 0) logSummary(asyncLogging, level, marker, suppressed);
+            return true;
+        }
+        if (asyncLogging == null) return false;
+        asyncLogging.offer(delegate, level, marker, format, arity, arg1, arg2, arguments, thrown);
+        return true;
     }
 
-    private static class CallingContext extends SecurityManager {
+    @Override
+    public void flushSuppressed() {
+        if (gate == null) return;
+        final var suppressed = gate.flushSuppressed();
+        if (suppressed > 0) logSummary(AsyncLogging.current(), suppressedLevel, null, suppressed);
+    }
+
+    private void logSummary(@Nullable AsyncLogging asyncLogging, Level level, @Nullable Marker marker,
+                            long suppressed) {
+        if (asyncLogging != null) {
+            asyncLogging.offer(delegate, level, marker, SUMMARY_MESSAGE, 1, suppressed, null, null, null);
+            return;
+        }
+        switch (level) {
+            case ERROR:
+                delegate.error(marker, SUMMARY_MESSAGE, suppressed);
+                break;
+            case WARN:
+                delegate.warn(marker, SUMMARY_MESSAGE, suppressed);
+                break;
+            case INFO:
+                delegate.info(marker, SUMMARY_MESSAGE, suppressed);
+                break;
+            case DEBUG:
+                delegate.debug(marker, SUMMARY_MESSAGE, suppressed);
+                break;
+            default:
+                delegate.trace(marker, SUMMARY_MESSAGE, suppressed);
+        }
+    }
 
-        Stream<Class<?>> getClassContextAsStream() {
-            return Stream.of(super.getClassContext());
+    private boolean isEnabled(Level level, @Nullable Marker marker) {
+        switch (level) {
+            case ERROR:
+                return marker == null ? delegate.isErrorEnabled() : delegate.isErrorEnabled(marker);
+            case WARN:
+                return marker == null ? delegate.isWarnEnabled() : delegate.isWarnEnabled(marker);
+            case INFO:
+                return marker == null ? delegate.isInfoEnabled() : delegate.isInfoEnabled(marker);
+            case DEBUG:
+                return marker == null ? delegate.isDebugEnabled() : delegate.isDebugEnabled(marker);
+            default:
+                return marker == null ? delegate.isTraceEnabled() : delegate.isTraceEnabled(marker);
         }
     }
 }
@@ -0,0 +1,151 @@
+package com.nickermancy.logging;
+
+/**
+ * Formats SLF4J message templates with primitive arguments, which are appended to the message without being boxed.
+ * As in SLF4J, each {@code {}} anchor is replaced by the next argument, an anchor preceded by a backslash is kept as
+ * is, and an anchor preceded by two backslashes is replaced after a single backslash. Anchors beyond the arguments
+ * are kept as is.
+ */
+final class MessageTemplates {
+
+    private static final int ARGUMENT_LENGTH = 16;
+
+    static String format(String template, long arg) {
+        final var builder = new StringBuilder(template.length() + ARGUMENT_LENGTH);
+        final var from = appendUntilAnchor(builder, template, 0);
+        if (from < 0) return builder.toString();
+        builder.append(arg);
+        return appendRest(builder, template, from);
+    }
+
+    static String format(String template, double arg) {
+        final var builder = new StringBuilder(template.length() + ARGUMENT_LENGTH);
+        final var from = appendUntilAnchor(builder, template, 0);
+        if (from < 0) return builder.toString();
+        builder.append(arg);
+        return appendRest(builder, template, from);
+    }
+
+    static String format(String template, boolean arg) {
+        final var builder = new StringBuilder(template.length() + ARGUMENT_LENGTH);
+        final var from = appendUntilAnchor(builder, template, 0);
+        if (from < 0) return builder.toString();
+        builder.append(arg);
+        return appendRest(builder, template, from);
+    }
+
+    static String format(String template, long arg1, long arg2) {
+        final var builder = new StringBuilder(template.length() + 2 * ARGUMENT_LENGTH);
+        var from = appendUntilAnchor(builder, template, 0);
+        if (from < 0) return builder.toString();
+        builder.append(arg1);
+        from = appendUntilAnchor(builder, template, from);
+        if (from < 0) return builder.toString();
+        builder.append(arg2);
+        return appendRest(builder, template, from);
+    }
+
+    static String format(String template, long arg1, double arg2) {
+        final var builder = new StringBuilder(template.length() + 2 * ARGUMENT_LENGTH);
+        var from = appendUntilAnchor(builder, template, 0);
+        if (from < 0) return builder.toString();
+        builder.append(arg1);
+        from = appendUntilAnchor(builder, template, from);
+        if (from < 0) return builder.toString();
+        builder.append(arg2);
+        return appendRest(builder, template, from);
+    }
+
+    static String format(String template, Object arg1, long arg2) {
+        final var builder = new StringBuilder(template.length() + 2 * ARGUMENT_LENGTH);
+        var from = appendUntilAnchor(builder, template, 0);
+        if (from < 0) return builder.toString();
+        builder.append(arg1);
+        from = appendUntilAnchor(builder, template, from);
+        if (from < 0) return builder.toString();
+        builder.append(arg2);
+        return appendRest(builder, template, from);
+    }
+
+    static String format(String template, long arg1, long arg2, long arg3) {
+        final var builder = new StringBuilder(template.length() + 3 * ARGUMENT_LENGTH);
+        var from = appendUntilAnchor(builder, template, 0);
+        if (from < 0) return builder.toString();
+        builder.append(arg1);
+        from = appendUntilAnchor(builder, template, from);
+        if (from < 0) return builder.toString();
+        builder.append(arg2);
+        from = appendUntilAnchor(builder, template, from);
+        if (from < 0) return builder.toString();
+        builder.append(arg3);
+        return appendRest(builder, template, from);
+    }
+
+    static String format(String template, Object arg1, long arg2, long arg3) {
+        final var builder = new StringBuilder(template.length() + 3 * ARGUMENT_LENGTH);
+        var from = appendUntilAnchor(builder, template, 0);
+        if (from < 0) return builder.toString();
+        builder.append(arg1);
+        from = appendUntilAnchor(builder, template, from);
+        if (from < 0) return builder.toString();
+        builder.append(arg2);
+        from = appendUntilAnchor(builder, template, from);
+        if (from < 0) return builder.toString();
+        builder.append(arg3);
+        return appendRest(builder, template, from);
+    }
+
+    static String format(String template, Object arg1, long arg2, double arg3) {
+        final var builder = new StringBuilder(template.length() + 3 * ARGUMENT_LENGTH);
+        var from = appendUntilAnchor(builder, template, 0);
+        if (from < 0) return builder.toString();
+        builder.append(arg1);
+        from = appendUntilAnchor(builder, template, from);
+        if (from < 0) return builder.toString();
+        builder.append(arg2);
+        from = appendUntilAnchor(builder, template, from);
+        if (from < 0) return builder.toString();
+        builder.append(arg3);
+        return appendRest(builder, template, from);
+    }
+
+    //-- Private Implementation --------------------------------------------------------------------------------------//
+
+    /**
+     * Appends the template from an index up to its next anchor, returning the index after the anchor, or appends the
+     * rest of the template and returns -1 if there is no anchor left.
+     */
+    private static int appendUntilAnchor(StringBuilder builder, String template, int from) {
+        var start = from;
+        while (true) {
+            final var anchor = template.indexOf("{}", start);
+            if (anchor < 0) {
+                builder.append(template, start, template.length());
+                return -1;
+            }
+            if (!isEscaped(template, anchor)) {
+                builder.append(template, start, anchor);
+                return anchor + 2;
+            }
+            if (isEscaped(template, anchor - 1)) {
+                // A literal backslash, followed by a replaced anchor
+                builder.append(template, start, anchor - 1);
+                return anchor + 2;
+            }
+            // A literal anchor, without its escape
+            builder.append(template, start, anchor - 1).append("{}");
+            start = anchor + 2;
+        }
+    }
+
+    private static boolean isEscaped(String template, int index) {
+        return index > 0 && template.charAt(index - 1) == '\\';
+    }
+
+    private static String appendRest(StringBuilder builder, String template, int from) {
+        return builder.append(template, from, template.length()).toString();
+    }
+
+    private MessageTemplates() {
+    }
+}
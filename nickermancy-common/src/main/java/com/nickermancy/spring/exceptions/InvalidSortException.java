@@ -0,0 +1,16 @@
+package com.nickermancy.spring.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.BAD_REQUEST)
+public class InvalidSortException extends RuntimeException {
+
+    public InvalidSortException(String message) {
+        super(message);
+    }
+
+    public InvalidSortException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -2,6 +2,7 @@ package com.nickermancy.spring.hateaos;
 
 import org.springframework.data.domain.Pageable;
 import org.springframework.hateoas.Link;
+import org.springframework.lang.Nullable;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 import org.springframework.web.util.UriComponentsBuilder;
 
@@ -30,9 +31,31 @@ public class LinkSupport {
         return links;
     }
 
+    public static Iterable<Link> getCursorLinks(@Nullable String previousCursor, @Nullable String nextCursor) {
+        var uriBuilder = ServletUriComponentsBuilder.fromCurrentRequest();
+        var links = new ArrayList<Link>();
+        links.add(cursorLink(uriBuilder, null, "first"));
+        if (previousCursor != null) {
+            links.add(cursorLink(uriBuilder, previousCursor, "previous"));
+        }
+        if (nextCursor != null) {
+            links.add(cursorLink(uriBuilder, nextCursor, "next"));
+        }
+        return links;
+    }
+
     public static Link pageLink(UriComponentsBuilder uriBuilder, long page, String relation) {
         return Link.of(uriBuilder
                 .replaceQueryParam("page", page)
                 .build().toUriString(), relation);
     }
+
+    public static Link cursorLink(UriComponentsBuilder uriBuilder, @Nullable String cursor, String relation) {
+        if (cursor == null) {
+            uriBuilder.replaceQueryParam("cursor");
+        } else {
+            uriBuilder.replaceQueryParam("cursor", cursor);
+        }
+        return Link.of(uriBuilder.build().toUriString(), relation);
+    }
 }
@@ -0,0 +1,129 @@
+package com.nickermancy.spring.repositories;
+
+import com.nickermancy.spring.exceptions.InvalidCursorException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.function.Function;
+
+import org.springframework.util.Assert;
+
+/**
+ * A position in one of the sorted orders of a {@link FolderIndex}, encoded as an opaque URL-safe token.
+ * <p>
+ * The token holds the sort order and direction along with the sort key and URI of the asset at the position, so a
+ * listing resumes at the right place even if that asset has since been removed.
+ */
+final class AssetCursor {
+
+    private static final byte VERSION = 1;
+
+    /**
+     * Returns a cursor positioned at the given asset, for listing the assets that follow it.
+     */
+    static AssetCursor after(AssetOrder order, boolean ascending, BinaryFileAsset asset) {
+        return new AssetCursor(order, ascending, true, asset);
+    }
+
+    /**
+     * Returns a cursor positioned at the given asset, for listing the assets that precede it.
+     */
+    static AssetCursor before(AssetOrder order, boolean ascending, BinaryFileAsset asset) {
+        return new AssetCursor(order, ascending, false, asset);
+    }
+
+    /**
+     * Decodes a cursor token.
+     *
+     * @param token        the token returned by {@link #encode()}
+     * @param pathResolver resolves the asset URI held by the token to a path within the listed root folder
+     *
+     * @throws InvalidCursorException if the token is malformed
+     */
+    static AssetCursor decode(String token, Function<URI, Path> pathResolver) {
+        try (final var input = new DataInputStream(new ByteArrayInputStream(Base64.getUrlDecoder().decode(token)))) {
+            if (input.readByte() != VERSION) throw new InvalidCursorException(token);
+            final var order = AssetOrder.valueOf(input.readUTF());
+            final var ascending = input.readBoolean();
+            final var after = input.readBoolean();
+            final var asset = new BinaryFileAsset();
+            order.readKey(input, asset);
+            asset.setUri(new URI(null, null, input.readUTF(), null));
+            asset.setPath(pathResolver.apply(asset.getUri()));
+            return new AssetCursor(order, ascending, after, asset);
+        } catch (IOException | URISyntaxException | IllegalArgumentException ex) {
+            throw new InvalidCursorException(token, ex);
+        }
+    }
+
+    private final AssetOrder order;
+    private final boolean ascending;
+    private final boolean after;
+    private final BinaryFileAsset position;
+
+    private AssetCursor(AssetOrder order, boolean ascending, boolean after, BinaryFileAsset position) {
+        Assert.notNull(position.getUri(), "BinaryResource uri must not be null");
+        this.order = order;
+        this.ascending = ascending;
+        this.after = after;
+        this.position = position;
+    }
+
+    AssetOrder getOrder() {
+        return order;
+    }
+
+    boolean isAscending() {
+        return ascending;
+    }
+
+    /**
+     * Returns {@code true} if the cursor lists the assets that follow its position, or {@code false} if it lists the
+     * assets that precede it.
+     */
+    boolean isAfter() {
+        return after;
+    }
+
+    /**
+     * Returns an asset holding the sort key and path of the position, for probing the sorted orders of the index.
+     */
+    BinaryFileAsset getPosition() {
+        return position;
+    }
+
+    /**
+     * Returns a cursor at the same position that lists in the opposite direction.
+     */
+    AssetCursor reverse() {
+        return new AssetCursor(order, ascending, !after, position);
+    }
+
+    String encode() {
+        final var bytes = new ByteArrayOutputStream(64);
+        try (final var output = new DataOutputStream(bytes)) {
+            output.writeByte(VERSION);
+            output.writeUTF(order.name());
+            output.writeBoolean(ascending);
+            output.writeBoolean(after);
+            order.writeKey(output, position);
+            output.writeUTF(position.getUri().getPath());
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes.toByteArray());
+    }
+
+    @Override
+    public String toString() {
+        return encode();
+    }
+}
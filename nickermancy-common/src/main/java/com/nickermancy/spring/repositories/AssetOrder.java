@@ -0,0 +1,108 @@
+package com.nickermancy.spring.repositories;
+
+import com.nickermancy.spring.exceptions.InvalidSortException;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.function.Function;
+
+import org.springframework.lang.Nullable;
+
+/**
+ * The orders in which a {@link FolderIndex} keeps the binary assets of each folder sorted. Assets with equal sort
+ * keys are ordered by path, so that every asset has a unique position in each order.
+ */
+enum AssetOrder {
+
+    PATH("path", "path", (a, b) -> 0),
+    SIZE("size", "size", by(BinaryFileAsset::getSize)),
+    MEDIA_TYPE("mediaType", "media-type", by(BinaryFileAsset::getMediaType)),
+    LAST_MODIFIED("lastModified", "last-modified", by(BinaryFileAsset::getLastModified));
+
+    /**
+     * Returns the order for a sort property, given either as a bean property name or as a JSON property name.
+     *
+     * @throws InvalidSortException if assets cannot be sorted by the property
+     */
+    static AssetOrder of(String property) {
+        for (final var order : values()) {
+            if (order.property.equals(property) || order.jsonProperty.equals(property)) return order;
+        }
+        throw new InvalidSortException("Binary assets cannot be sorted by " + property);
+    }
+
+    private final String property;
+    private final String jsonProperty;
+    private final Comparator<BinaryFileAsset> comparator;
+
+    AssetOrder(String property, String jsonProperty, Comparator<BinaryFileAsset> keyComparator) {
+        this.property = property;
+        this.jsonProperty = jsonProperty;
+        this.comparator = keyComparator.thenComparing(by(BinaryFileAsset::getPath));
+    }
+
+    String getProperty() {
+        return property;
+    }
+
+    Comparator<BinaryFileAsset> comparator() {
+        return comparator;
+    }
+
+    /**
+     * Writes the sort key of the asset, excluding its path.
+     */
+    void writeKey(DataOutput output, BinaryFileAsset asset) throws IOException {
+        switch (this) {
+            case SIZE:
+                writeLong(output, asset.getSize());
+                break;
+            case MEDIA_TYPE:
+                output.writeBoolean(asset.getMediaType() != null);
+                if (asset.getMediaType() != null) output.writeUTF(asset.getMediaType());
+                break;
+            case LAST_MODIFIED:
+                writeLong(output, asset.getLastModified());
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Reads a sort key written by {@link #writeKey} into the asset.
+     */
+    void readKey(DataInput input, BinaryFileAsset asset) throws IOException {
+        switch (this) {
+            case SIZE:
+                asset.setSize(readLong(input));
+                break;
+            case MEDIA_TYPE:
+                asset.setMediaType(input.readBoolean() ? input.readUTF() : null);
+                break;
+            case LAST_MODIFIED:
+                asset.setLastModified(readLong(input));
+                break;
+            default:
+                break;
+        }
+    }
+
+    //-- Private Implementation --------------------------------------------------------------------------------------//
+
+    private static <T extends Comparable<? super T>> Comparator<BinaryFileAsset> by(Function<BinaryFileAsset, T> key) {
+        return Comparator.comparing(key, Comparator.nullsFirst(Comparator.naturalOrder()));
+    }
+
+    private static void writeLong(DataOutput output, @Nullable Long value) throws IOException {
+        output.writeBoolean(value != null);
+        if (value != null) output.writeLong(value);
+    }
+
+    @Nullable
+    private static Long readLong(DataInput input) throws IOException {
+        return input.readBoolean() ? input.readLong() : null;
+    }
+}
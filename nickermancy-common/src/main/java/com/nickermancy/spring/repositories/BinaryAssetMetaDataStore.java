@@ -0,0 +1,72 @@
+package com.nickermancy.spring.repositories;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.UUID;
+
+import org.springframework.lang.Nullable;
+
+import reactor.core.publisher.Flux;
+
+/**
+ * Persists the metadata of {@link BinaryFileAsset} objects on behalf of a {@link BinaryAssetRepository}.
+ */
+public interface BinaryAssetMetaDataStore extends Closeable {
+
+    /**
+     * Returns the saved metadata of a single binary asset.
+     *
+     * @param rootId  the identifier of the root folder that the asset was imported from
+     * @param assetId the identifier of the asset
+     *
+     * @return the saved metadata, or {@code null} if there is none
+     *
+     * @throws IOException if the metadata could not be read
+     */
+    @Nullable
+    BinaryFileAsset read(UUID rootId, UUID assetId) throws IOException;
+
+    /**
+     * Returns a {@link Flux} of the saved metadata of every binary asset in the store.
+     *
+     * @return a {@link Flux} of binary asset information
+     */
+    Flux<BinaryFileAsset> readAll();
+
+    /**
+     * Returns a {@link Flux} of the saved metadata of the binary assets imported from a root folder.
+     *
+     * @param rootId the identifier of the root folder that the assets were imported from
+     *
+     * @return a {@link Flux} of binary asset information
+     */
+    default Flux<BinaryFileAsset> readAll(UUID rootId) {
+        return readAll().filter(binaryFileAsset -> rootId.equals(binaryFileAsset.getRootId()));
+    }
+
+    /**
+     * Saves the metadata of a binary asset, replacing any previously saved metadata for the same asset.
+     *
+     * @param binaryFileAsset the binary asset to be saved
+     *
+     * @throws IOException if the metadata could not be written
+     */
+    void write(BinaryFileAsset binaryFileAsset) throws IOException;
+
+    /**
+     * Deletes the saved metadata of a binary asset, if there is any.
+     *
+     * @param binaryFileAsset the binary asset to be deleted
+     *
+     * @throws IOException if the metadata could not be deleted
+     */
+    void delete(BinaryFileAsset binaryFileAsset) throws IOException;
+
+    /**
+     * Writes any buffered changes to the underlying storage.
+     *
+     * @throws IOException if the changes could not be written
+     */
+    default void flush() throws IOException {
+    }
+}
@@ -1,25 +1,37 @@
 package com.nickermancy.spring.repositories;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.nickermancy.io.FileChangeListener;
+import com.nickermancy.io.DigestService;
+import com.nickermancy.io.FileFingerprint;
+import com.nickermancy.io.FileTreeSupport;
+import com.nickermancy.io.FileWatchFilter;
 import com.nickermancy.io.FileWatchService;
+import com.nickermancy.io.MessageDigestException;
+import com.nickermancy.io.MessageDigestSupport;
+import com.nickermancy.io.TreeDigest;
 import com.nickermancy.logging.Logger;
 import com.nickermancy.spring.exceptions.ResourceNotFoundException;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.AccessDeniedException;
 import java.nio.file.Files;
 import java.nio.file.LinkOption;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.regex.Pattern;
 import java.util.stream.Stream;
 
@@ -29,11 +41,15 @@ import org.springframework.http.MediaType;
 import org.springframework.lang.Nullable;
 import org.springframework.util.Assert;
 
+import reactor.core.Disposable;
+import reactor.core.Disposables;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
 
 import static java.lang.String.format;
-import static java.util.Collections.emptyMap;
 import static java.util.Objects.requireNonNull;
 
 /**
@@ -42,32 +58,56 @@ import static java.util.Objects.requireNonNull;
 public class BinaryAssetRepository {
 
     private static final Logger log = Logger.getLogger();
+    // Files are logged one by one, which would flood the log on large roots
+    private static final Logger exclusionLog = log.sampled(100);
+    private static final Logger digestLog = log.atMostEvery(Duration.ofSeconds(1));
+    private static final Pattern HEX_DIGEST = Pattern.compile("[0-9a-fA-F]+");
 
-    //private final ExecutorService executor;
-    private final MessageDigest sha256Digest;
+    private final String hashAlgorithm;
+    private final int digestLength;
     private final Pattern resourceRegex;
-    private final Path metaDataRootPath;
     private final Duration refreshInterval;
+    private final Duration changeCoalescingWindow;
+    private final int importParallelism;
+    private final Scheduler importScheduler;
+    private final DigestService digestService;
     private final FileWatchService fileWatchService;
-    private final ObjectMapper objectMapper;
-    private final Map<Path, Map<Path, BinaryFileAsset>> binaryAssetMetaData = new ConcurrentHashMap<>();
+    private final BinaryAssetMetaDataStore metaDataStore;
+    private final Map<UUID, FolderIndex> folderIndexes = new ConcurrentHashMap<>();
+    private final Map<UUID, ContentHashIndex> contentHashIndexes = new ConcurrentHashMap<>();
     private final Map<UUID, Path> fileSystemRootPaths = new ConcurrentHashMap<>();
+    private final Map<Path, FileChange> pendingChanges = new ConcurrentHashMap<>();
+    private final Disposable.Composite subscriptions = Disposables.composite();
 
     public BinaryAssetRepository(BinaryAssetRepositoryProperties properties,
                                  FileWatchService fileWatchService,
                                  ObjectMapper objectMapper) {
+        this(properties, fileWatchService, createMetaDataStore(properties, objectMapper));
+    }
+
+    public BinaryAssetRepository(BinaryAssetRepositoryProperties properties,
+                                 FileWatchService fileWatchService,
+                                 BinaryAssetMetaDataStore metaDataStore) {
         this.fileWatchService = fileWatchService;
-        this.objectMapper = objectMapper;
-        this.metaDataRootPath = properties.getMetaDataRoot();
+        this.metaDataStore = metaDataStore;
         this.resourceRegex = properties.getResourceRegex();
         this.refreshInterval = properties.getRefreshInterval();
-//        this.executor = Executors.newSingleThreadExecutor();
+        this.changeCoalescingWindow = properties.getChangeCoalescingWindow();
+        this.importParallelism = properties.getImportParallelism();
+        this.importScheduler = Schedulers.newBoundedElastic(importParallelism, Integer.MAX_VALUE, "binary-asset-import");
 
+        this.hashAlgorithm = properties.getHashAlgorithm();
         try {
-            this.sha256Digest = MessageDigest.getInstance(properties.getHashAlgorithm());
-        } catch (NoSuchAlgorithmException ex) {
+            final var digestAlgorithm = TreeDigest.isTreeAlgorithm(hashAlgorithm)
+                ? TreeDigest.getInstance(hashAlgorithm).getHashAlgorithm()
+                : hashAlgorithm;
+            this.digestLength = MessageDigest.getInstance(digestAlgorithm).getDigestLength();
+        } catch (MessageDigestException | NoSuchAlgorithmException ex) {
             throw new IllegalArgumentException(properties.getHashAlgorithm(), ex);
         }
+        final var digestBandwidth = properties.getDigestBandwidth();
+        this.digestService = new DigestService(importParallelism,
+            digestBandwidth != null ? digestBandwidth.toBytes() : DigestService.UNLIMITED);
     }
 
     /**
@@ -82,7 +122,7 @@ public class BinaryAssetRepository {
     public Mono<Long> countFolderAssets(UUID uuid, URI assetUri) {
         return Mono.fromSupplier(() -> {
             final var folderPath = getPathToBinary(uuid, assetUri);
-            return binaryAssetMetaData.keySet().stream().filter(p -> p.startsWith(folderPath)).count();
+            return getFolderIndex(uuid).countFolders(folderPath);
         });
     }
 
@@ -97,7 +137,7 @@ public class BinaryAssetRepository {
     public Mono<Long> countBinaryAssets(UUID uuid, URI assetUri) {
         return Mono.fromSupplier(() -> {
             final var fileSystemPath = getPathToBinary(uuid, assetUri);
-            return Optional.ofNullable(binaryAssetMetaData.get(fileSystemPath)).stream().count();
+            return getFolderIndex(uuid).countFiles(fileSystemPath);
         });
     }
 
@@ -110,10 +150,12 @@ public class BinaryAssetRepository {
      * @return a {@link Flux} of folder asset information
      */
     public Flux<FolderAsset> listFolderAssets(UUID uuid, URI assetUri) {
-        return Flux.fromStream(() -> {
+        return Flux.defer(() -> {
+            final var folderIndex = getFolderIndex(uuid);
             final var folderPath = getPathToBinary(uuid, assetUri);
-            return binaryAssetMetaData.keySet().stream().filter(p -> p.startsWith(folderPath));
-        }).map(this::getFolderAsset);
+            return Flux.fromIterable(folderIndex.listFolders(folderPath))
+                .map(path -> getFolderAsset(path, folderIndex.countFiles(path)));
+        });
     }
 
     /**
@@ -126,12 +168,64 @@ public class BinaryAssetRepository {
      */
     public Mono<BinaryFileAsset> getBinaryAsset(UUID rootId, URI assetUri) {
         return Mono.fromSupplier(() -> {
-            final var path = getPathToMetadata(rootId, assetUri);
-            var asset = binaryAssetMetaData.get(path);
-            return asset == null ? null : asset.get(path);
+            final var path = getPathToBinary(rootId, assetUri);
+            return getFolderIndex(rootId).get(path);
         });
     }
 
+    /**
+     * Returns a {@link Flux} of the binary assets imported from a root folder whose contents have the given digest.
+     *
+     * @param rootId the identifier of the root folder that the assets were imported from
+     * @param digest the digest of the assets, either Base64 encoded as in {@link BinaryFileAsset#getSha256()} or hex
+     *               encoded
+     *
+     * @return a {@link Flux} of binary asset information, in path order
+     */
+    public Flux<BinaryFileAsset> findBinaryAssetsByDigest(UUID rootId, String digest) {
+        return Flux.defer(() -> Flux.fromIterable(getContentHashIndex(rootId).get(normalizeDigest(digest))));
+    }
+
+    /**
+     * Returns a {@link Flux} of the binary assets imported from any root folder whose contents have the given digest.
+     *
+     * @param digest the digest of the assets, either Base64 encoded as in {@link BinaryFileAsset#getSha256()} or hex
+     *               encoded
+     *
+     * @return a {@link Flux} of binary asset information
+     */
+    public Flux<BinaryFileAsset> findBinaryAssetsByDigest(String digest) {
+        return Flux.defer(() -> {
+            final var normalizedDigest = normalizeDigest(digest);
+            return Flux.fromIterable(contentHashIndexes.values())
+                .flatMapIterable(contentHashIndex -> contentHashIndex.get(normalizedDigest));
+        });
+    }
+
+    /**
+     * Returns a {@link Flux} of the groups of binary assets imported from a root folder whose contents are identical.
+     * Each group holds two or more assets, in path order.
+     *
+     * @param rootId the identifier of the root folder that the assets were imported from
+     *
+     * @return a {@link Flux} of duplicate groups
+     */
+    public Flux<List<BinaryFileAsset>> listDuplicateAssets(UUID rootId) {
+        return Flux.defer(() -> Flux.fromIterable(getContentHashIndex(rootId).getDuplicates()));
+    }
+
+    /**
+     * Returns a {@link Mono} that produces the number of bytes that would be reclaimed by keeping a single copy of
+     * each group of identical binary assets imported from a root folder.
+     *
+     * @param rootId the identifier of the root folder that the assets were imported from
+     *
+     * @return a {@link Mono} producing the number of reclaimable bytes
+     */
+    public Mono<Long> countReclaimableBytes(UUID rootId) {
+        return Mono.fromSupplier(() -> getContentHashIndex(rootId).getReclaimableBytes());
+    }
+
     /**
      * Returns a sorted {@link Flux} of all binary assets that reside under the given folder.
      *
@@ -168,6 +262,43 @@ public class BinaryAssetRepository {
         return listBinaryAssets(rootId, assetUri, pageable, pageable.getSort());
     }
 
+    /**
+     * Returns a {@link Mono} that produces a page of the binary assets that reside under the given folder, starting
+     * from a cursor. Each page costs time proportional to its size plus the number of folders under the folder,
+     * however far into the listing it starts.
+     * <p>
+     * Assets can be sorted by {@code path}, {@code size}, {@code mediaType} or {@code lastModified}, using the first
+     * order of the sort; assets with equal sort keys are sorted by path. A cursor carries the order of the listing it
+     * was taken from, so the sort is only used for the first page.
+     *
+     * @param assetUri the asset URI of the folder whose contents are to be listed
+     * @param cursor   the cursor of the page to be listed, or {@code null} for the first page
+     * @param size     the maximum number of assets in the page
+     * @param sort     describes how the assets are to be sorted
+     *
+     * @return a {@link Mono} producing a page of binary asset information
+     *
+     * @throws com.nickermancy.spring.exceptions.InvalidCursorException if the cursor is malformed
+     * @throws com.nickermancy.spring.exceptions.InvalidSortException if assets cannot be sorted as requested
+     */
+    public Mono<CursorPage<BinaryFileAsset>> listBinaryAssets(UUID rootId, URI assetUri, @Nullable String cursor,
+                                                             int size, Sort sort) {
+        Assert.isTrue(size > 0, "Page size must be positive");
+        return Mono.fromSupplier(() -> {
+            final var path = getPathToBinary(rootId, assetUri);
+            final var folderIndex = getFolderIndex(rootId);
+            if (!folderIndex.containsFolder(path)) {
+                throw new ResourceNotFoundException(assetUri.getPath());
+            }
+            if (cursor == null) {
+                final var order = sort.stream().findFirst().orElse(Sort.Order.asc(AssetOrder.PATH.getProperty()));
+                return listPage(folderIndex, path, AssetOrder.of(order.getProperty()), order.isAscending(), null, size);
+            }
+            final var position = AssetCursor.decode(cursor, uri -> getPathToBinary(rootId, uri));
+            return listPage(folderIndex, path, position.getOrder(), position.isAscending(), position, size);
+        });
+    }
+
     /**
      * Returns {@code true} if the supplied asset URI represents a folder.
      *
@@ -191,7 +322,8 @@ public class BinaryAssetRepository {
     }
 
     /**
-     * Returns an {@link InputStream} for reading the binary file.
+     * Returns an {@link InputStream} for reading the binary file. The bytes read from it are charged to the digest
+     * bandwidth, so that the hashing of imported files yields to the reading of assets.
      *
      * @param assetUri the location of the asset to be read
      *
@@ -201,256 +333,463 @@ public class BinaryAssetRepository {
      */
     public InputStream getInputStream(UUID rootId, URI assetUri) throws IOException {
         try {
-            return Files.newInputStream(getPathToBinary(rootId, assetUri));
+            return digestService.newInputStream(getPathToBinary(rootId, assetUri));
         } catch (NoSuchFileException ex) {
             throw new ResourceNotFoundException(assetUri.getPath(), ex);
         }
     }
 
+    /**
+     * Imports the binary assets under the given root folder and starts listening for changes to them. Binary assets
+     * are processed concurrently, up to the configured import parallelism, but are added to the index in the order
+     * in which they are found in the folder.
+     *
+     * @param root the root folder to be imported
+     *
+     * @return the identifier of the imported root folder
+     */
     public UUID importFolder(Path root) {
         if (!Files.isDirectory(root)) throw new ResourceNotFoundException(root.toString());
         final var uuid = UUID.nameUUIDFromBytes(root.toString().getBytes(StandardCharsets.UTF_8));
         fileSystemRootPaths.put(uuid, root);
-        //executor.submit(() -> {
-        log.info(() -> format("Importing binary assets from '%s'", root));
+        final var folderIndex = folderIndexes.computeIfAbsent(uuid, id -> new FolderIndex(root));
+        contentHashIndexes.computeIfAbsent(uuid, id -> new ContentHashIndex());
+        log.info("Importing binary assets from '{}'", root);
         final var start = System.currentTimeMillis();
-        Flux.fromStream(() -> this.getPathsToBinaryAssets(root))
+        // The saved metadata of a root that has not been imported yet is read up front, in a single sequential pass
+        final var stored = folderIndex.countFiles(root) == 0 ? readStoredMetadata(uuid) : null;
+        importBinaryAssets(root, stored)
             .doOnComplete(this::cleanupBinaryAssets)
             .doOnComplete(() -> listenForChanges(root))
-            .doOnTerminate(() -> log.info(() -> {
-                final var duration = System.currentTimeMillis() - start;
-                final var count = binaryAssetMetaData.getOrDefault(root, emptyMap()).size();
-                return format("Finished loading %,d binary resources in %,.3f seconds.", count, duration / 1000f);
-            }))
-            .map(this::getBinaryResource)
-            .doOnNext(this::computeIdentifier)
-            .doOnNext(this::computeDigest)
-            .doOnNext(this::probeMediaType)
-            .doOnNext(this::computeFileSize)
-            .doOnNext(this::saveMetadataFile)
-            .subscribe(this::addMetadataEntry);
-        //});
+            .doOnTerminate(() -> log.info("Finished loading {} binary resources in {} seconds.",
+                folderIndex.countFiles(root), (System.currentTimeMillis() - start) / 1000d))
+            .onErrorResume(ex -> {
+                log.error(() -> "Failed to import binary assets from " + root, ex);
+                return Mono.empty();
+            })
+            .blockLast();
         return uuid;
     }
 
-    //-- Private Implementation --------------------------------------------------------------------------------------//
-
-    private void listenForChanges(Path root) {
+    /**
+     * Stops the threads used for importing binary assets and closes the metadata store.
+     */
+    public void destroy() {
+        subscriptions.dispose();
+        pendingChanges.values().forEach(change -> change.timer.dispose());
+        importScheduler.dispose();
+        digestService.destroy();
         try {
-            fileWatchService.register(root, getFileChangeListener());
+            metaDataStore.close();
         } catch (IOException e) {
-            log.error("Failed to register file change listener for root path: " + root, e);
+            log.error(() -> "Failed to close metadata store " + metaDataStore, e);
         }
     }
 
-    private FileChangeListener getFileChangeListener() {
-        return event -> {
-            switch (event.getType()) {
-                case CREATED:
-                    createBinaryAsset(event.getPath());
-                    break;
-                case MODIFIED:
-                    updateBinaryAsset(event.getPath());
-                    break;
-                case DELETED:
-                    deleteBinaryAsset(event.getPath());
-                    break;
+    //-- Private Implementation --------------------------------------------------------------------------------------//
+
+    private static BinaryAssetMetaDataStore createMetaDataStore(BinaryAssetRepositoryProperties properties,
+                                                                ObjectMapper objectMapper) {
+        if (properties.getMetaDataFormat() == BinaryAssetRepositoryProperties.MetaDataFormat.SEGMENT_LOG) {
+            final var directory = properties.getMetaDataRoot().resolve("log");
+            try {
+                return new LogStructuredMetaDataStore(directory, objectMapper,
+                    properties.getMetaDataSegmentSize().toBytes(), properties.getMetaDataCompactionInterval());
+            } catch (IOException ex) {
+                throw new UncheckedIOException("Failed to open metadata store: " + directory, ex);
             }
-        };
+        }
+        return new JsonFileMetaDataStore(properties.getMetaDataRoot(), objectMapper);
+    }
+
+    private void listenForChanges(Path root) {
+        // Changes to files that can never be binary assets are filtered out before they are queued
+        final var filter = FileWatchFilter.include(name -> resourceRegex.matcher(name.toString()).matches());
+        subscriptions.add(fileWatchService.watch(root, filter)
+            .doOnNext(event -> log.debug("{}: {}", event.getType(), event.getPath()))
+            .subscribe(
+                event -> scheduleFileChange(event.getPath()),
+                ex -> log.error("Failed to watch for changes to root path: " + root, ex)));
+    }
+
+    /**
+     * Imports the binary assets under a folder, processing them concurrently up to the configured import parallelism
+     * and adding them to the index in the order in which they are found.
+     */
+    private Flux<BinaryFileAsset> importBinaryAssets(Path folder, @Nullable Map<UUID, BinaryFileAsset> stored) {
+        return Flux.fromStream(() -> this.findBinaryAssets(folder))
+            .flatMapSequential(found -> Mono
+                .fromCallable(() -> importBinaryAsset(found.getPath(), found.getAttributes(), stored))
+                .subscribeOn(importScheduler), importParallelism, importParallelism)
+            .doOnNext(this::addMetadataEntry)
+            // Reports the events suppressed since the last summaries, which would otherwise wait for the next import
+            .doFinally(signal -> {
+                exclusionLog.flushSuppressed();
+                digestLog.flushSuppressed();
+            });
+    }
+
+    /**
+     * Schedules the index to be updated once the path has gone without changes for the coalescing window. Since the
+     * events of a path are coalesced, the update is based on the state of the file system rather than on the type of
+     * the events. The updates of a path never overlap: a change made while the path is being updated schedules
+     * another update once the current one has finished.
+     */
+    private void scheduleFileChange(Path path) {
+        pendingChanges.compute(path, (key, pending) -> {
+            final var change = pending != null ? pending : new FileChange();
+            if (change.running) {
+                change.changedWhileRunning = true;
+            } else {
+                change.timer.update(delayFileChange(key));
+            }
+            return change;
+        });
+    }
+
+    private Disposable delayFileChange(Path path) {
+        return Mono.delay(changeCoalescingWindow, importScheduler)
+            .filter(tick -> startFileChange(path))
+            .flatMap(tick -> applyFileChange(path)
+                .doFinally(signal -> finishFileChange(path, signal != SignalType.CANCEL)))
+            .subscribe();
+    }
+
+    private boolean startFileChange(Path path) {
+        final var started = new AtomicBoolean();
+        pendingChanges.computeIfPresent(path, (key, change) -> {
+            if (change.running) {
+                change.changedWhileRunning = true;
+            } else {
+                change.running = true;
+                started.set(true);
+            }
+            return change;
+        });
+        return started.get();
+    }
+
+    private void finishFileChange(Path path, boolean reschedule) {
+        pendingChanges.computeIfPresent(path, (key, change) -> {
+            change.running = false;
+            if (!reschedule || !change.changedWhileRunning) return null;
+            change.changedWhileRunning = false;
+            change.timer.update(delayFileChange(key));
+            return change;
+        });
+    }
+
+    private Mono<Void> applyFileChange(Path path) {
+        try {
+            final var attributes = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            if (attributes.isDirectory()) {
+                return createBinaryAssets(path);
+            } else if (includeBinaryAsset(path, attributes)) {
+                updateBinaryAsset(path, attributes);
+            } else {
+                deleteBinaryAsset(path);
+            }
+        } catch (NoSuchFileException ex) {
+            deleteBinaryAsset(path);
+        } catch (IOException | RuntimeException ex) {
+            log.error(() -> "Failed to apply changes to " + path, ex);
+        }
+        return Mono.empty();
     }
 
     private Flux<BinaryFileAsset> listBinaryAssets(UUID rootId, URI assetUri, Pageable pageable, Sort sort) {
         final var path = getPathToBinary(rootId, assetUri);
-        final var results = binaryAssetMetaData.get(path);
-        if (results == null) {
+        final var folderIndex = getFolderIndex(rootId);
+        if (!folderIndex.containsFolder(path)) {
             throw new ResourceNotFoundException(assetUri.getPath());
         }
-        var binaryResourceFlux = Flux.fromIterable(results.values());
-        if (!fileSystemRootPaths.containsValue(path)) {
-            binaryResourceFlux = binaryResourceFlux.filter(resource -> resource.getPath() != null && resource.getPath().startsWith(path));
-        }
-        if (sort.isSorted()) {
-            binaryResourceFlux = binaryResourceFlux.sort(Comparator.comparing(BinaryFileAsset::getPath));
-        }
+        final var order = sort.stream().findFirst().orElse(Sort.Order.asc(AssetOrder.PATH.getProperty()));
+        final var limit = pageable.isPaged()
+            ? (int) Math.min(Integer.MAX_VALUE, pageable.getOffset() + pageable.getPageSize())
+            : Integer.MAX_VALUE;
+        var binaryResourceFlux = Flux.fromIterable(
+            folderIndex.listFiles(path, AssetOrder.of(order.getProperty()), order.isAscending(), null, limit));
         if (pageable.isPaged()) {
-            binaryResourceFlux = binaryResourceFlux.skip(pageable.getOffset()).limitRequest(pageable.getPageSize());
+            binaryResourceFlux = binaryResourceFlux.skip(pageable.getOffset());
         }
         return binaryResourceFlux;
     }
 
-    private void createBinaryAsset(Path path) {
-        log.info(() -> "Created: " + path);
+    private CursorPage<BinaryFileAsset> listPage(FolderIndex folderIndex, Path path, AssetOrder order, boolean ascending,
+                                                 @Nullable AssetCursor cursor, int size) {
+        final var forward = cursor == null || cursor.isAfter();
+        // Fetch one extra asset to find out whether there is another page in the direction of the listing
+        final var assets = folderIndex.listFiles(path, order, forward == ascending,
+            cursor == null ? null : cursor.getPosition(), size + 1);
+        final var more = assets.size() > size;
+        final var content = new ArrayList<>(assets.subList(0, Math.min(size, assets.size())));
+        if (!forward) Collections.reverse(content);
+        final var first = content.isEmpty() ? null : AssetCursor.before(order, ascending, content.get(0));
+        final var last = content.isEmpty() ? null : AssetCursor.after(order, ascending, content.get(content.size() - 1));
+        final String previous;
+        final String next;
+        if (forward) {
+            previous = cursor == null ? null : (first != null ? first : cursor.reverse()).encode();
+            next = more ? requireNonNull(last).encode() : null;
+        } else {
+            previous = more ? requireNonNull(first).encode() : null;
+            next = (last != null ? last : cursor.reverse()).encode();
+        }
+        return new CursorPage<>(content, previous, next);
     }
 
-    private void updateBinaryAsset(Path path) {
-        log.info(() -> "Modified: " + path);
+    private Mono<Void> createBinaryAssets(Path folder) {
+        log.info("Importing folder: {}", folder);
+        return importBinaryAssets(folder, null)
+            .onErrorResume(ex -> {
+                log.error("Failed to import folder {}", folder, ex);
+                return Mono.empty();
+            })
+            .then();
+    }
+
+    private void updateBinaryAsset(Path path, BasicFileAttributes attributes) {
+        log.info("Updating: {}", path);
+        final var binaryFileAsset = importBinaryAsset(path, attributes, null);
+        if (binaryFileAsset != null) {
+            addMetadataEntry(binaryFileAsset);
+        } else {
+            deleteBinaryAsset(path);
+        }
     }
 
     private void deleteBinaryAsset(Path path) {
-        log.info(() -> "Deleted: " + path);
+        final var rootId = getRootId(path);
+        final var folderIndex = getFolderIndex(rootId);
+        final var contentHashIndex = getContentHashIndex(rootId);
+        final List<BinaryFileAsset> removedAssets;
+        synchronized (folderIndex) {
+            final var removed = folderIndex.remove(path);
+            removedAssets = removed != null ? List.of(removed) : folderIndex.removeFolder(path);
+            removedAssets.forEach(binaryFileAsset -> contentHashIndex.replace(binaryFileAsset, null));
+        }
+        if (removedAssets.isEmpty()) return;
+        log.info("Deleting {} binary resources: {}", removedAssets.size(), path);
+        removedAssets.forEach(this::deleteMetadata);
     }
 
     private void cleanupBinaryAssets() {
-        Flux.interval(Duration.ZERO, refreshInterval).subscribe(iteration -> {
+        subscriptions.add(Flux.interval(Duration.ZERO, refreshInterval).subscribe(iteration -> {
             final var start = System.currentTimeMillis();
-            log.info(() -> format("Cleaning up dangling metadata from '%s'", metaDataRootPath));
-            Flux.fromStream(this::getBinaryResourceMetaDataPaths)
+            log.info(() -> format("Cleaning up dangling metadata from '%s'", metaDataStore));
+            metaDataStore.readAll()
                 .doOnTerminate(() -> log.info(() -> {
                     final var duration = System.currentTimeMillis() - start;
                     return format("Finished cleaning up metadata in %,.3f milliseconds.", duration / 1000f);
                 }))
-                .flatMap(this::readBinaryResourceMetaDataOrEmpty)
                 .filter(this::isResourceMissing)
-                .doOnNext(this::deleteMetadataFile)
+                .doOnNext(this::deleteMetadata)
                 .subscribe(this::removeMetaDataEntry);
-        });
+        }));
     }
 
-    private boolean includeBinaryAsset(Path path) {
-        if (!Files.isRegularFile(path)) return false;
-        if (!Files.isReadable(path)) return false;
+    /**
+     * Imports a binary asset from the attributes read while finding it, returning {@code null} if the file cannot be
+     * read. An asset that is already indexed, and whose file has not changed since, is returned as is, without any
+     * further I/O.
+     *
+     * @param stored the saved metadata of the root folder by asset identifier, from which the metadata of the asset
+     *               is taken, or {@code null} to read the metadata of the asset from the store
+     */
+    @Nullable
+    private BinaryFileAsset importBinaryAsset(Path path, BasicFileAttributes attributes,
+                                              @Nullable Map<UUID, BinaryFileAsset> stored) {
+        final var binaryFileAsset = getBinaryResource(path, attributes, stored);
+        computeIdentifier(binaryFileAsset);
+        if (!computeDigest(binaryFileAsset)) return null;
+        probeMediaType(binaryFileAsset);
+        computeFileSize(binaryFileAsset);
+        saveMetadata(binaryFileAsset);
+        return binaryFileAsset;
+    }
+
+    private boolean includeBinaryAsset(Path path, BasicFileAttributes attributes) {
         final var filename = path.getFileName().toString();
-        final var include = resourceRegex.matcher(filename).matches();
-        if (include) {
-            log.trace(() -> "Adding " + path);
-        } else {
-            log.debug(() -> "Excluding " + path);
+        if (!resourceRegex.matcher(filename).matches()) {
+            exclusionLog.debug("Excluding {}", path);
+            return false;
         }
-        return include;
-    }
-
-    private boolean includeMetaData(Path path) {
-        if (!Files.isRegularFile(path)) return false;
-        if (!Files.isReadable(path)) return false;
-        final var filename = path.getFileName().toString();
-        return filename.endsWith(".json");
+        // Unreadable files are left out once they fail to open, rather than being checked up front
+        if (attributes.isSymbolicLink() ? !Files.isRegularFile(path) : !attributes.isRegularFile()) return false;
+        log.trace("Adding {}", path);
+        return true;
     }
 
-    private void saveMetadataFile(BinaryFileAsset binaryFileAsset) {
+    private void saveMetadata(BinaryFileAsset binaryFileAsset) {
         if (binaryFileAsset.isDirty()) {
             Assert.notNull(binaryFileAsset.getId(), "BinaryResource id field cannot be null");
             Assert.notNull(binaryFileAsset.getRootId(), "BinaryResource rootId must not be null");
 
-            final var rootId = binaryFileAsset.getRootId();
-            final var assetId = binaryFileAsset.getId();
-            final var path = getPathToMetadata(rootId, assetId);
-
             try {
-                Files.createDirectories(path.getParent());
-                objectMapper.writeValue(path.toFile(), binaryFileAsset);
+                metaDataStore.write(binaryFileAsset);
+                binaryFileAsset.setDirty(false);
             } catch (IOException e) {
                 log.warn("Failed to write metadata for binary resource: {}", binaryFileAsset.getPath());
             }
         }
     }
 
-    private void deleteMetadataFile(BinaryFileAsset binaryFileAsset) {
-        Assert.notNull(binaryFileAsset.getId(), "BinaryResource id must not be null");
-        Assert.notNull(binaryFileAsset.getRootId(), "BinaryResource rootId must not be null");
-
-        final var rootId = binaryFileAsset.getRootId();
-        final var assetId = binaryFileAsset.getId();
-        final var path = getPathToMetadata(rootId, assetId);
-
-        log.debug(() -> "Deleting metadata " + path);
+    private void deleteMetadata(BinaryFileAsset binaryFileAsset) {
         try {
-            Files.deleteIfExists(path);
+            metaDataStore.delete(binaryFileAsset);
         } catch (IOException e) {
-            log.error(() -> "Failed to delete " + path, e);
+            log.error(() -> "Failed to delete metadata for " + binaryFileAsset.getPath(), e);
         }
     }
 
+    /**
+     * Indexes an asset by path and by digest. Updates of the two indexes of a root are made while holding the lock of
+     * its folder index, so that concurrent updates of the same path replace their previous assets in the same order
+     * in both indexes.
+     */
     private void addMetadataEntry(BinaryFileAsset binaryFileAsset) {
-        var path = binaryFileAsset.getPath();
-        while (path != null) {
-            final var parent = path.getParent();
-            if (parent != null) {
-                binaryAssetMetaData.computeIfAbsent(parent, value -> new ConcurrentHashMap<>()).put(binaryFileAsset.getPath(), binaryFileAsset);
-                if (fileSystemRootPaths.containsValue(parent)) break;
-            }
-            path = parent;
+        Assert.notNull(binaryFileAsset.getRootId(), "BinaryResource rootId must not be null");
+        final var folderIndex = getFolderIndex(binaryFileAsset.getRootId());
+        final var contentHashIndex = getContentHashIndex(binaryFileAsset.getRootId());
+        synchronized (folderIndex) {
+            contentHashIndex.replace(folderIndex.put(binaryFileAsset), binaryFileAsset);
         }
     }
 
     private void removeMetaDataEntry(BinaryFileAsset binaryFileAsset) {
-        var path = binaryFileAsset.getPath();
-        while (path != null) {
-            final var parent = path.getParent();
-            if (parent != null) {
-                final var assets = binaryAssetMetaData.get(parent);
-                if (assets != null) {
-                    assets.remove(path);
-                }
-                if (parent.equals(metaDataRootPath)) {
-                    break;
-                }
+        final var path = binaryFileAsset.getPath();
+        final var folderIndex = binaryFileAsset.getRootId() == null ? null : folderIndexes.get(binaryFileAsset.getRootId());
+        if (path != null && folderIndex != null && path.startsWith(folderIndex.getRoot())) {
+            final var contentHashIndex = getContentHashIndex(binaryFileAsset.getRootId());
+            synchronized (folderIndex) {
+                contentHashIndex.replace(folderIndex.remove(path), null);
             }
-            path = parent;
         }
     }
 
-    private Stream<Path> getPathsToBinaryAssets(Path root) {
-        try {
-            return Files.walk(root).filter(this::includeBinaryAsset);
-        } catch (IOException e) {
-            return Stream.empty();
+    private FolderIndex getFolderIndex(UUID rootId) {
+        return requireNonNull(folderIndexes.get(rootId), "No file system root having id " + rootId);
+    }
+
+    private ContentHashIndex getContentHashIndex(UUID rootId) {
+        return requireNonNull(contentHashIndexes.get(rootId), "No file system root having id " + rootId);
+    }
+
+    private String normalizeDigest(String digest) {
+        if (digest.length() != digestLength * 2 || !HEX_DIGEST.matcher(digest).matches()) {
+            return digest;
         }
+        final var bytes = new byte[digestLength];
+        for (var i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(digest.substring(i * 2, i * 2 + 2), 16);
+        }
+        return Base64.getEncoder().encodeToString(bytes);
     }
 
-    private Stream<Path> getBinaryResourceMetaDataPaths() {
+    private Stream<FileTreeSupport.FoundFile> findBinaryAssets(Path root) {
         try {
-            return Files.walk(metaDataRootPath).filter(this::includeMetaData);
+            return FileTreeSupport.find(root, this::includeBinaryAsset);
         } catch (IOException e) {
             return Stream.empty();
         }
     }
 
-    @Nullable
-    private BinaryFileAsset readBinaryResourceMetaData(UUID rootId, URI assetUri) {
-        final var path = getPathToMetadata(rootId, BinaryFileAsset.generateId(assetUri));
-        return readBinaryResourceMetaData(path);
+    private Map<UUID, BinaryFileAsset> readStoredMetadata(UUID rootId) {
+        return metaDataStore.readAll(rootId)
+            .filter(binaryFileAsset -> binaryFileAsset.getId() != null)
+            .onErrorResume(ex -> {
+                log.warn(() -> "Failed to read saved metadata of " + rootId, ex);
+                return Mono.empty();
+            })
+            .collect(ConcurrentHashMap<UUID, BinaryFileAsset>::new, (map, asset) -> map.put(asset.getId(), asset))
+            .block();
     }
 
     @Nullable
-    private BinaryFileAsset readBinaryResourceMetaData(Path path) {
-        if (Files.exists(path)) {
-            try {
-                return objectMapper.readValue(path.toFile(), BinaryFileAsset.class);
-            } catch (IOException e) {
-                log.warn(e.getMessage(), e);
-            }
+    private BinaryFileAsset readBinaryResourceMetaData(UUID rootId, URI assetUri) {
+        try {
+            return metaDataStore.read(rootId, BinaryFileAsset.generateId(assetUri));
+        } catch (IOException e) {
+            log.warn(e.getMessage(), e);
+            return null;
         }
-        return null;
-    }
-
-    private Mono<BinaryFileAsset> readBinaryResourceMetaDataOrEmpty(Path path) {
-        final var metaData = readBinaryResourceMetaData(path);
-        return metaData == null ? Mono.empty() : Mono.just(metaData);
     }
 
     private boolean isResourceMissing(BinaryFileAsset binaryFileAsset) {
         final var path = binaryFileAsset.getPath();
         final var missing = path == null || !Files.exists(path);
-        if (missing) log.debug(() -> "File is missing: " + path);
+        if (missing) log.debug("File is missing: {}", path);
         return missing;
     }
 
-    private BinaryFileAsset getBinaryResource(Path path) {
+    private BinaryFileAsset getBinaryResource(Path path, BasicFileAttributes attributes,
+                                              @Nullable Map<UUID, BinaryFileAsset> stored) {
         final var rootId = getRootId(path);
+        final var fingerprint = readFingerprint(path, attributes);
+        final var indexed = getFolderIndex(rootId).get(path);
+        if (indexed != null && fingerprint != null && indexed.isUnchanged(fingerprint) && isComplete(indexed)) {
+            return indexed;
+        }
         final var assetUri = toResourceURI(path);
-        var asset = readBinaryResourceMetaData(rootId, assetUri);
+        var asset = stored != null
+            ? stored.remove(BinaryFileAsset.generateId(assetUri))
+            : readBinaryResourceMetaData(rootId, assetUri);
+        if (asset != null && fingerprint != null && asset.isUnchangedInMillis(fingerprint)) {
+            log.debug("Migrating the last modified time of a binary resource to nanoseconds: {}", path);
+            asset.applyFingerprint(fingerprint);
+            asset.setDirty(true);
+        }
+        if (asset != null && fingerprint != null && !asset.isUnchanged(fingerprint)) {
+            log.debug("Binary resource has changed since its metadata was saved: {}", path);
+            asset.setSha256(null);
+            asset.setMediaType(null);
+            asset.setSize(null);
+            asset.applyFingerprint(fingerprint);
+            asset.setDirty(true);
+        }
+        if (asset != null && asset.getSha256() != null && !hashAlgorithm.equals(asset.getDigestAlgorithm())) {
+            log.debug("Binary resource digest was computed with a different algorithm: {}", path);
+            asset.setSha256(null);
+            asset.setDirty(true);
+        }
         if (asset == null) {
             asset = new BinaryFileAsset();
             asset.setId(BinaryFileAsset.generateId(assetUri));
             asset.setRootId(rootId);
             asset.setUri(assetUri);
             asset.setPath(path);
+            if (fingerprint != null) asset.applyFingerprint(fingerprint);
             asset.setDirty(true);
         }
         return asset;
     }
 
-    private FolderAsset getFolderAsset(Path path) {
+    /**
+     * Returns whether an indexed asset needs nothing else to be imported, in which case it may be returned as is,
+     * since indexed assets must not be modified.
+     */
+    private boolean isComplete(BinaryFileAsset binaryFileAsset) {
+        return binaryFileAsset.getId() != null && binaryFileAsset.getSha256() != null
+            && hashAlgorithm.equals(binaryFileAsset.getDigestAlgorithm())
+            && binaryFileAsset.getMediaType() != null && binaryFileAsset.getSize() != null;
+    }
+
+    /**
+     * Returns the fingerprint of a file from the attributes read while finding it, which describe the link itself
+     * when the file is a symbolic link, in which case the attributes of its target are read.
+     */
+    @Nullable
+    private FileFingerprint readFingerprint(Path path, BasicFileAttributes attributes) {
+        if (!attributes.isSymbolicLink()) return FileFingerprint.of(attributes);
+        try {
+            return FileFingerprint.of(path);
+        } catch (IOException e) {
+            log.warn(() -> "Failed to read file attributes: " + e.getMessage(), e);
+            return null;
+        }
+    }
+
+    private FolderAsset getFolderAsset(Path path, long fileCount) {
         final var rootId = getRootId(path);
         final var assetUri = toResourceURI(path);
         var asset = new FolderAsset();
@@ -458,6 +797,7 @@ public class BinaryAssetRepository {
         asset.setRootId(rootId);
         asset.setUri(assetUri);
         asset.setPath(path);
+        asset.setFileCount(fileCount);
         asset.setDirty(true);
         return asset;
     }
@@ -480,27 +820,30 @@ public class BinaryAssetRepository {
         }
     }
 
-    private void computeDigest(BinaryFileAsset binaryFileAsset) {
+    /**
+     * Computes the digest of an asset that has none, returning {@code false} if its file cannot be opened.
+     */
+    private boolean computeDigest(BinaryFileAsset binaryFileAsset) {
         if (binaryFileAsset.getSha256() == null && binaryFileAsset.getPath() != null) {
             try {
-                log.info("Computing digest for {}", binaryFileAsset.getPath());
-                final var digest = (MessageDigest) this.sha256Digest.clone();
-                try (final var in = Files.newInputStream(binaryFileAsset.getPath())) {
-                    final var buffer = new byte[4096];
-                    var bytesRead = 0;
-                    do {
-                        bytesRead = in.read(buffer, 0, buffer.length);
-                        if (bytesRead > 0) {
-                            digest.update(buffer);
-                        }
-                    } while (bytesRead != -1);
-                }
-                binaryFileAsset.setSha256(Base64.getEncoder().encodeToString(digest.digest()));
+                digestLog.info("Computing digest for {}", binaryFileAsset.getPath());
+                // Imports are background work, which reads within the digest bandwidth
+                final var digest = digestService
+                    .submit(hashAlgorithm, binaryFileAsset.getPath(), DigestService.Priority.BACKGROUND)
+                    .join();
+                binaryFileAsset.setSha256(MessageDigestSupport.base64Encode(digest));
+                binaryFileAsset.setDigestAlgorithm(hashAlgorithm);
                 binaryFileAsset.setDirty(true);
-            } catch (CloneNotSupportedException | IOException e) {
-                log.warn(() -> "Failed to compute digest for " + binaryFileAsset.getPath(), e);
+            } catch (CompletionException | CancellationException e) {
+                final var cause = e.getCause() != null ? e.getCause() : e;
+                if (cause.getCause() instanceof AccessDeniedException || cause.getCause() instanceof NoSuchFileException) {
+                    log.debug("Excluding unreadable file {}", binaryFileAsset.getPath());
+                    return false;
+                }
+                log.warn("Failed to compute digest for {}", binaryFileAsset.getPath(), cause);
             }
         }
+        return true;
     }
 
     private void probeMediaType(BinaryFileAsset binaryFileAsset) {
@@ -537,20 +880,9 @@ public class BinaryAssetRepository {
         }
     }
 
-    private Path getPathToMetadata(UUID rootId, URI assetUri) {
-        return getPathToMetadata(rootId, BinaryFileAsset.generateId(assetUri));
-    }
-
-    private Path getPathToMetadata(UUID rootId, UUID assetId) {
-        final var id = assetId.toString();
-        final var id1 = id.substring(0, 1);
-        final var id2 = id.substring(0, 4);
-        return metaDataRootPath.resolve(Path.of(rootId.toString(), id1, id2, id + ".json"));
-    }
-
     private UUID getRootId(Path path) {
         return fileSystemRootPaths.entrySet().stream()
-            .filter(entry -> entry.getValue().startsWith(path))
+            .filter(entry -> path.startsWith(entry.getValue()))
             .map(Map.Entry::getKey)
             .findFirst()
             .orElseThrow(() -> new IllegalStateException("The path has not been imported: " + path));
@@ -561,4 +893,14 @@ public class BinaryAssetRepository {
             .filter(path::startsWith).findFirst()
             .orElseThrow(() -> new IllegalStateException("The path has not been imported: " + path));
     }
+
+    /**
+     * The state of the changes to a path, which is only accessed while computing its entry in the pending changes.
+     */
+    private static final class FileChange {
+
+        private final Disposable.Swap timer = Disposables.swap();
+        private boolean running;
+        private boolean changedWhileRunning;
+    }
 }
@@ -4,10 +4,12 @@ import java.net.URI;
 import java.nio.file.Path;
 import java.time.Duration;
 import java.util.regex.Pattern;
+import javax.validation.constraints.Min;
 import javax.validation.constraints.NotBlank;
 import javax.validation.constraints.NotNull;
 
 import org.springframework.lang.Nullable;
+import org.springframework.util.unit.DataSize;
 
 import static java.util.Objects.requireNonNull;
 
@@ -32,15 +34,49 @@ public class BinaryAssetRepositoryProperties {
     private Pattern resourceRegex;
 
     /**
-     * The algorithm for computing hashes of binary resources.
+     * The algorithm for computing hashes of binary resources. Tree algorithms such as {@code SHA-256-TREE} hash the
+     * chunks of large files in parallel (see {@link com.nickermancy.io.TreeDigest}).
      */
     private String hashAlgorithm = "SHA-256";
 
+    /**
+     * The maximum number of bytes per second read for computing the hashes of binary resources, which leaves the
+     * rest of the bandwidth of the disk to serving them. Not limited if not set.
+     */
+    @Nullable
+    private DataSize digestBandwidth;
+
     /**
      * The interval to scan for refreshing resource metadata.
      */
     private Duration refreshInterval = Duration.ofHours(24);
 
+    /**
+     * The maximum number of binary resources to be imported concurrently. A value of 1 imports sequentially.
+     */
+    private int importParallelism = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * The format in which binary resource metadata is stored under the metadata root.
+     */
+    private MetaDataFormat metaDataFormat = MetaDataFormat.JSON_FILES;
+
+    /**
+     * The size after which a new segment file is started, when metadata is stored as a segment log.
+     */
+    private DataSize metaDataSegmentSize = DataSize.ofMegabytes(64);
+
+    /**
+     * The interval to check whether segment files should be compacted, when metadata is stored as a segment log.
+     */
+    private Duration metaDataCompactionInterval = Duration.ofMinutes(10);
+
+    /**
+     * The time that a binary resource must go without changes before its metadata is updated. Changes to the same
+     * resource within this window are coalesced into a single update.
+     */
+    private Duration changeCoalescingWindow = Duration.ofSeconds(1);
+
     @NotNull
     @javax.validation.constraints.Pattern(regexp = "(/[^/]+)+")
     public URI getResourceRoot() {
@@ -78,6 +114,15 @@ public class BinaryAssetRepositoryProperties {
         this.hashAlgorithm = hashAlgorithm;
     }
 
+    @Nullable
+    public DataSize getDigestBandwidth() {
+        return digestBandwidth;
+    }
+
+    public void setDigestBandwidth(@Nullable DataSize digestBandwidth) {
+        this.digestBandwidth = digestBandwidth;
+    }
+
     public Duration getRefreshInterval() {
         return refreshInterval;
     }
@@ -85,4 +130,58 @@ public class BinaryAssetRepositoryProperties {
     public void setRefreshInterval(Duration refreshInterval) {
         this.refreshInterval = refreshInterval;
     }
+
+    @Min(1)
+    public int getImportParallelism() {
+        return importParallelism;
+    }
+
+    public void setImportParallelism(int importParallelism) {
+        this.importParallelism = importParallelism;
+    }
+
+    public MetaDataFormat getMetaDataFormat() {
+        return metaDataFormat;
+    }
+
+    public void setMetaDataFormat(MetaDataFormat metaDataFormat) {
+        this.metaDataFormat = metaDataFormat;
+    }
+
+    public DataSize getMetaDataSegmentSize() {
+        return metaDataSegmentSize;
+    }
+
+    public void setMetaDataSegmentSize(DataSize metaDataSegmentSize) {
+        this.metaDataSegmentSize = metaDataSegmentSize;
+    }
+
+    public Duration getMetaDataCompactionInterval() {
+        return metaDataCompactionInterval;
+    }
+
+    public void setMetaDataCompactionInterval(Duration metaDataCompactionInterval) {
+        this.metaDataCompactionInterval = metaDataCompactionInterval;
+    }
+
+    public Duration getChangeCoalescingWindow() {
+        return changeCoalescingWindow;
+    }
+
+    public void setChangeCoalescingWindow(Duration changeCoalescingWindow) {
+        this.changeCoalescingWindow = changeCoalescingWindow;
+    }
+
+    public enum MetaDataFormat {
+
+        /**
+         * Each binary resource has its own JSON file (see {@link JsonFileMetaDataStore}).
+         */
+        JSON_FILES,
+
+        /**
+         * All binary resources are appended to a log of segment files (see {@link LogStructuredMetaDataStore}).
+         */
+        SEGMENT_LOG
+    }
 }
@@ -1,6 +1,10 @@
 package com.nickermancy.spring.repositories;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.nickermancy.io.FileFingerprint;
+
+import java.util.Objects;
 
 import org.springframework.lang.Nullable;
 
@@ -12,9 +16,18 @@ public class BinaryFileAsset extends FileAsset {
     @Nullable
     private String sha256;
 
+    @Nullable
+    private String digestAlgorithm;
+
     @Nullable
     private String mediaType;
 
+    @Nullable
+    private Long lastModified;
+
+    @Nullable
+    private String fileKey;
+
     @Nullable
     @JsonProperty("size")
     public Long getSize() {
@@ -35,6 +48,20 @@ public class BinaryFileAsset extends FileAsset {
         this.sha256 = sha256;
     }
 
+    /**
+     * The algorithm that was used to compute the {@linkplain #getSha256() digest}. Digests saved without an algorithm
+     * predate a fix for incorrect digests, and are recomputed on import.
+     */
+    @Nullable
+    @JsonProperty("digest-algorithm")
+    public String getDigestAlgorithm() {
+        return digestAlgorithm;
+    }
+
+    public void setDigestAlgorithm(@Nullable String digestAlgorithm) {
+        this.digestAlgorithm = digestAlgorithm;
+    }
+
     @Nullable
     @JsonProperty("media-type")
     public String getMediaType() {
@@ -44,4 +71,56 @@ public class BinaryFileAsset extends FileAsset {
     public void setMediaType(@Nullable String mediaType) {
         this.mediaType = mediaType;
     }
+
+    /**
+     * The last modified time of the binary file in nanoseconds since the epoch. Metadata saved before times were
+     * recorded in nanoseconds holds milliseconds, and is migrated on import.
+     */
+    @Nullable
+    @JsonProperty("last-modified")
+    public Long getLastModified() {
+        return lastModified;
+    }
+
+    public void setLastModified(@Nullable Long lastModified) {
+        this.lastModified = lastModified;
+    }
+
+    @Nullable
+    @JsonProperty("file-key")
+    public String getFileKey() {
+        return fileKey;
+    }
+
+    public void setFileKey(@Nullable String fileKey) {
+        this.fileKey = fileKey;
+    }
+
+    /**
+     * Returns {@code true} if the size, last modified time and file key recorded for this asset match the given
+     * fingerprint, meaning that the binary file is assumed not to have changed since its metadata was computed.
+     */
+    @JsonIgnore
+    boolean isUnchanged(FileFingerprint fingerprint) {
+        return size != null && size == fingerprint.getSize()
+            && lastModified != null && lastModified == fingerprint.getLastModified()
+            && Objects.equals(fileKey, fingerprint.getFileKey());
+    }
+
+    /**
+     * Returns {@code true} if this asset matches the given fingerprint except that its last modified time was saved in
+     * milliseconds, as it was before times were recorded in nanoseconds.
+     */
+    @JsonIgnore
+    boolean isUnchangedInMillis(FileFingerprint fingerprint) {
+        return size != null && size == fingerprint.getSize()
+            && lastModified != null && lastModified == Math.floorDiv(fingerprint.getLastModified(), 1_000_000L)
+            && Objects.equals(fileKey, fingerprint.getFileKey());
+    }
+
+    void applyFingerprint(FileFingerprint fingerprint) {
+        this.size = fingerprint.getSize();
+        this.lastModified = fingerprint.getLastModified();
+        this.fileKey = fingerprint.getFileKey();
+    }
 }
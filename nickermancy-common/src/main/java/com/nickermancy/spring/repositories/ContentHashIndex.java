@@ -0,0 +1,118 @@
+package com.nickermancy.spring.repositories;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.springframework.lang.Nullable;
+
+/**
+ * Indexes the binary assets imported from a single root folder by the digest of their contents.
+ * <p>
+ * Assets with equal digests form a duplicate group. The index keeps track of the groups that hold more than one
+ * asset, along with the number of bytes that could be reclaimed by keeping a single copy of each, so that none of
+ * its queries have to scan the index.
+ */
+class ContentHashIndex {
+
+    private final Map<String, Map<Path, BinaryFileAsset>> assetsByDigest = new HashMap<>();
+    private final Set<String> duplicateDigests = new LinkedHashSet<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private long reclaimableBytes;
+
+    /**
+     * Replaces an asset in the index. Either asset may be {@code null}, and assets without a digest or path are
+     * ignored.
+     *
+     * @param previous        the asset being replaced, or {@code null} if there was none
+     * @param binaryFileAsset the replacement asset, or {@code null} if the asset was removed
+     */
+    void replace(@Nullable BinaryFileAsset previous, @Nullable BinaryFileAsset binaryFileAsset) {
+        lock.writeLock().lock();
+        try {
+            if (previous != null) remove(previous);
+            if (binaryFileAsset != null) add(binaryFileAsset);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the assets whose contents have the given digest.
+     */
+    List<BinaryFileAsset> get(String digest) {
+        lock.readLock().lock();
+        try {
+            final var assets = assetsByDigest.get(digest);
+            return assets == null ? List.of() : List.copyOf(assets.values());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns every group of two or more assets whose contents have the same digest, with each group in path order.
+     */
+    List<List<BinaryFileAsset>> getDuplicates() {
+        lock.readLock().lock();
+        try {
+            final var groups = new ArrayList<List<BinaryFileAsset>>(duplicateDigests.size());
+            for (final var digest : duplicateDigests) {
+                groups.add(List.copyOf(assetsByDigest.get(digest).values()));
+            }
+            return groups;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the number of bytes that would be reclaimed by keeping a single copy of each duplicate group.
+     */
+    long getReclaimableBytes() {
+        lock.readLock().lock();
+        try {
+            return reclaimableBytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    //-- Private Implementation --------------------------------------------------------------------------------------//
+
+    private void add(BinaryFileAsset binaryFileAsset) {
+        final var digest = binaryFileAsset.getSha256();
+        final var path = binaryFileAsset.getPath();
+        if (digest == null || path == null) return;
+        final var assets = assetsByDigest.computeIfAbsent(digest, key -> new TreeMap<>());
+        if (assets.put(path, binaryFileAsset) == null && assets.size() > 1) {
+            reclaimableBytes += sizeOf(binaryFileAsset);
+            duplicateDigests.add(digest);
+        }
+    }
+
+    private void remove(BinaryFileAsset binaryFileAsset) {
+        final var digest = binaryFileAsset.getSha256();
+        final var path = binaryFileAsset.getPath();
+        if (digest == null || path == null) return;
+        final var assets = assetsByDigest.get(digest);
+        if (assets == null || assets.remove(path) == null) return;
+        if (assets.isEmpty()) {
+            assetsByDigest.remove(digest);
+        } else {
+            reclaimableBytes -= sizeOf(binaryFileAsset);
+            if (assets.size() == 1) duplicateDigests.remove(digest);
+        }
+    }
+
+    private static long sizeOf(BinaryFileAsset binaryFileAsset) {
+        return binaryFileAsset.getSize() == null ? 0 : binaryFileAsset.getSize();
+    }
+}
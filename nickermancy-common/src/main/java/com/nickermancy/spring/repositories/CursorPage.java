@@ -0,0 +1,53 @@
+package com.nickermancy.spring.repositories;
+
+import java.util.List;
+
+import org.springframework.lang.Nullable;
+
+/**
+ * A page of results listed from a cursor, along with the cursors of the adjacent pages.
+ *
+ * @param <T> the type of the results
+ */
+public class CursorPage<T> {
+
+    private final List<T> content;
+    @Nullable
+    private final String previousCursor;
+    @Nullable
+    private final String nextCursor;
+
+    public CursorPage(List<T> content, @Nullable String previousCursor, @Nullable String nextCursor) {
+        this.content = List.copyOf(content);
+        this.previousCursor = previousCursor;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<T> getContent() {
+        return content;
+    }
+
+    /**
+     * Returns the cursor of the previous page, or {@code null} if this is the first page.
+     */
+    @Nullable
+    public String getPreviousCursor() {
+        return previousCursor;
+    }
+
+    /**
+     * Returns the cursor of the next page, or {@code null} if this is the last page.
+     */
+    @Nullable
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public boolean hasPrevious() {
+        return previousCursor != null;
+    }
+
+    public boolean hasNext() {
+        return nextCursor != null;
+    }
+}
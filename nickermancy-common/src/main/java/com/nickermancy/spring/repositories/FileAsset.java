@@ -80,7 +80,6 @@ public abstract class FileAsset {
         return dirty;
     }
 
-    @SuppressWarnings("SameParameterValue")
     void setDirty(boolean dirty) {
         this.dirty = dirty;
     }
@@ -0,0 +1,380 @@
+package com.nickermancy.spring.repositories;
+
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.springframework.lang.Nullable;
+import org.springframework.util.Assert;
+
+/**
+ * Indexes the binary assets imported from a single root folder in a tree of path components.
+ * <p>
+ * Each node of the tree is a folder that contains binary assets, either directly or in one of its subfolders, and
+ * holds its direct subfolders and files along with the number of folders and files in its subtree. Each asset is held
+ * by exactly one node, so looking up or counting the assets in a folder costs time proportional to the depth of the
+ * folder, and listing them costs time proportional to the number of results.
+ * <p>
+ * Each node also keeps its own files sorted in every {@link AssetOrder}, so each asset is held by exactly one sorted
+ * set per order and the index takes memory proportional to the number of assets, however deep the tree. A sorted
+ * listing of a folder merges the sorted files of the folder and its subfolders, starting from a given position, so a
+ * page of results costs time proportional to the number of folders under the folder plus the size of the page, each
+ * times a logarithm, regardless of how far into the listing it starts. Assets must not be modified while they are in the index, since that would corrupt the sorted orders; modified
+ * assets are indexed by putting a new copy.
+ */
+class FolderIndex {
+
+    private final Path root;
+    private final Node rootNode = new Node(null, "");
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    FolderIndex(Path root) {
+        this.root = root;
+    }
+
+    Path getRoot() {
+        return root;
+    }
+
+    /**
+     * Adds a binary asset to the index, replacing any asset with the same path.
+     *
+     * @return the replaced asset, or {@code null} if there was none
+     */
+    @Nullable
+    BinaryFileAsset put(BinaryFileAsset binaryFileAsset) {
+        final var path = binaryFileAsset.getPath();
+        Assert.notNull(path, "BinaryResource path must not be null");
+        final var names = getNames(path);
+        Assert.isTrue(!names.isEmpty(), "BinaryResource path must not be the root folder");
+        lock.writeLock().lock();
+        try {
+            var node = rootNode;
+            final var created = new ArrayList<Node>();
+            for (final var name : names.subList(0, names.size() - 1)) {
+                final var parent = node;
+                node = parent.folders.computeIfAbsent(name, key -> {
+                    final var child = new Node(parent, key);
+                    created.add(child);
+                    return child;
+                });
+            }
+            final var previous = node.files.put(names.get(names.size() - 1), binaryFileAsset);
+            if (previous != null) node.removeSorted(previous);
+            node.addSorted(binaryFileAsset);
+            // The created folders form a chain ending at the file's folder, so each ancestor gains those below it
+            var depth = 0;
+            for (var ancestor = node; ancestor != null; ancestor = ancestor.parent, depth++) {
+                if (previous == null) ancestor.fileCount++;
+                ancestor.folderCount += Math.min(depth, created.size());
+            }
+            return previous;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes the binary asset with the given path from the index, along with any folders left without assets.
+     *
+     * @return the removed asset, or {@code null} if there was none
+     */
+    @Nullable
+    BinaryFileAsset remove(Path path) {
+        final var names = getNames(path);
+        if (names.isEmpty()) return null;
+        lock.writeLock().lock();
+        try {
+            final var node = findNode(names.subList(0, names.size() - 1));
+            if (node == null) return null;
+            final var removed = node.files.remove(names.get(names.size() - 1));
+            if (removed != null) {
+                node.removeSorted(removed);
+                for (var ancestor = node; ancestor != null; ancestor = ancestor.parent) {
+                    ancestor.fileCount--;
+                }
+                prune(node);
+            }
+            return removed;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes every binary asset under the given folder from the index.
+     *
+     * @return the removed assets
+     */
+    List<BinaryFileAsset> removeFolder(Path folder) {
+        lock.writeLock().lock();
+        try {
+            final var node = findNode(getNames(folder));
+            if (node == null) return List.of();
+            final var removed = collectFiles(node);
+            if (node == rootNode) {
+                rootNode.folders.clear();
+                rootNode.files.clear();
+                rootNode.sorted.values().forEach(Set::clear);
+                rootNode.fileCount = 0;
+                rootNode.folderCount = 0;
+            } else {
+                node.parent.folders.remove(node.name);
+                for (var ancestor = node.parent; ancestor != null; ancestor = ancestor.parent) {
+                    ancestor.fileCount -= node.fileCount;
+                    ancestor.folderCount -= node.folderCount + 1;
+                }
+                prune(node.parent);
+            }
+            return removed;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Nullable
+    BinaryFileAsset get(Path path) {
+        final var names = getNames(path);
+        if (names.isEmpty()) return null;
+        lock.readLock().lock();
+        try {
+            final var node = findNode(names.subList(0, names.size() - 1));
+            return node == null ? null : node.files.get(names.get(names.size() - 1));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns {@code true} if the given folder contains binary assets, either directly or in its subfolders.
+     */
+    boolean containsFolder(Path folder) {
+        lock.readLock().lock();
+        try {
+            final var node = findNode(getNames(folder));
+            return node != null && node.fileCount > 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the number of binary assets under the given folder, including those in its subfolders.
+     */
+    long countFiles(Path folder) {
+        lock.readLock().lock();
+        try {
+            final var node = findNode(getNames(folder));
+            return node == null ? 0 : node.fileCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the number of folders containing binary assets under the given folder, including the folder itself.
+     */
+    long countFolders(Path folder) {
+        lock.readLock().lock();
+        try {
+            final var node = findNode(getNames(folder));
+            return node == null || node.fileCount == 0 ? 0 : node.folderCount + 1;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the binary assets under the given folder, including those in its subfolders, in path order.
+     */
+    List<BinaryFileAsset> listFiles(Path folder) {
+        return listFiles(folder, AssetOrder.PATH, true, null, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns the binary assets under the given folder, including those in its subfolders, in the given order.
+     *
+     * @param folder    the folder whose assets are to be listed
+     * @param order     the order in which the assets are to be listed
+     * @param ascending {@code true} to list the assets in ascending order, or {@code false} for descending order
+     * @param after     if not {@code null}, only the assets that follow this position in the listing are returned;
+     *                  the position need not be in the index
+     * @param limit     the maximum number of assets to be returned
+     */
+    List<BinaryFileAsset> listFiles(Path folder, AssetOrder order, boolean ascending,
+                                    @Nullable BinaryFileAsset after, int limit) {
+        lock.readLock().lock();
+        try {
+            final var node = findNode(getNames(folder));
+            if (node == null || limit <= 0) return List.of();
+            final var comparator = ascending ? order.comparator() : order.comparator().reversed();
+            final var heads = new PriorityQueue<Head>(Math.max(1, node.folderCount + 1), (a, b) -> comparator.compare(a.asset, b.asset));
+            final var stack = new ArrayDeque<Node>();
+            stack.push(node);
+            while (!stack.isEmpty()) {
+                final var next = stack.pop();
+                NavigableSet<BinaryFileAsset> files = next.sorted.get(order);
+                if (!ascending) files = files.descendingSet();
+                if (after != null) files = files.tailSet(after, false);
+                final var iterator = files.iterator();
+                if (iterator.hasNext()) heads.add(new Head(iterator));
+                next.folders.values().forEach(stack::push);
+            }
+            final var results = new ArrayList<BinaryFileAsset>((int) Math.min(limit, node.fileCount));
+            while (results.size() < limit && !heads.isEmpty()) {
+                final var head = heads.poll();
+                results.add(head.asset);
+                if (head.advance()) heads.add(head);
+            }
+            return results;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the folders containing binary assets under the given folder, including the folder itself, in path
+     * order.
+     */
+    List<Path> listFolders(Path folder) {
+        lock.readLock().lock();
+        try {
+            final var node = findNode(getNames(folder));
+            if (node == null || node.fileCount == 0) return List.of();
+            final var folders = new ArrayList<Path>(node.folderCount + 1);
+            collectFolders(node, folder, folders);
+            return folders;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the number of entries in the sorted sets of an order, which is the number of assets in the index.
+     */
+    long countSorted(AssetOrder order) {
+        lock.readLock().lock();
+        try {
+            var count = 0L;
+            final var stack = new ArrayDeque<Node>();
+            stack.push(rootNode);
+            while (!stack.isEmpty()) {
+                final var next = stack.pop();
+                count += next.sorted.get(order).size();
+                next.folders.values().forEach(stack::push);
+            }
+            return count;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    //-- Private Implementation --------------------------------------------------------------------------------------//
+
+    private List<String> getNames(Path path) {
+        Assert.isTrue(path.startsWith(root), () -> "The path is not under " + root + ": " + path);
+        final var relativePath = root.relativize(path);
+        final var names = new ArrayList<String>(relativePath.getNameCount());
+        for (final var name : relativePath) {
+            if (!name.toString().isEmpty()) names.add(name.toString());
+        }
+        return names;
+    }
+
+    @Nullable
+    private Node findNode(List<String> names) {
+        var node = rootNode;
+        for (final var name : names) {
+            node = node.folders.get(name);
+            if (node == null) return null;
+        }
+        return node;
+    }
+
+    private void prune(Node node) {
+        while (node != rootNode && node.fileCount == 0) {
+            final var parent = node.parent;
+            parent.folders.remove(node.name);
+            for (var ancestor = parent; ancestor != null; ancestor = ancestor.parent) {
+                ancestor.folderCount--;
+            }
+            node = parent;
+        }
+    }
+
+    private static List<BinaryFileAsset> collectFiles(Node node) {
+        final var files = new ArrayList<BinaryFileAsset>((int) Math.min(node.fileCount, Integer.MAX_VALUE));
+        final var stack = new ArrayDeque<Node>();
+        stack.push(node);
+        while (!stack.isEmpty()) {
+            final var next = stack.pop();
+            files.addAll(next.files.values());
+            next.folders.values().forEach(stack::push);
+        }
+        return files;
+    }
+
+    private static void collectFolders(Node node, Path path, List<Path> folders) {
+        folders.add(path);
+        for (final var child : node.folders.values()) {
+            collectFolders(child, path.resolve(child.name), folders);
+        }
+    }
+
+    private static final class Node {
+
+        @Nullable
+        private final Node parent;
+        private final String name;
+        private final TreeMap<String, Node> folders = new TreeMap<>();
+        private final Map<String, BinaryFileAsset> files = new HashMap<>();
+        private final Map<AssetOrder, NavigableSet<BinaryFileAsset>> sorted = new EnumMap<>(AssetOrder.class);
+        private long fileCount;
+        private int folderCount;
+
+        private Node(@Nullable Node parent, String name) {
+            this.parent = parent;
+            this.name = name;
+            for (final var order : AssetOrder.values()) {
+                sorted.put(order, new TreeSet<>(order.comparator()));
+            }
+        }
+
+        private void addSorted(BinaryFileAsset binaryFileAsset) {
+            sorted.values().forEach(files -> files.add(binaryFileAsset));
+        }
+
+        private void removeSorted(BinaryFileAsset binaryFileAsset) {
+            sorted.values().forEach(files -> files.remove(binaryFileAsset));
+        }
+    }
+
+    private static final class Head {
+
+        private final Iterator<BinaryFileAsset> iterator;
+        private BinaryFileAsset asset;
+
+        private Head(Iterator<BinaryFileAsset> iterator) {
+            this.iterator = iterator;
+            this.asset = iterator.next();
+        }
+
+        private boolean advance() {
+            if (!iterator.hasNext()) return false;
+            asset = iterator.next();
+            return true;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.nickermancy.spring.repositories;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nickermancy.logging.Logger;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import org.springframework.lang.Nullable;
+import org.springframework.util.Assert;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * A {@link BinaryAssetMetaDataStore} that keeps the metadata of each binary asset in its own JSON file, under
+ * {@code <metaDataRoot>/<rootId>/x/xxxx/<assetId>.json}.
+ */
+public class JsonFileMetaDataStore implements BinaryAssetMetaDataStore {
+
+    private static final Logger log = Logger.getLogger();
+
+    private final Path metaDataRootPath;
+    private final ObjectMapper objectMapper;
+
+    public JsonFileMetaDataStore(Path metaDataRootPath, ObjectMapper objectMapper) {
+        this.metaDataRootPath = metaDataRootPath;
+        this.objectMapper = objectMapper;
+    }
+
+    @Nullable
+    @Override
+    public BinaryFileAsset read(UUID rootId, UUID assetId) throws IOException {
+        return read(getPathToMetadata(rootId, assetId));
+    }
+
+    @Override
+    public Flux<BinaryFileAsset> readAll() {
+        return Flux.fromStream(() -> getMetaDataPaths(metaDataRootPath)).flatMap(this::readOrEmpty);
+    }
+
+    @Override
+    public Flux<BinaryFileAsset> readAll(UUID rootId) {
+        return Flux.fromStream(() -> getMetaDataPaths(metaDataRootPath.resolve(rootId.toString())))
+            .flatMap(this::readOrEmpty);
+    }
+
+    @Override
+    public void write(BinaryFileAsset binaryFileAsset) throws IOException {
+        final var path = getPathToMetadata(binaryFileAsset);
+        Files.createDirectories(path.getParent());
+        objectMapper.writeValue(path.toFile(), binaryFileAsset);
+    }
+
+    @Override
+    public void delete(BinaryFileAsset binaryFileAsset) throws IOException {
+        final var path = getPathToMetadata(binaryFileAsset);
+        log.debug(() -> "Deleting metadata " + path);
+        Files.deleteIfExists(path);
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public String toString() {
+        return metaDataRootPath.toString();
+    }
+
+    //-- Private Implementation --------------------------------------------------------------------------------------//
+
+    @Nullable
+    private BinaryFileAsset read(Path path) throws IOException {
+        return Files.exists(path) ? objectMapper.readValue(path.toFile(), BinaryFileAsset.class) : null;
+    }
+
+    private Mono<BinaryFileAsset> readOrEmpty(Path path) {
+        try {
+            return Mono.justOrEmpty(read(path));
+        } catch (IOException e) {
+            log.warn(e.getMessage(), e);
+            return Mono.empty();
+        }
+    }
+
+    private Stream<Path> getMetaDataPaths(Path directory) {
+        try {
+            return Files.walk(directory).filter(this::includeMetaData);
+        } catch (IOException e) {
+            return Stream.empty();
+        }
+    }
+
+    private boolean includeMetaData(Path path) {
+        if (!Files.isRegularFile(path)) return false;
+        if (!Files.isReadable(path)) return false;
+        final var filename = path.getFileName().toString();
+        return filename.endsWith(".json");
+    }
+
+    private Path getPathToMetadata(BinaryFileAsset binaryFileAsset) {
+        Assert.notNull(binaryFileAsset.getId(), "BinaryResource id must not be null");
+        Assert.notNull(binaryFileAsset.getRootId(), "BinaryResource rootId must not be null");
+        return getPathToMetadata(binaryFileAsset.getRootId(), binaryFileAsset.getId());
+    }
+
+    private Path getPathToMetadata(UUID rootId, UUID assetId) {
+        final var id = assetId.toString();
+        final var id1 = id.substring(0, 1);
+        final var id2 = id.substring(0, 4);
+        return metaDataRootPath.resolve(Path.of(rootId.toString(), id1, id2, id + ".json"));
+    }
+}
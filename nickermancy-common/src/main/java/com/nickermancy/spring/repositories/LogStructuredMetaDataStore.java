@@ -0,0 +1,666 @@
+package com.nickermancy.spring.repositories;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nickermancy.logging.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+
+import org.springframework.lang.Nullable;
+import org.springframework.util.Assert;
+
+import reactor.core.publisher.Flux;
+
+import static java.lang.String.format;
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * A {@link BinaryAssetMetaDataStore} that appends the metadata of binary assets to a log of segment files, instead of
+ * keeping one file per asset.
+ * <p>
+ * Each record in a segment holds a checksum, the identifiers of the asset and its JSON metadata, or a tombstone when
+ * the asset is deleted. An in-memory index maps each asset to the location of its latest record. Writes are collected
+ * into batches that are appended to the active segment at least once per second, and a new segment is started when
+ * the active one reaches the configured size. When at least half of the sealed segments is made up of stale records,
+ * they are compacted in the background into a single segment holding only the live records.
+ * <p>
+ * On startup, the segments are read sequentially to rebuild the index. A torn or corrupt record, such as one left
+ * behind by a crash part way through a write, truncates its segment at the last good record. An interrupted
+ * compaction is either discarded or completed, depending on whether its output was fully written. The records
+ * themselves are read by {@link #readAll()} in segment and offset order, a block at a time, so that reading all of
+ * the metadata of a root folder is a sequential scan of the segment files.
+ */
+public class LogStructuredMetaDataStore implements BinaryAssetMetaDataStore {
+
+    private static final Logger log = Logger.getLogger();
+
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String COMPACTED_SUFFIX = ".compact";
+    private static final String COMPACTING_SUFFIX = ".compacting";
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+    // length, checksum, type, root id, asset id
+    private static final int HEADER_SIZE = Integer.BYTES + Integer.BYTES + Byte.BYTES + 4 * Long.BYTES;
+    private static final int CHECKSUM_OFFSET = Integer.BYTES;
+    private static final int TYPE_OFFSET = CHECKSUM_OFFSET + Integer.BYTES;
+    private static final int MAX_PAYLOAD_SIZE = 16 * 1024 * 1024;
+    private static final int BATCH_SIZE = 1024 * 1024;
+    private static final double COMPACTION_THRESHOLD = 0.5;
+    private static final Duration FLUSH_INTERVAL = Duration.ofSeconds(1);
+
+    private final Path directory;
+    private final ObjectMapper objectMapper;
+    private final long segmentSize;
+    private final Map<Key, Location> index = new ConcurrentHashMap<>();
+    private final Map<Integer, Segment> segments = new ConcurrentHashMap<>();
+    private final ReadWriteLock segmentLock = new ReentrantReadWriteLock();
+    private final Object appendLock = new Object();
+    private final Object compactionLock = new Object();
+    private final ByteBuffer batch = ByteBuffer.allocate(BATCH_SIZE);
+    private final ScheduledExecutorService executor;
+
+    // Guarded by appendLock
+    private Segment activeSegment;
+    private long activeSize;
+    private boolean closed;
+
+    /**
+     * Opens the store in the given directory, recovering its contents from any existing segment files.
+     *
+     * @param directory          the directory holding the segment files
+     * @param objectMapper       the object mapper used to serialize binary asset metadata
+     * @param segmentSize        the size in bytes after which a new segment file is started
+     * @param compactionInterval the interval at which to check whether the segment files should be compacted
+     *
+     * @throws IOException if the segment files could not be read
+     */
+    public LogStructuredMetaDataStore(Path directory,
+                                      ObjectMapper objectMapper,
+                                      long segmentSize,
+                                      Duration compactionInterval) throws IOException {
+        Assert.isTrue(segmentSize > 0, "segmentSize must be positive");
+        this.directory = directory;
+        this.objectMapper = objectMapper;
+        this.segmentSize = segmentSize;
+
+        Files.createDirectories(directory);
+        recoverCompaction();
+        final var start = System.currentTimeMillis();
+        for (final var id : listSegmentIds(SEGMENT_SUFFIX)) {
+            final var segment = openSegment(id);
+            segments.put(id, segment);
+            load(segment);
+        }
+        final var lastSegment = segments.values().stream().max(Comparator.comparingInt(Segment::getId));
+        synchronized (appendLock) {
+            if (lastSegment.isPresent() && lastSegment.get().channel.size() < segmentSize) {
+                activeSegment = lastSegment.get();
+            } else {
+                activeSegment = openSegment(lastSegment.map(Segment::getId).orElse(0) + 1);
+                segments.put(activeSegment.id, activeSegment);
+            }
+            activeSize = activeSegment.channel.size();
+        }
+        log.info(() -> format("Loaded metadata for %,d binary resources from %,d segments in %,.3f seconds.",
+            index.size(), segments.size(), (System.currentTimeMillis() - start) / 1000f));
+
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final var thread = new Thread(runnable, "metadata-store");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::flushQuietly,
+            FLUSH_INTERVAL.toMillis(), FLUSH_INTERVAL.toMillis(), TimeUnit.MILLISECONDS);
+        executor.scheduleWithFixedDelay(this::compactQuietly,
+            compactionInterval.toMillis(), compactionInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @Nullable
+    @Override
+    public BinaryFileAsset read(UUID rootId, UUID assetId) throws IOException {
+        return read(new Key(rootId, assetId));
+    }
+
+    @Override
+    public Flux<BinaryFileAsset> readAll() {
+        return readAll(key -> true);
+    }
+
+    @Override
+    public Flux<BinaryFileAsset> readAll(UUID rootId) {
+        return readAll(key -> key.hasRoot(rootId));
+    }
+
+    @Override
+    public void write(BinaryFileAsset binaryFileAsset) throws IOException {
+        append(PUT, Key.of(binaryFileAsset), objectMapper.writeValueAsBytes(binaryFileAsset));
+    }
+
+    @Override
+    public void delete(BinaryFileAsset binaryFileAsset) throws IOException {
+        final var key = Key.of(binaryFileAsset);
+        if (index.containsKey(key)) append(DELETE, key, new byte[0]);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        synchronized (appendLock) {
+            if (closed) return;
+            flushBatch();
+            activeSegment.channel.force(false);
+        }
+    }
+
+    /**
+     * Compacts the sealed segment files into a single segment file if enough of them is made up of stale records.
+     *
+     * @throws IOException if the segment files could not be compacted
+     */
+    public void compact() throws IOException {
+        // Compactions of the same segments would write the same files, so the scheduled and explicit ones take turns
+        synchronized (compactionLock) {
+            compactSealed();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            flush();
+        } finally {
+            synchronized (appendLock) {
+                closed = true;
+            }
+            synchronized (compactionLock) {
+                closeSegments();
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return directory.toString();
+    }
+
+    //-- Private Implementation --------------------------------------------------------------------------------------//
+
+    private void compactSealed() throws IOException {
+        final List<Segment> sealed;
+        synchronized (appendLock) {
+            if (closed) return;
+            final var activeId = activeSegment.id;
+            sealed = segments.values().stream()
+                .filter(segment -> segment.id < activeId)
+                .sorted(Comparator.comparingInt(Segment::getId))
+                .collect(Collectors.toList());
+        }
+        final var totalBytes = sealed.stream().mapToLong(segment -> segment.totalBytes.get()).sum();
+        final var liveBytes = sealed.stream().mapToLong(segment -> segment.liveBytes.get()).sum();
+        if (sealed.isEmpty() || totalBytes - liveBytes < totalBytes * COMPACTION_THRESHOLD) return;
+
+        final var start = System.currentTimeMillis();
+        final var targetId = sealed.get(sealed.size() - 1).id;
+        final var moves = new ArrayList<Move>();
+        final var compacting = getSegmentPath(targetId, COMPACTING_SUFFIX);
+        final var compacted = getSegmentPath(targetId, COMPACTED_SUFFIX);
+
+        // Sealed segments are never written to, so their live records can be copied without holding any lock
+        try (final var channel = FileChannel.open(compacting, CREATE, TRUNCATE_EXISTING, WRITE)) {
+            final var out = ByteBuffer.allocate(BATCH_SIZE);
+            var position = 0L;
+            final var live = index.entrySet().stream()
+                .filter(entry -> entry.getValue().segment <= targetId)
+                .sorted(Map.Entry.comparingByValue(Location.ORDER))
+                .collect(Collectors.toList());
+            for (final var entry : live) {
+                final var record = ByteBuffer.wrap(readRecord(entry.getValue()));
+                if (out.remaining() < record.remaining()) {
+                    position += writeFully(channel, out.flip(), position);
+                    out.clear();
+                }
+                final var location = new Location(targetId, position + out.position(), record.remaining());
+                if (record.remaining() > out.capacity()) {
+                    position += writeFully(channel, record, position);
+                } else {
+                    out.put(record);
+                }
+                moves.add(new Move(entry.getKey(), entry.getValue(), location));
+            }
+            position += writeFully(channel, out.flip(), position);
+            channel.force(true);
+        }
+        Files.move(compacting, compacted, StandardCopyOption.ATOMIC_MOVE);
+
+        segmentLock.writeLock().lock();
+        try {
+            for (final var segment : sealed) {
+                segments.remove(segment.id);
+                segment.channel.close();
+                Files.deleteIfExists(segment.path);
+            }
+            Files.move(compacted, getSegmentPath(targetId, SEGMENT_SUFFIX), StandardCopyOption.ATOMIC_MOVE);
+            final var segment = openSegment(targetId);
+            segment.totalBytes.set(segment.channel.size());
+            segments.put(targetId, segment);
+            for (final var move : moves) {
+                if (index.replace(move.key, move.from, move.to)) segment.liveBytes.addAndGet(move.to.length);
+            }
+        } finally {
+            segmentLock.writeLock().unlock();
+        }
+        log.info(() -> format("Compacted %,d metadata segments from %,d to %,d bytes in %,.3f seconds.",
+            sealed.size(), totalBytes, liveBytes, (System.currentTimeMillis() - start) / 1000f));
+    }
+
+    /**
+     * Closes every segment file, even if some of them fail to close, throwing the first failure.
+     */
+    private void closeSegments() throws IOException {
+        IOException failure = null;
+        segmentLock.writeLock().lock();
+        try {
+            for (final var segment : segments.values()) {
+                try {
+                    segment.channel.close();
+                } catch (IOException ex) {
+                    if (failure == null) failure = ex; else failure.addSuppressed(ex);
+                }
+            }
+        } finally {
+            segmentLock.writeLock().unlock();
+        }
+        if (failure != null) throw failure;
+    }
+
+    private Flux<BinaryFileAsset> readAll(Predicate<Key> filter) {
+        return Flux.defer(() -> {
+            final var reader = new SequentialReader();
+            return Flux.fromIterable(index.entrySet().stream()
+                    .filter(entry -> filter.test(entry.getKey()))
+                    .sorted(Map.Entry.comparingByValue(Location.ORDER))
+                    .collect(Collectors.toList()))
+                .handle((entry, sink) -> {
+                    try {
+                        final var binaryFileAsset = reader.read(entry.getKey(), entry.getValue());
+                        if (binaryFileAsset != null) sink.next(binaryFileAsset);
+                    } catch (IOException e) {
+                        log.warn(e.getMessage(), e);
+                    }
+                });
+        });
+    }
+
+    @Nullable
+    private BinaryFileAsset read(Key key) throws IOException {
+        segmentLock.readLock().lock();
+        try {
+            final var location = index.get(key);
+            if (location == null) return null;
+            final var record = readRecord(location);
+            return objectMapper.readValue(record, HEADER_SIZE, record.length - HEADER_SIZE, BinaryFileAsset.class);
+        } finally {
+            segmentLock.readLock().unlock();
+        }
+    }
+
+    private byte[] readRecord(Location location) throws IOException {
+        final var record = new byte[location.length];
+        synchronized (appendLock) {
+            if (location.segment == activeSegment.id && location.offset >= activeSize) {
+                batch.duplicate().position((int) (location.offset - activeSize)).get(record);
+                return record;
+            }
+        }
+        final var segment = segments.get(location.segment);
+        if (segment == null) throw new IOException("Missing metadata segment " + location.segment);
+        final var buffer = ByteBuffer.wrap(record);
+        var position = location.offset;
+        while (buffer.hasRemaining()) {
+            final var bytesRead = segment.channel.read(buffer, position);
+            if (bytesRead < 0) throw new IOException("Unexpected end of metadata segment " + segment.path);
+            position += bytesRead;
+        }
+        return record;
+    }
+
+    private void append(byte type, Key key, byte[] payload) throws IOException {
+        final var record = encode(type, key, payload);
+        final var length = record.remaining();
+        synchronized (appendLock) {
+            if (closed) throw new IOException("The metadata store has been closed: " + directory);
+            if (batch.remaining() < length) flushBatch();
+            final var location = new Location(activeSegment.id, activeSize + batch.position(), length);
+            if (length > batch.capacity()) {
+                activeSize += writeFully(activeSegment.channel, record, activeSize);
+            } else {
+                batch.put(record);
+            }
+            activeSegment.totalBytes.addAndGet(length);
+            final Location previous;
+            if (type == PUT) {
+                previous = index.put(key, location);
+                activeSegment.liveBytes.addAndGet(length);
+            } else {
+                previous = index.remove(key);
+            }
+            if (previous != null) {
+                final var segment = segments.get(previous.segment);
+                if (segment != null) segment.liveBytes.addAndGet(-previous.length);
+            }
+            if (activeSize + batch.position() >= segmentSize) {
+                flushBatch();
+                activeSegment.channel.force(false);
+                activeSegment = openSegment(activeSegment.id + 1);
+                activeSize = 0;
+                segments.put(activeSegment.id, activeSegment);
+            }
+        }
+    }
+
+    private void flushBatch() throws IOException {
+        if (batch.position() > 0) {
+            activeSize += writeFully(activeSegment.channel, batch.flip(), activeSize);
+        }
+        batch.clear();
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (IOException e) {
+            log.error(() -> "Failed to flush metadata to " + directory, e);
+        }
+    }
+
+    private void compactQuietly() {
+        try {
+            compact();
+        } catch (IOException e) {
+            log.error(() -> "Failed to compact metadata in " + directory, e);
+        }
+    }
+
+    private void load(Segment segment) throws IOException {
+        final var channel = segment.channel;
+        final var size = channel.size();
+        final var checksum = new CRC32();
+        var buffer = ByteBuffer.allocate(BATCH_SIZE).limit(0);
+        var bufferOffset = 0L;
+        var offset = 0L;
+        while (offset < size) {
+            if (offset + HEADER_SIZE > size) break;
+            if (offset + HEADER_SIZE > bufferOffset + buffer.limit()) {
+                buffer = fill(channel, buffer, offset, HEADER_SIZE);
+                bufferOffset = offset;
+            }
+            final var position = (int) (offset - bufferOffset);
+            final var payloadLength = buffer.getInt(position);
+            final var type = buffer.get(position + TYPE_OFFSET);
+            if (payloadLength < 0 || payloadLength > MAX_PAYLOAD_SIZE || (type != PUT && type != DELETE)) break;
+            final var length = HEADER_SIZE + payloadLength;
+            if (offset + length > size) break;
+            if (offset + length > bufferOffset + buffer.limit()) {
+                buffer = fill(channel, buffer, offset, length);
+                bufferOffset = offset;
+            }
+            final var record = buffer.duplicate().position((int) (offset - bufferOffset)).limit((int) (offset - bufferOffset) + length);
+            checksum.reset();
+            checksum.update(record.duplicate().position(record.position() + TYPE_OFFSET));
+            if ((int) checksum.getValue() != record.getInt(record.position() + CHECKSUM_OFFSET)) break;
+
+            final var key = Key.decode(record, record.position() + TYPE_OFFSET + 1);
+            final var previous = type == PUT ? index.put(key, new Location(segment.id, offset, length)) : index.remove(key);
+            if (previous != null) segments.get(previous.segment).liveBytes.addAndGet(-previous.length);
+            if (type == PUT) segment.liveBytes.addAndGet(length);
+            segment.totalBytes.addAndGet(length);
+            offset += length;
+        }
+        if (offset < size) {
+            final var validSize = offset;
+            log.warn(() -> format("Truncating metadata segment %s from %,d to %,d bytes after a torn or corrupt record.",
+                segment.path, size, validSize));
+            channel.truncate(validSize);
+            channel.force(true);
+        }
+    }
+
+    private void recoverCompaction() throws IOException {
+        for (final var id : listSegmentIds(COMPACTING_SUFFIX)) {
+            log.warn(() -> "Discarding incomplete compaction of metadata segment " + id);
+            Files.deleteIfExists(getSegmentPath(id, COMPACTING_SUFFIX));
+        }
+        for (final var id : listSegmentIds(COMPACTED_SUFFIX)) {
+            log.warn(() -> "Completing interrupted compaction of metadata segment " + id);
+            for (final var segmentId : listSegmentIds(SEGMENT_SUFFIX)) {
+                if (segmentId <= id) Files.deleteIfExists(getSegmentPath(segmentId, SEGMENT_SUFFIX));
+            }
+            Files.move(getSegmentPath(id, COMPACTED_SUFFIX), getSegmentPath(id, SEGMENT_SUFFIX), StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    private List<Integer> listSegmentIds(String suffix) throws IOException {
+        try (final var paths = Files.list(directory)) {
+            return paths.map(path -> path.getFileName().toString())
+                .filter(name -> name.endsWith(suffix) && name.length() > suffix.length())
+                .map(name -> name.substring(0, name.length() - suffix.length()))
+                .filter(name -> name.chars().allMatch(Character::isDigit))
+                .map(Integer::valueOf)
+                .sorted()
+                .collect(Collectors.toList());
+        }
+    }
+
+    private Segment openSegment(int id) throws IOException {
+        final var path = getSegmentPath(id, SEGMENT_SUFFIX);
+        return new Segment(id, path, FileChannel.open(path, CREATE, READ, WRITE));
+    }
+
+    private Path getSegmentPath(int id, String suffix) {
+        return directory.resolve(format("%08d%s", id, suffix));
+    }
+
+    private static ByteBuffer encode(byte type, Key key, byte[] payload) {
+        final var record = ByteBuffer.allocate(HEADER_SIZE + payload.length)
+            .putInt(payload.length)
+            .putInt(0)
+            .put(type)
+            .putLong(key.rootMostSigBits)
+            .putLong(key.rootLeastSigBits)
+            .putLong(key.assetMostSigBits)
+            .putLong(key.assetLeastSigBits)
+            .put(payload)
+            .flip();
+        final var checksum = new CRC32();
+        checksum.update(record.duplicate().position(TYPE_OFFSET));
+        return record.putInt(CHECKSUM_OFFSET, (int) checksum.getValue());
+    }
+
+    private static ByteBuffer fill(FileChannel channel, ByteBuffer buffer, long offset, int minimum) throws IOException {
+        final var target = buffer.capacity() < minimum ? ByteBuffer.allocate(minimum) : buffer.clear();
+        var position = offset;
+        while (target.hasRemaining()) {
+            final var bytesRead = channel.read(target, position);
+            if (bytesRead < 0) break;
+            position += bytesRead;
+        }
+        return target.flip();
+    }
+
+    private static long writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        var written = 0L;
+        while (buffer.hasRemaining()) {
+            written += channel.write(buffer, position + written);
+        }
+        return written;
+    }
+
+    private static final class Segment {
+
+        private final int id;
+        private final Path path;
+        private final FileChannel channel;
+        private final AtomicLong totalBytes = new AtomicLong();
+        private final AtomicLong liveBytes = new AtomicLong();
+
+        private Segment(int id, Path path, FileChannel channel) {
+            this.id = id;
+            this.path = path;
+            this.channel = channel;
+        }
+
+        private int getId() {
+            return id;
+        }
+    }
+
+    /**
+     * Reads records in segment and offset order through a buffer that is refilled a block at a time, falling back on
+     * single reads for records that have been moved or deleted since they were listed, or that are still batched.
+     */
+    private final class SequentialReader {
+
+        private ByteBuffer buffer = ByteBuffer.allocate(BATCH_SIZE).limit(0);
+        private int bufferSegment = -1;
+        private long bufferOffset;
+
+        @Nullable
+        private BinaryFileAsset read(Key key, Location location) throws IOException {
+            segmentLock.readLock().lock();
+            try {
+                if (index.get(key) != location) return LogStructuredMetaDataStore.this.read(key);
+                if (!isBuffered(location)) fill(location);
+                if (!isBuffered(location)) return LogStructuredMetaDataStore.this.read(key);
+                final var position = (int) (location.offset - bufferOffset);
+                return objectMapper.readValue(buffer.array(), position + HEADER_SIZE, location.length - HEADER_SIZE,
+                    BinaryFileAsset.class);
+            } finally {
+                segmentLock.readLock().unlock();
+            }
+        }
+
+        private boolean isBuffered(Location location) {
+            return location.segment == bufferSegment && location.offset >= bufferOffset
+                && location.offset + location.length <= bufferOffset + buffer.limit();
+        }
+
+        private void fill(Location location) throws IOException {
+            final var segment = segments.get(location.segment);
+            if (segment == null) throw new IOException("Missing metadata segment " + location.segment);
+            // Only the part of the active segment that has been written out is settled
+            final long settledSize;
+            synchronized (appendLock) {
+                settledSize = location.segment == activeSegment.id ? activeSize : Long.MAX_VALUE;
+            }
+            buffer = LogStructuredMetaDataStore.fill(segment.channel, buffer, location.offset, location.length);
+            buffer.limit((int) Math.min(buffer.limit(), Math.max(0, settledSize - location.offset)));
+            bufferSegment = location.segment;
+            bufferOffset = location.offset;
+        }
+    }
+
+    private static final class Location {
+
+        private static final Comparator<Location> ORDER = Comparator
+            .<Location>comparingInt(location -> location.segment)
+            .thenComparingLong(location -> location.offset);
+
+        private final int segment;
+        private final long offset;
+        private final int length;
+
+        private Location(int segment, long offset, int length) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    private static final class Key {
+
+        private static Key of(BinaryFileAsset binaryFileAsset) {
+            Assert.notNull(binaryFileAsset.getId(), "BinaryResource id must not be null");
+            Assert.notNull(binaryFileAsset.getRootId(), "BinaryResource rootId must not be null");
+            return new Key(binaryFileAsset.getRootId(), binaryFileAsset.getId());
+        }
+
+        private static Key decode(ByteBuffer buffer, int position) {
+            return new Key(buffer.getLong(position), buffer.getLong(position + 8),
+                buffer.getLong(position + 16), buffer.getLong(position + 24));
+        }
+
+        private final long rootMostSigBits;
+        private final long rootLeastSigBits;
+        private final long assetMostSigBits;
+        private final long assetLeastSigBits;
+
+        private Key(UUID rootId, UUID assetId) {
+            this(rootId.getMostSignificantBits(), rootId.getLeastSignificantBits(),
+                assetId.getMostSignificantBits(), assetId.getLeastSignificantBits());
+        }
+
+        private Key(long rootMostSigBits, long rootLeastSigBits, long assetMostSigBits, long assetLeastSigBits) {
+            this.rootMostSigBits = rootMostSigBits;
+            this.rootLeastSigBits = rootLeastSigBits;
+            this.assetMostSigBits = assetMostSigBits;
+            this.assetLeastSigBits = assetLeastSigBits;
+        }
+
+        private boolean hasRoot(UUID rootId) {
+            return rootMostSigBits == rootId.getMostSignificantBits()
+                && rootLeastSigBits == rootId.getLeastSignificantBits();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            final var that = (Key) o;
+            return rootMostSigBits == that.rootMostSigBits && rootLeastSigBits == that.rootLeastSigBits
+                && assetMostSigBits == that.assetMostSigBits && assetLeastSigBits == that.assetLeastSigBits;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(assetMostSigBits ^ assetLeastSigBits) * 31 + Long.hashCode(rootMostSigBits ^ rootLeastSigBits);
+        }
+    }
+
+    private static final class Move {
+
+        private final Key key;
+        private final Location from;
+        private final Location to;
+
+        private Move(Key key, Location from, Location to) {
+            this.key = key;
+            this.from = from;
+            this.to = to;
+        }
+    }
+}
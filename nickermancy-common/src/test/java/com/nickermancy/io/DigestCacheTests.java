@@ -0,0 +1,132 @@
+package com.nickermancy.io;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class DigestCacheTests {
+
+    @TempDir
+    Path tempDir;
+
+    private final AtomicInteger loads = new AtomicInteger();
+    private final BiFunction<String, Path, String> loader = (algorithm, path) -> {
+        loads.incrementAndGet();
+        return MessageDigestSupport.digest(algorithm, path);
+    };
+
+    @Test
+    void hashesUnchangedFilesOnce() throws IOException {
+        final var cache = new DigestCache(10);
+        final var path = Files.writeString(tempDir.resolve("hello.txt"), "hello");
+        final var expected = MessageDigestSupport.sha256(path);
+
+        assertThat(cache.get("SHA-256", path, loader)).isEqualTo(expected);
+        assertThat(cache.get("SHA-256", path, loader)).isEqualTo(expected);
+        assertThat(cache.get("SHA-256", tempDir.resolve(".").resolve("hello.txt"), loader)).isEqualTo(expected);
+        assertThat(loads).hasValue(1);
+
+        assertThat(cache.get("MD5", path, loader)).isEqualTo(MessageDigestSupport.md5(path));
+        assertThat(loads).hasValue(2);
+    }
+
+    @Test
+    void rehashesChangedFiles() throws IOException {
+        final var cache = new DigestCache(10);
+        final var path = Files.writeString(tempDir.resolve("hello.txt"), "hello");
+        final var lastModified = Files.getLastModifiedTime(path);
+        cache.get("SHA-256", path, loader);
+
+        Files.writeString(path, "hello, world");
+        Files.setLastModifiedTime(path, lastModified);
+        assertThat(cache.get("SHA-256", path, loader)).isEqualTo(MessageDigestSupport.sha256(path));
+        assertThat(loads).hasValue(2);
+
+        Files.writeString(path, "jello, world");
+        Files.setLastModifiedTime(path, FileTime.fromMillis(lastModified.toMillis() + 1000));
+        assertThat(cache.get("SHA-256", path, loader)).isEqualTo(MessageDigestSupport.sha256(path));
+        assertThat(loads).hasValue(3);
+
+        // Changes within the same millisecond are told apart on file systems with finer timestamps
+        final var millisecond = FileTime.fromMillis(lastModified.toMillis());
+        Files.setLastModifiedTime(path, millisecond);
+        cache.get("SHA-256", path, loader);
+        Files.writeString(path, "hello, world");
+        Files.setLastModifiedTime(path, FileTime.from(millisecond.toInstant().plusNanos(1_000)));
+        assumeTrue(!Files.getLastModifiedTime(path).equals(millisecond), "The file system has millisecond timestamps");
+        assertThat(cache.get("SHA-256", path, loader)).isEqualTo(MessageDigestSupport.sha256(path));
+        assertThat(loads).hasValue(5);
+    }
+
+    @Test
+    void rehashesFilesReplacedAtTheSamePath() throws IOException {
+        final var cache = new DigestCache(10);
+        final var path = Files.writeString(tempDir.resolve("hello.txt"), "hello");
+        final var lastModified = Files.getLastModifiedTime(path);
+        cache.get("SHA-256", path, loader);
+
+        final var replacement = Files.writeString(tempDir.resolve("jello.txt"), "jello");
+        Files.setLastModifiedTime(replacement, lastModified);
+        Files.move(replacement, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        assertThat(cache.get("SHA-256", path, loader)).isEqualTo(MessageDigestSupport.sha256(path));
+        assertThat(loads).hasValue(2);
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedDigests() throws IOException {
+        final var cache = new DigestCache(2);
+        final var a = Files.writeString(tempDir.resolve("a.txt"), "a");
+        final var b = Files.writeString(tempDir.resolve("b.txt"), "b");
+        final var c = Files.writeString(tempDir.resolve("c.txt"), "c");
+        cache.get("SHA-256", a, loader);
+        cache.get("SHA-256", b, loader);
+        cache.get("SHA-256", a, loader);
+        cache.get("SHA-256", c, loader);
+        assertThat(cache.size()).isEqualTo(2);
+        assertThat(loads).hasValue(3);
+
+        cache.get("SHA-256", a, loader);
+        assertThat(loads).hasValue(3);
+        cache.get("SHA-256", b, loader);
+        assertThat(loads).hasValue(4);
+    }
+
+    @Test
+    void loadsSavedDigests() throws IOException {
+        final var file = tempDir.resolve("digests.bin");
+        final var path = Files.writeString(tempDir.resolve("hello.txt"), "hello");
+        final var cache = new DigestCache(10, file);
+        cache.get("SHA-256", path, loader);
+        cache.save();
+
+        final var loaded = new DigestCache(10, file);
+        assertThat(loaded.size()).isEqualTo(1);
+        assertThat(loaded.get("SHA-256", path, loader)).isEqualTo(MessageDigestSupport.sha256(path));
+        assertThat(loads).hasValue(1);
+        assertThat(new DigestCache(10, tempDir.resolve("missing.bin")).size()).isZero();
+    }
+
+    @Test
+    void cachesDigestSupport() throws IOException {
+        final var cache = new DigestCache(10);
+        final var path = Files.writeString(tempDir.resolve("hello.txt"), "hello");
+        MessageDigestSupport.setCache(cache);
+        try {
+            final var digest = MessageDigestSupport.sha256(path);
+            assertThat(cache.size()).isEqualTo(1);
+            assertThat(MessageDigestSupport.sha256(path)).isEqualTo(digest);
+        } finally {
+            MessageDigestSupport.setCache(null);
+        }
+    }
+}
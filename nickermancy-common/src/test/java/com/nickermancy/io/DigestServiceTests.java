@@ -0,0 +1,105 @@
+package com.nickermancy.io;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static com.nickermancy.io.DigestService.Priority.BACKGROUND;
+import static com.nickermancy.io.DigestService.Priority.FOREGROUND;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class DigestServiceTests {
+
+    @TempDir
+    Path tempDir;
+
+    private DigestService digestService;
+
+    @AfterEach
+    void tearDown() {
+        if (digestService != null) digestService.destroy();
+    }
+
+    @Test
+    void digestsLikeDigestSupport() throws IOException {
+        digestService = new DigestService(2, DigestService.UNLIMITED);
+        final var path = Files.writeString(tempDir.resolve("hello.txt"), "hello");
+
+        assertThat(digestService.digest("SHA-256", path, FOREGROUND).block())
+            .isEqualTo(MessageDigestSupport.sha256(path));
+        assertThat(digestService.digestAsync("SHA-256", path, BACKGROUND).join())
+            .isEqualTo(MessageDigestSupport.sha256(path));
+        assertThat(digestService.digest("SHA-256-TREE", path, BACKGROUND).block())
+            .isEqualTo(MessageDigestSupport.digest("SHA-256-TREE", path));
+        assertThatThrownBy(() -> digestService.submit("SHA-256", tempDir.resolve("missing"), FOREGROUND).join())
+            .isInstanceOf(CompletionException.class)
+            .hasCauseInstanceOf(MessageDigestException.class);
+    }
+
+    @Test
+    void limitsBackgroundBandwidth() throws IOException {
+        digestService = new DigestService(1, 256 * 1024);
+        final var large = Files.write(tempDir.resolve("large.bin"), new byte[128 * 1024]);
+        final var small = Files.writeString(tempDir.resolve("small.txt"), "hello");
+
+        var start = System.nanoTime();
+        digestService.digest("SHA-256", large, BACKGROUND).block();
+        assertThat(System.nanoTime() - start).isGreaterThan(400_000_000L);
+
+        // The bytes read in the foreground are charged to the budget, which background reads wait for
+        digestService.setBytesPerSecond(128 * 1024);
+        digestService.digest("SHA-256", large, FOREGROUND).block();
+        start = System.nanoTime();
+        digestService.digest("SHA-256", small, BACKGROUND).block();
+        assertThat(System.nanoTime() - start).isGreaterThan(800_000_000L);
+
+        // So are the bytes read from the streams of the service
+        try (final var input = digestService.newInputStream(large)) {
+            assertThat(input.readAllBytes()).hasSize(128 * 1024);
+        }
+        start = System.nanoTime();
+        digestService.digest("SHA-256", small, BACKGROUND).block();
+        assertThat(System.nanoTime() - start).isGreaterThan(800_000_000L);
+    }
+
+    @Test
+    void runsForegroundDigestsAlongsideThrottledDigests() throws IOException {
+        digestService = new DigestService(1, 64 * 1024);
+        final var large = Files.write(tempDir.resolve("large.bin"), new byte[256 * 1024]);
+        final var small = Files.writeString(tempDir.resolve("small.txt"), "hello");
+
+        final var background = digestService.submit("SHA-256", large, BACKGROUND);
+        final var start = System.nanoTime();
+        assertThat(digestService.digest("SHA-256", small, FOREGROUND).block())
+            .isEqualTo(MessageDigestSupport.sha256(small));
+        assertThat(System.nanoTime() - start).isLessThan(1_000_000_000L);
+        assertThat(background).isNotDone();
+    }
+
+    @Test
+    void runsForegroundDigestsFirst() throws IOException {
+        digestService = new DigestService(1, 256 * 1024);
+        final var large = Files.write(tempDir.resolve("large.bin"), new byte[64 * 1024]);
+        final var small = Files.writeString(tempDir.resolve("small.txt"), "hello");
+        final List<String> completed = new CopyOnWriteArrayList<>();
+
+        final var first = digestService.submit("SHA-256", large, BACKGROUND);
+        final var background = digestService.submit("SHA-256", small, BACKGROUND)
+            .thenRun(() -> completed.add("background"));
+        final var foreground = digestService.submit("SHA-256", small, FOREGROUND)
+            .thenRun(() -> completed.add("foreground"));
+        first.join();
+        background.join();
+        foreground.join();
+
+        assertThat(completed).containsExactly("foreground", "background");
+    }
+}
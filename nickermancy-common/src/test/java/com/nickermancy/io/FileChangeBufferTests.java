@@ -0,0 +1,89 @@
+package com.nickermancy.io;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Subscription;
+import reactor.core.Exceptions;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.Flux;
+
+import static com.nickermancy.io.FileChangeEvent.Type.*;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FileChangeBufferTests {
+
+    private static final Path A = Path.of("a.bin");
+    private static final Path B = Path.of("b.bin");
+    private static final Path C = Path.of("c.bin");
+
+    @Test
+    void dropsOldestEvents() {
+        final var subscriber = subscribe(2, FileChangeOverflowStrategy.DROP_OLDEST);
+        subscriber.buffer.get().addAll(List.of(
+            new FileChangeEvent(CREATED, A), new FileChangeEvent(CREATED, B), new FileChangeEvent(MODIFIED, A)));
+        assertThat(subscriber.received).isEmpty();
+
+        subscriber.request(10);
+        assertThat(subscriber.received).containsExactly(new FileChangeEvent(CREATED, B), new FileChangeEvent(MODIFIED, A));
+        assertThat(subscriber.buffer.get().getDroppedCount()).isEqualTo(1);
+    }
+
+    @Test
+    void keepsLatestEventPerPath() {
+        final var subscriber = subscribe(2, FileChangeOverflowStrategy.LATEST_PER_PATH);
+        subscriber.buffer.get().addAll(List.of(
+            new FileChangeEvent(CREATED, A), new FileChangeEvent(DELETED, A), new FileChangeEvent(CREATED, B),
+            new FileChangeEvent(MODIFIED, C), new FileChangeEvent(MODIFIED, B), new FileChangeEvent(DELETED, C)));
+
+        subscriber.request(1);
+        assertThat(subscriber.received).containsExactly(new FileChangeEvent(CREATED, B));
+        subscriber.buffer.get().addAll(List.of(new FileChangeEvent(MODIFIED, A), new FileChangeEvent(MODIFIED, B)));
+        subscriber.request(10);
+        assertThat(subscriber.received).containsExactly(
+            new FileChangeEvent(CREATED, B), new FileChangeEvent(MODIFIED, A), new FileChangeEvent(MODIFIED, B));
+        assertThat(subscriber.buffer.get().getDroppedCount()).isEqualTo(1);
+    }
+
+    @Test
+    void failsOnOverflow() {
+        final var subscriber = subscribe(1, FileChangeOverflowStrategy.ERROR);
+        subscriber.buffer.get().addAll(List.of(new FileChangeEvent(CREATED, A), new FileChangeEvent(CREATED, B)));
+
+        assertThat(subscriber.error.get()).matches(Exceptions::isOverflow);
+        subscriber.request(10);
+        assertThat(subscriber.received).isEmpty();
+    }
+
+    private static TestSubscriber subscribe(int capacity, FileChangeOverflowStrategy overflowStrategy) {
+        final var subscriber = new TestSubscriber();
+        Flux.<FileChangeEvent>create(sink -> subscriber.buffer.set(new FileChangeBuffer(sink, capacity, overflowStrategy)))
+            .subscribe(subscriber);
+        return subscriber;
+    }
+
+    private static class TestSubscriber extends BaseSubscriber<FileChangeEvent> {
+
+        private final AtomicReference<FileChangeBuffer> buffer = new AtomicReference<>();
+        private final AtomicReference<Throwable> error = new AtomicReference<>();
+        private final List<FileChangeEvent> received = new ArrayList<>();
+
+        @Override
+        protected void hookOnSubscribe(Subscription subscription) {
+            // Request nothing until the test does
+        }
+
+        @Override
+        protected void hookOnNext(FileChangeEvent event) {
+            received.add(event);
+        }
+
+        @Override
+        protected void hookOnError(Throwable throwable) {
+            error.set(throwable);
+        }
+    }
+}
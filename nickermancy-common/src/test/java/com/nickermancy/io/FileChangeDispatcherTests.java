@@ -0,0 +1,69 @@
+package com.nickermancy.io;
+
+import com.nickermancy.io.FileWatchOptions.SaturationPolicy;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static com.nickermancy.io.FileChangeEvent.Type.*;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FileChangeDispatcherTests {
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void keepsEventsOfEachPathInOrder() throws InterruptedException {
+        final var received = new ConcurrentHashMap<Path, List<FileChangeEvent.Type>>();
+        final var latch = new CountDownLatch(4000);
+        final var dispatcher = new FileChangeDispatcher(executor, 4, 100, SaturationPolicy.BLOCK, events -> {
+            events.forEach(event -> received.computeIfAbsent(event.getPath(), path -> new ArrayList<>()).add(event.getType()));
+            latch.countDown();
+        }, events -> {});
+
+        final var expected = List.of(CREATED, MODIFIED, MODIFIED, DELETED);
+        for (var i = 0; i < 1000; i++) {
+            final var path = Path.of("/file-" + i);
+            for (final var type : expected) dispatcher.dispatch(new FileChangeEvent(type, path));
+        }
+
+        assertThat(latch.await(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(received).hasSize(1000).allSatisfy((path, types) -> assertThat(types).isEqualTo(expected));
+    }
+
+    @Test
+    void dropsEventsWhileSaturated() throws InterruptedException {
+        final var release = new CountDownLatch(1);
+        final var dropped = new AtomicInteger();
+        final var dispatcher = new FileChangeDispatcher(executor, 1, 2, SaturationPolicy.RESCAN, events -> {
+            try {
+                release.await();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }, events -> dropped.addAndGet(events.size()));
+
+        for (var i = 0; i < 10; i++) {
+            dispatcher.dispatch(new FileChangeEvent(MODIFIED, Path.of("/file")));
+        }
+        release.countDown();
+
+        assertThat(dropped).hasValue(8);
+        assertThat(dispatcher.getDroppedCount()).isEqualTo(8);
+    }
+}
@@ -0,0 +1,45 @@
+package com.nickermancy.io;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FileTreeSupportTests {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void findsFilesLikeFilesFind() throws IOException {
+        Files.write(Files.createDirectories(tempDir.resolve("a/b")).resolve("one.bin"), new byte[10]);
+        Files.write(tempDir.resolve("a/two.bin"), new byte[20]);
+        Files.write(tempDir.resolve("three.txt"), new byte[30]);
+        Files.createDirectories(tempDir.resolve("empty"));
+
+        try (final var found = FileTreeSupport.find(tempDir, (path, attributes) -> attributes.isRegularFile());
+             final var expected = Files.find(tempDir, Integer.MAX_VALUE, (path, attributes) -> attributes.isRegularFile())) {
+            final var sizes = found.collect(Collectors.toMap(FileTreeSupport.FoundFile::getPath,
+                file -> file.getAttributes().size()));
+            assertThat(sizes.keySet()).containsExactlyInAnyOrderElementsOf(expected.collect(Collectors.toList()));
+            assertThat(sizes).containsEntry(tempDir.resolve("a/b/one.bin"), 10L)
+                .containsEntry(tempDir.resolve("a/two.bin"), 20L)
+                .containsEntry(tempDir.resolve("three.txt"), 30L);
+        }
+    }
+
+    @Test
+    void findsParentsBeforeChildren() throws IOException {
+        Files.write(Files.createDirectories(tempDir.resolve("a/b/c")).resolve("file.bin"), new byte[1]);
+
+        try (final var found = FileTreeSupport.find(tempDir, (path, attributes) -> true)) {
+            assertThat(found.map(FileTreeSupport.FoundFile::getPath)).containsExactly(tempDir, tempDir.resolve("a"),
+                tempDir.resolve("a/b"), tempDir.resolve("a/b/c"), tempDir.resolve("a/b/c/file.bin"));
+        }
+    }
+}
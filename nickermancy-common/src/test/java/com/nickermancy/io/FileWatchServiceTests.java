@@ -0,0 +1,264 @@
+package com.nickermancy.io;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static com.nickermancy.io.FileChangeEvent.Type.*;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FileWatchServiceTests {
+
+    @TempDir
+    Path root;
+
+    private FileWatchService fileWatchService;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        fileWatchService = new FileWatchService(FileSystems.getDefault().newWatchService());
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        fileWatchService.destroy();
+    }
+
+    @Test
+    void mergesEventsOfEachPath() {
+        assertThat(FileChangeDebouncer.merge(null, MODIFIED)).isEqualTo(MODIFIED);
+        assertThat(FileChangeDebouncer.merge(CREATED, MODIFIED)).isEqualTo(CREATED);
+        assertThat(FileChangeDebouncer.merge(CREATED, DELETED)).isNull();
+        assertThat(FileChangeDebouncer.merge(MODIFIED, DELETED)).isEqualTo(DELETED);
+        assertThat(FileChangeDebouncer.merge(DELETED, CREATED)).isEqualTo(MODIFIED);
+    }
+
+    @Test
+    void deliversDebouncedBatches() throws IOException, InterruptedException {
+        final var batches = new LinkedBlockingQueue<List<FileChangeEvent>>();
+        final var options = FileWatchOptions.defaults().withDebounce(Duration.ofMillis(300), Duration.ofSeconds(5));
+        fileWatchService.register(root, batches::add, options);
+        fileWatchService.start();
+
+        final var written = root.resolve("written.bin");
+        try (final var output = Files.newOutputStream(written)) {
+            for (var i = 0; i < 20; i++) {
+                output.write(new byte[4096]);
+                output.flush();
+            }
+        }
+        final var temporary = Files.write(root.resolve("temporary.part"), new byte[10]);
+        Files.delete(temporary);
+
+        assertThat(poll(batches)).containsExactly(new FileChangeEvent(CREATED, written));
+        assertThat(batches.poll(500, TimeUnit.MILLISECONDS)).isNull();
+    }
+
+    @Test
+    void deliversBatchAfterMaxDelay() throws IOException, InterruptedException {
+        final var batches = new LinkedBlockingQueue<List<FileChangeEvent>>();
+        final var options = FileWatchOptions.defaults().withDebounce(Duration.ofMillis(200), Duration.ofMillis(400));
+        fileWatchService.register(root, batches::add, options);
+        fileWatchService.start();
+
+        final var written = root.resolve("written.bin");
+        final var deadline = System.nanoTime() + Duration.ofSeconds(2).toNanos();
+        try (final var output = Files.newOutputStream(written)) {
+            while (batches.isEmpty() && System.nanoTime() < deadline) {
+                output.write(new byte[16]);
+                output.flush();
+                Thread.sleep(50);
+            }
+        }
+
+        assertThat(poll(batches)).containsExactly(new FileChangeEvent(CREATED, written));
+    }
+
+    @Test
+    void rescansDirectoryAfterOverflow() throws IOException, InterruptedException {
+        final var created = ConcurrentHashMap.<Path>newKeySet();
+        fileWatchService.register(root, event -> {
+            if (event.getType() == CREATED) created.add(event.getPath());
+        });
+
+        // More events than a watch key holds are queued before the service starts listening
+        final var expected = new HashSet<Path>();
+        for (var i = 0; i < 600; i++) {
+            expected.add(Files.write(root.resolve("file-" + i + ".bin"), new byte[0]));
+        }
+        fileWatchService.start();
+
+        final var deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (created.size() < expected.size() && System.nanoTime() < deadline) {
+            Thread.sleep(50);
+        }
+        assertThat(created).isEqualTo(expected);
+    }
+
+    @Test
+    void watchesFolderAsFlux() throws IOException, InterruptedException {
+        final var batches = new LinkedBlockingQueue<List<FileChangeEvent>>();
+        fileWatchService.start();
+        final var subscription = fileWatchService.watch(root, 10, Duration.ofMillis(200)).subscribe(batches::add);
+
+        final var created = Files.write(root.resolve("created.bin"), new byte[0]);
+        assertThat(poll(batches)).first().isEqualTo(new FileChangeEvent(CREATED, created));
+
+        // Once the subscription is cancelled, the folder is no longer watched
+        subscription.dispose();
+        Files.write(root.resolve("ignored.bin"), new byte[0]);
+        assertThat(batches.poll(500, TimeUnit.MILLISECONDS)).isNull();
+    }
+
+    @Test
+    void deliversChangesToEachSubscriber() throws IOException, InterruptedException {
+        final var first = new LinkedBlockingQueue<List<FileChangeEvent>>();
+        final var second = new LinkedBlockingQueue<List<FileChangeEvent>>();
+        fileWatchService.start();
+        final var firstSubscription = fileWatchService.watch(root, 10, Duration.ofMillis(200)).subscribe(first::add);
+        final var secondSubscription = fileWatchService.watch(root, 10, Duration.ofMillis(200)).subscribe(second::add);
+        assertThat(fileWatchService.getWatchCount()).isEqualTo(1);
+
+        final var created = Files.write(root.resolve("created.bin"), new byte[0]);
+        assertThat(poll(first)).first().isEqualTo(new FileChangeEvent(CREATED, created));
+        assertThat(poll(second)).first().isEqualTo(new FileChangeEvent(CREATED, created));
+
+        // The folder remains watched for the first subscriber once the second one has cancelled
+        secondSubscription.dispose();
+        first.clear();
+        final var later = Files.write(root.resolve("later.bin"), new byte[0]);
+        assertThat(poll(first)).first().isEqualTo(new FileChangeEvent(CREATED, later));
+        assertThat(fileWatchService.getWatchCount()).isEqualTo(1);
+
+        firstSubscription.dispose();
+        assertThat(fileWatchService.getWatchCount()).isZero();
+    }
+
+    @Test
+    void filtersEventsBeforeDelivery() throws IOException, InterruptedException {
+        final var excluded = Files.createDirectory(root.resolve(".git"));
+        final var nested = Files.createDirectory(root.resolve("nested"));
+        final var batches = new LinkedBlockingQueue<List<FileChangeEvent>>();
+        final var filter = FileWatchFilter.include("*.bin").exclude(".git", "*.part.bin");
+        final var options = FileWatchOptions.defaults()
+            .withDebounce(Duration.ofMillis(200), Duration.ofSeconds(5))
+            .withFilter(filter);
+        fileWatchService.register(root, batches::add, options);
+        fileWatchService.start();
+        assertThat(fileWatchService.getWatchCount()).isEqualTo(2);
+
+        Files.write(excluded.resolve("index.bin"), new byte[10]);
+        Files.write(root.resolve("download.part.bin"), new byte[10]);
+        Files.write(root.resolve("notes.txt"), new byte[10]);
+        final var included = Files.write(nested.resolve("included.bin"), new byte[10]);
+        final var created = Files.createDirectory(root.resolve("created"));
+
+        assertThat(poll(batches)).containsExactlyInAnyOrder(
+            new FileChangeEvent(CREATED, included),
+            new FileChangeEvent(CREATED, created));
+    }
+
+    @Test
+    void pollsDirectoryTree() throws IOException, InterruptedException {
+        // Polling is meant for file systems without a usable watch service; tmpfs keeps the test fast where present
+        final var shm = Path.of("/dev/shm");
+        final var tree = Files.createTempDirectory(Files.isWritable(shm) ? shm : root, "polled");
+        try {
+            final var nested = Files.createDirectories(tree.resolve("a").resolve("b"));
+            final var modified = Files.write(nested.resolve("modified.bin"), new byte[10]);
+            final var deleted = Files.write(tree.resolve("deleted.bin"), new byte[10]);
+
+            final var batches = new LinkedBlockingQueue<List<FileChangeEvent>>();
+            final var options = FileWatchOptions.defaults().withPolling(Duration.ofMillis(50), Duration.ofMillis(200));
+            fileWatchService.register(tree, batches::add, options);
+
+            Files.write(modified, new byte[20]);
+            assertThat(poll(batches)).containsExactly(new FileChangeEvent(MODIFIED, modified));
+            Files.delete(deleted);
+            assertThat(poll(batches)).containsExactly(new FileChangeEvent(DELETED, deleted));
+            final var created = Files.createDirectory(nested.resolve("c"));
+            assertThat(poll(batches)).containsExactly(new FileChangeEvent(CREATED, created));
+            final var createdFile = Files.write(created.resolve("created.bin"), new byte[10]);
+            assertThat(poll(batches)).containsExactly(new FileChangeEvent(CREATED, createdFile));
+        } finally {
+            fileWatchService.destroy();
+            try (final var paths = Files.walk(tree)) {
+                for (final var path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                    Files.delete(path);
+                }
+            }
+        }
+    }
+
+    @Test
+    void pollsColdSubtreesBeyondWatchBudget() throws IOException, InterruptedException {
+        final var hot = Files.createDirectory(root.resolve("hot"));
+        Files.write(hot.resolve("recent.bin"), new byte[10]);
+        final var cold = Files.write(Files.createDirectories(root.resolve("cold/nested")).resolve("old.bin"), new byte[10]);
+        final var lastYear = FileTime.from(Instant.now().minus(Duration.ofDays(365)));
+        for (final var path : List.of(cold, cold.getParent(), root.resolve("cold"))) {
+            Files.setLastModifiedTime(path, lastYear);
+        }
+
+        fileWatchService.setWatchBudget(2);
+        final var progress = new LinkedBlockingQueue<FileWatchRegistration>();
+        final var batches = new LinkedBlockingQueue<List<FileChangeEvent>>();
+        final var options = FileWatchOptions.defaults()
+            .withDebounce(Duration.ofMillis(100), Duration.ofSeconds(1))
+            .withPollIntervals(Duration.ofMillis(50), Duration.ofMillis(200));
+        final var registration = fileWatchService.register(root, batches::add, options, progress::add);
+        fileWatchService.start();
+
+        assertThat(registration.isComplete()).isTrue();
+        assertThat(registration.getScannedCount()).isEqualTo(4);
+        assertThat(registration.getWatchedCount()).isEqualTo(2);
+        assertThat(registration.getPolledCount()).isEqualTo(2);
+        assertThat(progress).containsExactly(registration);
+        assertThat(fileWatchService.getWatchCount()).isEqualTo(2);
+        assertThat(fileWatchService.getPolledCount()).isEqualTo(2);
+
+        final var watched = Files.write(hot.resolve("watched.bin"), new byte[10]);
+        assertThat(poll(batches)).containsExactly(new FileChangeEvent(CREATED, watched));
+        Files.write(cold, new byte[20]);
+        assertThat(poll(batches)).containsExactly(new FileChangeEvent(MODIFIED, cold));
+    }
+
+    @Test
+    void diffsDirectorySnapshots() throws IOException {
+        final var modified = Files.write(root.resolve("modified.bin"), new byte[10]);
+        final var deleted = Files.write(root.resolve("deleted.bin"), new byte[10]);
+        Files.write(root.resolve("unchanged.bin"), new byte[10]);
+        final var before = DirectorySnapshot.of(root);
+
+        Files.write(modified, new byte[20]);
+        Files.delete(deleted);
+        final var created = Files.createDirectory(root.resolve("created"));
+
+        assertThat(before.diff(root, DirectorySnapshot.of(root))).containsExactlyInAnyOrder(
+            new FileChangeEvent(CREATED, created),
+            new FileChangeEvent(DELETED, deleted),
+            new FileChangeEvent(MODIFIED, modified));
+    }
+
+    private static List<FileChangeEvent> poll(BlockingQueue<List<FileChangeEvent>> batches) throws InterruptedException {
+        final var batch = batches.poll(10, TimeUnit.SECONDS);
+        assertThat(batch).as("Timed out waiting for a batch").isNotNull();
+        return batch;
+    }
+}
@@ -0,0 +1,136 @@
+package com.nickermancy.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MessageDigestSupportTests {
+
+    private static final String HELLO_SHA256 = "2cf24dba5fb0a30e26e83b2ac5b9e29e1b161e5c1fa7425e73043362938b9824";
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void digestOfPathAndStream() throws IOException {
+        final var path = Files.writeString(tempDir.resolve("hello.txt"), "hello");
+
+        assertThat(MessageDigestSupport.sha256(path)).isEqualTo(HELLO_SHA256);
+        assertThat(MessageDigestSupport.sha256(new ByteArrayInputStream("hello".getBytes(StandardCharsets.UTF_8))))
+            .isEqualTo(HELLO_SHA256);
+        assertThat(MessageDigestSupport.md5(path)).isEqualTo("5d41402abc4b2a76b9719d911017c592");
+    }
+
+    @Test
+    void digestsOfSeveralAlgorithmsInOnePass() throws IOException {
+        final var path = Files.writeString(tempDir.resolve("hello.txt"), "hello");
+        final var expected = Map.of(
+            "MD5", "5d41402abc4b2a76b9719d911017c592",
+            "SHA-1", "aaf4c61ddcc5e8a2dabede0f3b482cd9aea9434d",
+            "SHA-256", HELLO_SHA256);
+
+        assertThat(MessageDigestSupport.digestAll(path, "MD5", "SHA-1", "SHA-256"))
+            .containsExactlyEntriesOf(new TreeMap<>(expected));
+        assertThat(MessageDigestSupport.digestAll(Files.newInputStream(path), "SHA-256", "MD5", "SHA-1"))
+            .containsOnlyKeys("SHA-256", "MD5", "SHA-1")
+            .containsAllEntriesOf(expected);
+        assertThat(MessageDigestSupport.digestAll(path, "SHA-256-TREE", "SHA-256"))
+            .containsEntry("SHA-256-TREE", MessageDigestSupport.digest("SHA-256-TREE", path))
+            .containsEntry("SHA-256", HELLO_SHA256);
+    }
+
+    @Test
+    void digestOfBuffersAndChannels() {
+        final var hello = "hello".getBytes(StandardCharsets.UTF_8);
+        final var direct = ByteBuffer.allocateDirect(hello.length).put(hello).flip();
+
+        assertThat(MessageDigestSupport.digest("SHA-256", ByteBuffer.wrap(hello))).isEqualTo(HELLO_SHA256);
+        assertThat(MessageDigestSupport.digest("SHA-256", direct)).isEqualTo(HELLO_SHA256);
+        assertThat(direct.hasRemaining()).isFalse();
+        assertThat(MessageDigestSupport.digest("SHA-256", Channels.newChannel(new ByteArrayInputStream(hello))))
+            .isEqualTo(HELLO_SHA256);
+    }
+
+    @Test
+    void encodesLikeTheJdk() {
+        final var random = new Random(42);
+        for (var length = 0; length < 70; length++) {
+            final var bytes = new byte[length];
+            random.nextBytes(bytes);
+            assertThat(MessageDigestSupport.base64Encode(bytes)).isEqualTo(Base64.getEncoder().encodeToString(bytes));
+            final var hex = new StringBuilder();
+            for (final var b : bytes) {
+                hex.append(String.format("%02x", b));
+            }
+            assertThat(MessageDigestSupport.hexEncode(bytes)).isEqualTo(hex.toString());
+        }
+    }
+
+    @Test
+    void bufferedAndMappedStrategiesAgree() throws IOException, NoSuchAlgorithmException {
+        final var bytes = new byte[10_000_019];
+        new Random(42).nextBytes(bytes);
+        final var path = Files.write(tempDir.resolve("random.bin"), bytes);
+        final var expected = MessageDigest.getInstance("SHA-256").digest(bytes);
+
+        final var buffered = MessageDigest.getInstance("SHA-256");
+        new DigestEngine(4096, Long.MAX_VALUE, 4096).update(buffered, path);
+        final var mapped = MessageDigest.getInstance("SHA-256");
+        new DigestEngine(4096, 0, 1_000_000).update(mapped, path);
+
+        assertThat(buffered.digest()).isEqualTo(expected);
+        assertThat(mapped.digest()).isEqualTo(expected);
+    }
+
+    @Test
+    void treeDigestOfChunks() throws IOException, NoSuchAlgorithmException {
+        final var bytes = new byte[3 * 1000 + 17];
+        new Random(42).nextBytes(bytes);
+        final var path = Files.write(tempDir.resolve("random.bin"), bytes);
+        final var treeDigest = new TreeDigest("SHA-256-TREE", 1000, ForkJoinPool.commonPool());
+
+        // Four leaves form a balanced tree
+        final var sha256 = MessageDigest.getInstance("SHA-256");
+        final var leaves = new byte[4][];
+        for (var i = 0; i < leaves.length; i++) {
+            sha256.update((byte) 0);
+            sha256.update(bytes, i * 1000, Math.min(1000, bytes.length - i * 1000));
+            leaves[i] = sha256.digest();
+        }
+        final var expected = node(sha256, node(sha256, leaves[0], leaves[1]), node(sha256, leaves[2], leaves[3]));
+
+        assertThat(treeDigest.digest(path)).isEqualTo(expected);
+        assertThat(treeDigest.digest(new ByteArrayInputStream(bytes))).isEqualTo(expected);
+        assertThat(treeDigest.digest(new ByteArrayInputStream(bytes, 0, 2000)))
+            .isEqualTo(node(sha256, leaves[0], leaves[1]));
+        assertThat(treeDigest.digest(new ByteArrayInputStream(new byte[0]))).isEqualTo(sha256.digest());
+
+        // A file of a single chunk is a single leaf
+        final var hello = Files.writeString(tempDir.resolve("hello.txt"), "hello");
+        final var leaf = new ByteArrayInputStream("\0hello".getBytes(StandardCharsets.UTF_8));
+        assertThat(MessageDigestSupport.digest("SHA-256-TREE", hello)).isEqualTo(MessageDigestSupport.sha256(leaf));
+    }
+
+    private static byte[] node(MessageDigest digest, byte[] left, byte[] right) {
+        digest.update((byte) 1);
+        digest.update(left);
+        digest.update(right);
+        return digest.digest();
+    }
+}
@@ -0,0 +1,151 @@
+package com.nickermancy.logging;
+
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.AppenderBase;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AsyncLoggingTests {
+
+    private final ConcurrentLinkedQueue<ILoggingEvent> events = new ConcurrentLinkedQueue<>();
+    private ch.qos.logback.classic.Logger delegate;
+    private AppenderBase<ILoggingEvent> appender;
+    private Logger logger;
+
+    @BeforeEach
+    void addAppender() {
+        delegate = (ch.qos.logback.classic.Logger) LoggerFactory.getLogger("async-logging");
+        appender = new AppenderBase<>() {
+            @Override
+            protected void append(ILoggingEvent event) {
+                event.prepareForDeferredProcessing();
+                events.add(event);
+            }
+        };
+        appender.start();
+        delegate.addAppender(appender);
+        delegate.setLevel(Level.DEBUG);
+        logger = Logger.getLogger(delegate);
+    }
+
+    @AfterEach
+    void stopAsyncLogging() {
+        AsyncLogging.stop();
+        delegate.detachAppender(appender);
+    }
+
+    @Test
+    void forwardsEventsInOrder() {
+        AsyncLogging.start();
+        assertThat(AsyncLogging.isStarted()).isTrue();
+        final var start = System.currentTimeMillis();
+        final var failure = new IllegalStateException("failure");
+
+        logger.info("plain message");
+        logger.info("one {}", "argument");
+        logger.warn("two {} {}", "arguments", 2);
+        logger.error("{} {} {}", "three", "arguments", 3);
+        logger.debug("failed", failure);
+        logger.info("failed with {}", "argument", failure);
+        logger.info("primitive {}", 42L);
+        logger.trace("disabled {}", "argument");
+        AsyncLogging.flush();
+
+        assertThat(events).extracting(ILoggingEvent::getFormattedMessage).containsExactly(
+            "plain message", "one argument", "two arguments 2", "three arguments 3", "failed",
+            "failed with argument", "primitive 42");
+        assertThat(events).extracting(ILoggingEvent::getLevel).containsExactly(
+            Level.INFO, Level.INFO, Level.WARN, Level.ERROR, Level.DEBUG, Level.INFO, Level.INFO);
+        assertThat(events).extracting(ILoggingEvent::getThreadName).containsOnly("async-logging");
+        assertThat(events).extracting(event -> event.getMDCPropertyMap().get(AsyncLogging.THREAD_MDC_KEY))
+            .containsOnly(Thread.currentThread().getName());
+        assertThat(events)
+            .extracting(event -> Long.parseLong(event.getMDCPropertyMap().get(AsyncLogging.TIMESTAMP_MDC_KEY)))
+            .allSatisfy(timestamp -> assertThat(timestamp).isBetween(start, System.currentTimeMillis()));
+        final var forwarded = new ArrayList<>(events);
+        assertThat(forwarded.get(4).getThrowableProxy().getMessage()).isEqualTo("failure");
+        assertThat(forwarded.get(5).getThrowableProxy().getMessage()).isEqualTo("failure");
+    }
+
+    @Test
+    void countsDroppedEvents() throws InterruptedException {
+        AsyncLogging.start(4, AsyncLogging.OverflowPolicy.DROP);
+        final var threads = new Thread[4];
+        final var eventsPerThread = 10_000;
+        for (var i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                for (var j = 0; j < eventsPerThread; j++) {
+                    logger.info("event {}", j);
+                }
+            });
+            threads[i].start();
+        }
+        for (final var thread : threads) {
+            thread.join();
+        }
+        AsyncLogging.flush();
+
+        assertThat(events.size() + AsyncLogging.getDroppedCount()).isEqualTo(threads.length * eventsPerThread);
+    }
+
+    @Test
+    void blocksUntilThereIsRoom() {
+        AsyncLogging.start(2, AsyncLogging.OverflowPolicy.DROP_BELOW_WARN);
+        for (var i = 0; i < 1_000; i++) {
+            logger.warn("warning {}", i);
+        }
+        AsyncLogging.flush();
+
+        assertThat(events).hasSize(1_000);
+        assertThat(AsyncLogging.getDroppedCount()).isZero();
+    }
+
+    @Test
+    void forwardsBufferedEventsWhenStopped() {
+        AsyncLogging.start();
+        for (var i = 0; i < 100; i++) {
+            logger.info("event {}", i);
+        }
+        AsyncLogging.stop();
+
+        assertThat(AsyncLogging.isStarted()).isFalse();
+        assertThat(events).hasSize(100);
+
+        logger.info("synchronous event");
+        assertThat(events).hasSize(101);
+        assertThat(new ArrayList<>(events).get(100).getThreadName()).isEqualTo(Thread.currentThread().getName());
+    }
+
+    @Test
+    void forwardsEventsLoggedWhileStopping() throws InterruptedException {
+        final var eventsPerThread = 10_000;
+        for (var round = 0; round < 10; round++) {
+            events.clear();
+            AsyncLogging.start(64, AsyncLogging.OverflowPolicy.BLOCK);
+            final var threads = new Thread[4];
+            for (var i = 0; i < threads.length; i++) {
+                threads[i] = new Thread(() -> {
+                    for (var j = 0; j < eventsPerThread; j++) {
+                        logger.info("event {}", j);
+                    }
+                });
+                threads[i].start();
+            }
+            AsyncLogging.stop();
+            for (final var thread : threads) {
+                thread.join();
+            }
+
+            assertThat(events).hasSize(threads.length * eventsPerThread);
+        }
+    }
+}
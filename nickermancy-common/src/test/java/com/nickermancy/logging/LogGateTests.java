@@ -0,0 +1,157 @@
+package com.nickermancy.logging;
+
+import java.time.Duration;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LogGateTests {
+
+    private static final Duration NO_SUMMARY = Duration.ofHours(1);
+
+    private ch.qos.logback.classic.Logger delegate;
+    private ListAppender<ILoggingEvent> appender;
+    private Logger logger;
+
+    @BeforeEach
+    void addAppender() {
+        delegate = (ch.qos.logback.classic.Logger) LoggerFactory.getLogger("gated");
+        appender = new ListAppender<>();
+        appender.start();
+        delegate.addAppender(appender);
+        delegate.setLevel(Level.INFO);
+        logger = Logger.getLogger(delegate);
+    }
+
+    @AfterEach
+    void detachAppender() {
+        delegate.detachAppender(appender);
+    }
+
+    @Test
+    void letsSamplesThrough() {
+        final var gate = LogGate.sampled(3, NO_SUMMARY);
+        final var sampled = LoggerImpl.getGatedLogger(logger, gate);
+
+        for (var i = 0; i < 10; i++) {
+            sampled.info("event {}", i);
+        }
+
+        assertThat(appender.list).extracting(ILoggingEvent::getFormattedMessage)
+            .containsExactly("event 0", "event 3", "event 6", "event 9");
+        assertThat(gate.getSuppressedCount()).isEqualTo(6);
+    }
+
+    @Test
+    void letsFirstEventsThrough() {
+        final var gate = LogGate.first(2, NO_SUMMARY);
+        final var first = LoggerImpl.getGatedLogger(logger, gate);
+
+        for (var i = 0; i < 5; i++) {
+            first.warn("event {}", i);
+        }
+
+        assertThat(appender.list).extracting(ILoggingEvent::getFormattedMessage)
+            .containsExactly("event 0", "event 1");
+        assertThat(gate.getSuppressedCount()).isEqualTo(3);
+    }
+
+    @Test
+    void letsOneEventThroughPerInterval() {
+        final var gate = LogGate.atMostEvery(Duration.ofHours(1), NO_SUMMARY);
+        final var limited = LoggerImpl.getGatedLogger(logger, gate);
+
+        limited.info("first");
+        limited.error("second");
+        limited.info("third {}", 3L);
+
+        assertThat(appender.list).extracting(ILoggingEvent::getFormattedMessage).containsExactly("first");
+        assertThat(gate.getSuppressedCount()).isEqualTo(2);
+    }
+
+    @Test
+    void ignoresDisabledEvents() {
+        final var gate = LogGate.first(1, NO_SUMMARY);
+        final var first = LoggerImpl.getGatedLogger(logger, gate);
+
+        first.debug("disabled");
+        first.trace("disabled {}", 1L);
+        first.info("enabled");
+
+        assertThat(appender.list).extracting(ILoggingEvent::getFormattedMessage).containsExactly("enabled");
+        assertThat(gate.getSuppressedCount()).isZero();
+    }
+
+    @Test
+    void summarizesSuppressedEvents() throws InterruptedException {
+        final var first = LoggerImpl.getGatedLogger(logger, LogGate.first(1, Duration.ofMillis(50)));
+
+        first.info("first");
+        first.info("suppressed");
+        Thread.sleep(100);
+        first.warn("suppressed");
+
+        assertThat(appender.list).extracting(ILoggingEvent::getFormattedMessage)
+            .containsExactly("first", "Suppressed 2 similar log events");
+        assertThat(appender.list).extracting(ILoggingEvent::getLevel).containsExactly(Level.INFO, Level.WARN);
+    }
+
+    @Test
+    void summarizesSuppressedEventsWhenFlushed() {
+        final var first = LoggerImpl.getGatedLogger(logger, LogGate.first(1, NO_SUMMARY));
+
+        first.info("first");
+        first.info("suppressed");
+        first.warn("suppressed");
+        first.flushSuppressed();
+        first.flushSuppressed();
+        logger.flushSuppressed();
+
+        assertThat(appender.list).extracting(ILoggingEvent::getFormattedMessage)
+            .containsExactly("first", "Suppressed 2 similar log events");
+        assertThat(appender.list).extracting(ILoggingEvent::getLevel).containsExactly(Level.INFO, Level.WARN);
+    }
+
+    @Test
+    void countsEventsOfConcurrentThreads() throws InterruptedException {
+        final var gate = LogGate.sampled(10, NO_SUMMARY);
+        final var sampled = LoggerImpl.getGatedLogger(logger, gate);
+        final var threads = new Thread[4];
+        for (var i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                for (var j = 0; j < 10_000; j++) {
+                    sampled.info("event {}", j);
+                }
+            });
+            threads[i].start();
+        }
+        for (final var thread : threads) {
+            thread.join();
+        }
+
+        assertThat(appender.list).hasSize(4_000);
+        assertThat(gate.getSuppressedCount()).isEqualTo(36_000);
+    }
+
+    @Test
+    void gatesEachCallSiteSeparately() {
+        final var first = logger.first(1);
+        final var other = logger.first(1);
+
+        first.info("first");
+        first.info("suppressed");
+        other.info("other");
+        logger.info("ungated");
+
+        assertThat(appender.list).extracting(ILoggingEvent::getFormattedMessage)
+            .containsExactly("first", "other", "ungated");
+    }
+}
@@ -0,0 +1,83 @@
+package com.nickermancy.logging;
+
+import java.lang.management.ManagementFactory;
+
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+import org.slf4j.helpers.MessageFormatter;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class MessageTemplatesTests {
+
+    @Test
+    void formatsLikeSlf4j() {
+        final var templates = new String[]{
+            "no anchors", "{}", "count {}", "{} and {} and {}", "escaped \\{} and {}", "backslash \\\\{} {}", "{}{}"
+        };
+        for (final var template : templates) {
+            assertThat(MessageTemplates.format(template, 42L))
+                .isEqualTo(MessageFormatter.format(template, 42L).getMessage());
+            assertThat(MessageTemplates.format(template, 1.5))
+                .isEqualTo(MessageFormatter.format(template, 1.5).getMessage());
+            assertThat(MessageTemplates.format(template, true))
+                .isEqualTo(MessageFormatter.format(template, true).getMessage());
+            assertThat(MessageTemplates.format(template, 1L, 2L))
+                .isEqualTo(MessageFormatter.format(template, 1L, 2L).getMessage());
+            assertThat(MessageTemplates.format(template, "path", 2L, 0.25))
+                .isEqualTo(MessageFormatter.arrayFormat(template, new Object[]{ "path", 2L, 0.25 }).getMessage());
+        }
+    }
+
+    @Test
+    void logsPrimitiveArgumentsWhenEnabled() {
+        final var delegate = (ch.qos.logback.classic.Logger) LoggerFactory.getLogger("primitive-arguments");
+        final var appender = new ListAppender<ILoggingEvent>();
+        appender.start();
+        delegate.addAppender(appender);
+        delegate.setLevel(Level.INFO);
+        final var logger = Logger.getLogger(delegate);
+
+        logger.info("Loaded {} binary resources", 3);
+        logger.info("Loaded {} of {} binary resources in {} ms", 3L, 4L, 5L);
+        logger.warn("Polling {} folders: {}", 2L, 1.5);
+        logger.info("{}: {} changes, {} seconds", "root", 7L, 0.5);
+        logger.debug("Skipped {}", 1L);
+
+        assertThat(appender.list).extracting(ILoggingEvent::getFormattedMessage).containsExactly(
+            "Loaded 3 binary resources",
+            "Loaded 3 of 4 binary resources in 5 ms",
+            "Polling 2 folders: 1.5",
+            "root: 7 changes, 0.5 seconds");
+        assertThat(appender.list).extracting(ILoggingEvent::getLevel)
+            .containsExactly(Level.INFO, Level.INFO, Level.WARN, Level.INFO);
+    }
+
+    @Test
+    void allocatesNothingWhenDisabled() {
+        final var threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+        final var delegate = (ch.qos.logback.classic.Logger) LoggerFactory.getLogger("disabled-primitive-arguments");
+        delegate.setLevel(Level.WARN);
+        final var logger = Logger.getLogger(delegate);
+        final var threadId = Thread.currentThread().getId();
+
+        // Values beyond the cache of boxed longs, each of which would allocate at least 16 bytes if it were boxed,
+        // while the measurement itself, and the compilation of the loop, may allocate a few bytes overall
+        final var calls = 30_000;
+        for (var round = 0; round < 2; round++) {
+            final var allocated = threads.getThreadAllocatedBytes(threadId);
+            for (long i = 1_000; i < 1_000 + calls / 3; i++) {
+                logger.info("Loaded {} binary resources", i);
+                logger.debug("Loaded {} of {} binary resources", i, i + 1);
+                logger.trace("{}: {} changes, {} seconds", logger, i, i / 1000.0);
+            }
+            if (round > 0) assertThat(threads.getThreadAllocatedBytes(threadId) - allocated).isLessThan(calls);
+        }
+    }
+}
@@ -36,7 +36,11 @@ class LoggerTests {
             dynamicTest("Logger.getLogger() (from proxy handler)", () ->
                 assertThat(MyClass.loggerFromProxy().get().getName()).isEqualTo(MyClass.class.getName())),
             dynamicTest("wrapping existing logger", () ->
-                assertThat(MyClass.loggerFromLogger.getName()).isEqualTo(String.class.getName()))
+                assertThat(MyClass.loggerFromLogger.getName()).isEqualTo(String.class.getName())),
+            dynamicTest("Logger.getLogger(Class<?>) (cached per class)", () ->
+                assertThat(Logger.getLogger(MyClass.class)).isSameAs(Logger.getLogger(MyClass.class))),
+            dynamicTest("Logger.getLogger() (cached per calling class)", () ->
+                assertThat(MyClass.loggerFromMethod()).isSameAs(MyClass.loggerFromField))
         );
     }
 
@@ -233,6 +237,10 @@ class LoggerTests {
 
         static final Logger loggerFromLogger = Logger.getLogger(LoggerFactory.getLogger(String.class));
 
+        static Logger loggerFromMethod() {
+            return Logger.getLogger();
+        }
+
         static Supplier<Logger> loggerFromLambda() {
             return Logger::getLogger;
         }
@@ -0,0 +1,462 @@
+package com.nickermancy.spring.repositories;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nickermancy.io.FileTreeSupport;
+import com.nickermancy.io.FileWatchService;
+import com.nickermancy.spring.exceptions.InvalidSortException;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.data.domain.Sort;
+
+import reactor.core.publisher.Flux;
+
+import static java.lang.String.format;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BinaryAssetRepositoryTests {
+
+    @TempDir
+    Path tempDir;
+
+    private Path root;
+    private BinaryAssetRepositoryProperties properties;
+    private FileWatchService fileWatchService;
+    private BinaryAssetRepository repository;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        root = Files.createDirectories(tempDir.resolve("assets"));
+        properties = new BinaryAssetRepositoryProperties();
+        properties.setMetaDataRoot(tempDir.resolve("metadata"));
+        properties.setResourceRegex(Pattern.compile(".+\\.bin"));
+        properties.setImportParallelism(4);
+        fileWatchService = new FileWatchService(FileSystems.getDefault().newWatchService());
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        if (repository != null) repository.destroy();
+        fileWatchService.destroy();
+    }
+
+    @Test
+    void importFolderInParallel() throws IOException {
+        for (var i = 0; i < 50; i++) {
+            writeFile(root.resolve(format("folder-%d/file-%02d.bin", i % 5, i)), i * 1000);
+        }
+        writeFile(root.resolve("ignored.txt"), 10);
+
+        repository = new BinaryAssetRepository(properties, fileWatchService, new ObjectMapper());
+        final var rootId = repository.importFolder(root);
+
+        assertThat(repository.listBinaryAssets(rootId, URI.create("/")).collectList().block())
+            .hasSize(50)
+            .allSatisfy(asset -> {
+                assertThat(asset.getSha256()).isEqualTo(sha256(asset.getPath()));
+                assertThat(asset.getMediaType()).isNotNull();
+                assertThat(asset.getSize()).isNotNull();
+            });
+        assertThat(repository.countBinaryAssets(rootId, URI.create("/")).block()).isEqualTo(50L);
+        assertThat(repository.countBinaryAssets(rootId, URI.create("/folder-3")).block()).isEqualTo(10L);
+        assertThat(repository.countFolderAssets(rootId, URI.create("/")).block()).isEqualTo(6L);
+        assertThat(repository.listBinaryAssets(rootId, URI.create("/folder-3")).collectList().block()).hasSize(10);
+        assertThat(repository.listFolderAssets(rootId, URI.create("/")).collectList().block())
+            .hasSize(6)
+            .allSatisfy(folder -> assertThat(folder.getFileCount()).isIn(10L, 50L));
+    }
+
+    @Test
+    void importFolderInWalkOrder() throws IOException {
+        // Large and small pairs of identical files are interleaved, so that later files finish importing first
+        for (var i = 0; i < 16; i++) {
+            final var size = i % 2 == 0 ? 1_000_000 + i : 100 + i;
+            writeFile(root.resolve(format("pair-%02d-a.bin", i)), size);
+            writeFile(root.resolve(format("pair-%02d-b.bin", i)), size);
+        }
+        final List<Path> walked;
+        try (final var found = FileTreeSupport.find(root, (path, attributes) -> attributes.isRegularFile())) {
+            walked = found.map(FileTreeSupport.FoundFile::getPath).collect(Collectors.toList());
+        }
+        // A digest becomes a duplicate group once its second file is indexed, so the groups are listed in the order
+        // in which the second file of each pair was walked
+        final var seen = new HashSet<String>();
+        final var expected = new ArrayList<String>();
+        for (final var path : walked) {
+            final var pair = path.getFileName().toString().substring(0, 7);
+            if (!seen.add(pair)) expected.add(pair);
+        }
+
+        repository = new BinaryAssetRepository(properties, fileWatchService, new ObjectMapper());
+        final var rootId = repository.importFolder(root);
+
+        assertThat(repository.listDuplicateAssets(rootId).collectList().block())
+            .extracting(group -> group.get(0).getPath().getFileName().toString().substring(0, 7))
+            .containsExactlyElementsOf(expected);
+    }
+
+    @Test
+    void importFolderSequentially() throws IOException {
+        for (var i = 0; i < 10; i++) {
+            writeFile(root.resolve(format("file-%02d.bin", i)), i * 100);
+        }
+        properties.setImportParallelism(1);
+
+        repository = new BinaryAssetRepository(properties, fileWatchService, new ObjectMapper());
+        final var rootId = repository.importFolder(root);
+
+        assertThat(repository.listBinaryAssets(rootId, URI.create("/")).collectList().block()).hasSize(10);
+    }
+
+    @Test
+    void listPagesFromCursors() throws IOException {
+        for (var i = 0; i < 25; i++) {
+            writeFile(root.resolve(format("folder-%d/file-%02d.bin", i % 3, i)), (i * 7) % 25);
+        }
+
+        repository = new BinaryAssetRepository(properties, fileWatchService, new ObjectMapper());
+        final var rootId = repository.importFolder(root);
+        final var sort = Sort.by(Sort.Order.desc("size"));
+        final var pages = new ArrayList<CursorPage<BinaryFileAsset>>();
+        String cursor = null;
+        do {
+            final var page = repository.listBinaryAssets(rootId, URI.create("/"), cursor, 10, sort).block();
+            pages.add(page);
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+
+        assertThat(pages).hasSize(3);
+        assertThat(pages.get(0).hasPrevious()).isFalse();
+        assertThat(pages.stream().flatMap(page -> page.getContent().stream()).map(BinaryFileAsset::getSize))
+            .containsExactlyElementsOf(LongStream.range(0, 25).map(i -> 24 - i).boxed().collect(Collectors.toList()));
+
+        final var previous = repository.listBinaryAssets(rootId, URI.create("/"), pages.get(2).getPreviousCursor(), 10, sort).block();
+        assertThat(previous.getContent()).extracting(FileAsset::getPath)
+            .containsExactlyElementsOf(pages.get(1).getContent().stream().map(FileAsset::getPath).collect(Collectors.toList()));
+        assertThat(previous.getNextCursor()).isNotNull();
+        assertThat(previous.getPreviousCursor()).isNotNull();
+
+        assertThatThrownBy(() -> repository.listBinaryAssets(rootId, URI.create("/"), null, 10, Sort.by("name")).block())
+            .isInstanceOf(InvalidSortException.class);
+    }
+
+    @Test
+    void findDuplicateAssetsByDigest() throws IOException {
+        // Files of equal size have equal contents
+        writeFile(root.resolve("a/one.bin"), 100);
+        writeFile(root.resolve("b/one.bin"), 100);
+        writeFile(root.resolve("c/one.bin"), 100);
+        writeFile(root.resolve("a/two.bin"), 200);
+        writeFile(root.resolve("b/two.bin"), 200);
+        final var unique = writeFile(root.resolve("three.bin"), 300);
+
+        repository = new BinaryAssetRepository(properties, fileWatchService, new ObjectMapper());
+        final var rootId = repository.importFolder(root);
+
+        assertThat(repository.listDuplicateAssets(rootId).collectList().block())
+            .hasSize(2)
+            .allSatisfy(group -> assertThat(group).extracting(BinaryFileAsset::getSha256).containsOnly(group.get(0).getSha256()));
+        assertThat(repository.countReclaimableBytes(rootId).block()).isEqualTo(400L);
+
+        final var digest = sha256(unique);
+        final var hexDigest = new StringBuilder();
+        for (final var b : Base64.getDecoder().decode(digest)) hexDigest.append(format("%02x", b));
+        assertThat(repository.findBinaryAssetsByDigest(rootId, digest).collectList().block())
+            .extracting(FileAsset::getPath).containsExactly(unique);
+        assertThat(repository.findBinaryAssetsByDigest(hexDigest.toString()).collectList().block())
+            .extracting(FileAsset::getPath).containsExactly(unique);
+    }
+
+    @Test
+    void applyCoalescedFileChanges() throws IOException, InterruptedException {
+        writeFile(root.resolve("existing.bin"), 100);
+        properties.setChangeCoalescingWindow(Duration.ofMillis(300));
+        final var writes = new ConcurrentHashMap<Path, AtomicInteger>();
+        final var metaDataStore = new JsonFileMetaDataStore(properties.getMetaDataRoot(), new ObjectMapper()) {
+            @Override
+            public void write(BinaryFileAsset binaryFileAsset) throws IOException {
+                writes.computeIfAbsent(binaryFileAsset.getPath(), path -> new AtomicInteger()).incrementAndGet();
+                super.write(binaryFileAsset);
+            }
+        };
+
+        repository = new BinaryAssetRepository(properties, fileWatchService, metaDataStore);
+        final var rootId = repository.importFolder(root);
+        fileWatchService.start();
+
+        // A file written in many chunks is imported once it settles
+        final var written = root.resolve("written.bin");
+        try (final var output = Files.newOutputStream(written)) {
+            for (var i = 0; i < 50; i++) {
+                output.write(new byte[1024]);
+                output.flush();
+                Thread.sleep(2);
+            }
+        }
+        final var digest = sha256(written);
+        await(() -> repository.getBinaryAsset(rootId, URI.create("/written.bin")).blockOptional()
+            .map(asset -> digest.equals(asset.getSha256())).orElse(false));
+        assertThat(writes.get(written).get()).isEqualTo(1);
+
+        writeFile(root.resolve("folder/nested.bin"), 200);
+        await(() -> repository.countBinaryAssets(rootId, URI.create("/")).block() == 3);
+
+        Files.delete(written);
+        // The folder index is updated before the content hash index
+        await(() -> repository.findBinaryAssetsByDigest(rootId, digest).collectList().block().isEmpty());
+        assertThat(repository.getBinaryAsset(rootId, URI.create("/written.bin")).block()).isNull();
+        assertThat(repository.countBinaryAssets(rootId, URI.create("/")).block()).isEqualTo(2L);
+    }
+
+    @Test
+    void applyChangesToPathOneAtATime() throws IOException, InterruptedException {
+        properties.setChangeCoalescingWindow(Duration.ofMillis(100));
+        final var changing = root.resolve("changing.bin");
+        final var writing = new AtomicInteger();
+        final var maxWriting = new AtomicInteger();
+        final var firstWrite = new CountDownLatch(1);
+        final var release = new CountDownLatch(1);
+        final var metaDataStore = new JsonFileMetaDataStore(properties.getMetaDataRoot(), new ObjectMapper()) {
+            @Override
+            public void write(BinaryFileAsset binaryFileAsset) throws IOException {
+                if (!changing.equals(binaryFileAsset.getPath())) {
+                    super.write(binaryFileAsset);
+                    return;
+                }
+                maxWriting.accumulateAndGet(writing.incrementAndGet(), Math::max);
+                try {
+                    firstWrite.countDown();
+                    release.await();
+                    super.write(binaryFileAsset);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    writing.decrementAndGet();
+                }
+            }
+        };
+
+        repository = new BinaryAssetRepository(properties, fileWatchService, metaDataStore);
+        final var rootId = repository.importFolder(root);
+        fileWatchService.start();
+
+        writeFile(changing, 100);
+        assertThat(firstWrite.await(10, TimeUnit.SECONDS)).isTrue();
+        // Changed while the first change is being applied, for longer than the coalescing window
+        writeFile(changing, 300);
+        Thread.sleep(500);
+        release.countDown();
+
+        final var digest = sha256(changing);
+        await(() -> repository.getBinaryAsset(rootId, URI.create("/changing.bin")).blockOptional()
+            .map(asset -> digest.equals(asset.getSha256())).orElse(false));
+        assertThat(maxWriting.get()).isEqualTo(1);
+    }
+
+    @Test
+    void reimportFromSegmentLog() throws IOException {
+        for (var i = 0; i < 20; i++) {
+            writeFile(root.resolve(format("file-%02d.bin", i)), i * 100);
+        }
+        properties.setMetaDataFormat(BinaryAssetRepositoryProperties.MetaDataFormat.SEGMENT_LOG);
+
+        repository = new BinaryAssetRepository(properties, fileWatchService, new ObjectMapper());
+        final var rootId = repository.importFolder(root);
+        final var digest = repository.getBinaryAsset(rootId, URI.create("/file-05.bin")).block().getSha256();
+        repository.destroy();
+
+        repository = new BinaryAssetRepository(properties, fileWatchService, new ObjectMapper());
+        repository.importFolder(root);
+
+        assertThat(repository.listBinaryAssets(rootId, URI.create("/")).collectList().block()).hasSize(20);
+        assertThat(repository.getBinaryAsset(rootId, URI.create("/file-05.bin")).block().getSha256()).isEqualTo(digest);
+        try (final var paths = Files.list(properties.getMetaDataRoot().resolve("log"))) {
+            assertThat(paths.count()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    void reimportOnlyRehashesChangedFiles() throws IOException {
+        final var unchanged = writeFile(root.resolve("unchanged.bin"), 100);
+        final var changed = writeFile(root.resolve("changed.bin"), 100);
+
+        repository = new BinaryAssetRepository(properties, fileWatchService, new ObjectMapper());
+        final var rootId = repository.importFolder(root);
+        final var originalDigest = repository.getBinaryAsset(rootId, URI.create("/changed.bin")).block().getSha256();
+        repository.destroy();
+
+        // Tamper with the saved digest of the unchanged file to prove that it is not recomputed
+        final var objectMapper = new ObjectMapper();
+        try (final var paths = Files.walk(properties.getMetaDataRoot())) {
+            for (final var path : (Iterable<Path>) paths.filter(Files::isRegularFile)::iterator) {
+                final var asset = objectMapper.readValue(path.toFile(), BinaryFileAsset.class);
+                if (unchanged.equals(asset.getPath())) {
+                    asset.setSha256("tampered");
+                    objectMapper.writeValue(path.toFile(), asset);
+                }
+            }
+        }
+        Files.write(changed, new byte[200]);
+        Files.setLastModifiedTime(changed, FileTime.fromMillis(Files.getLastModifiedTime(changed).toMillis() + 5000));
+
+        repository = new BinaryAssetRepository(properties, fileWatchService, objectMapper);
+        repository.importFolder(root);
+        final var lastModified = Files.getLastModifiedTime(changed).to(TimeUnit.NANOSECONDS);
+
+        assertThat(repository.getBinaryAsset(rootId, URI.create("/unchanged.bin")).block())
+            .satisfies(asset -> assertThat(asset.getSha256()).isEqualTo("tampered"));
+        assertThat(repository.getBinaryAsset(rootId, URI.create("/changed.bin")).block())
+            .satisfies(asset -> {
+                assertThat(asset.getSha256()).isNotEqualTo(originalDigest);
+                assertThat(asset.getSize()).isEqualTo(200L);
+                assertThat(asset.getLastModified()).isEqualTo(lastModified);
+            });
+    }
+
+    @Test
+    void reimportMigratesMillisecondTimesWithoutRehashing() throws IOException {
+        final var path = writeFile(root.resolve("legacy.bin"), 100);
+
+        repository = new BinaryAssetRepository(properties, fileWatchService, new ObjectMapper());
+        final var rootId = repository.importFolder(root);
+        repository.destroy();
+
+        // Rewrite the saved metadata as it was before times were recorded in nanoseconds
+        final var objectMapper = new ObjectMapper();
+        try (final var paths = Files.walk(properties.getMetaDataRoot())) {
+            for (final var metadata : (Iterable<Path>) paths.filter(Files::isRegularFile)::iterator) {
+                final var asset = objectMapper.readValue(metadata.toFile(), BinaryFileAsset.class);
+                asset.setSha256("tampered");
+                asset.setLastModified(Files.getLastModifiedTime(path).toMillis());
+                objectMapper.writeValue(metadata.toFile(), asset);
+            }
+        }
+
+        repository = new BinaryAssetRepository(properties, fileWatchService, objectMapper);
+        repository.importFolder(root);
+        final var lastModified = Files.getLastModifiedTime(path).to(TimeUnit.NANOSECONDS);
+
+        assertThat(repository.getBinaryAsset(rootId, URI.create("/legacy.bin")).block())
+            .satisfies(asset -> {
+                assertThat(asset.getSha256()).isEqualTo("tampered");
+                assertThat(asset.getLastModified()).isEqualTo(lastModified);
+            });
+    }
+
+    @Test
+    void reimportUnchangedFilesWithoutReadingMetadata() throws IOException {
+        for (var i = 0; i < 10; i++) {
+            writeFile(root.resolve(format("file-%02d.bin", i)), i * 100);
+        }
+        final var reads = new AtomicInteger();
+        final var writes = new AtomicInteger();
+        final var metaDataStore = new JsonFileMetaDataStore(properties.getMetaDataRoot(), new ObjectMapper()) {
+            @Override
+            public BinaryFileAsset read(UUID rootId, UUID assetId) throws IOException {
+                reads.incrementAndGet();
+                return super.read(rootId, assetId);
+            }
+
+            @Override
+            public void write(BinaryFileAsset binaryFileAsset) throws IOException {
+                writes.incrementAndGet();
+                super.write(binaryFileAsset);
+            }
+        };
+
+        repository = new BinaryAssetRepository(properties, fileWatchService, metaDataStore);
+        final var rootId = repository.importFolder(root);
+        assertThat(writes.get()).isEqualTo(10);
+        reads.set(0);
+        writes.set(0);
+        writeFile(root.resolve("file-03.bin"), 50);
+        repository.importFolder(root);
+
+        assertThat(reads.get()).isEqualTo(1);
+        assertThat(writes.get()).isEqualTo(1);
+        assertThat(repository.getBinaryAsset(rootId, URI.create("/file-03.bin")).block().getSize()).isEqualTo(50L);
+    }
+
+    @Test
+    void reimportReadsSavedMetadataInOnePass() throws IOException {
+        for (var i = 0; i < 10; i++) {
+            writeFile(root.resolve(format("file-%02d.bin", i)), i * 100);
+        }
+        final var reads = new AtomicInteger();
+        final var readAlls = new AtomicInteger();
+        final var metaDataStore = new JsonFileMetaDataStore(properties.getMetaDataRoot(), new ObjectMapper()) {
+            @Override
+            public BinaryFileAsset read(UUID rootId, UUID assetId) throws IOException {
+                reads.incrementAndGet();
+                return super.read(rootId, assetId);
+            }
+
+            @Override
+            public Flux<BinaryFileAsset> readAll(UUID rootId) {
+                readAlls.incrementAndGet();
+                return super.readAll(rootId);
+            }
+        };
+        repository = new BinaryAssetRepository(properties, fileWatchService, new ObjectMapper());
+        final var rootId = repository.importFolder(root);
+        repository.destroy();
+
+        repository = new BinaryAssetRepository(properties, fileWatchService, metaDataStore);
+        repository.importFolder(root);
+
+        assertThat(reads.get()).isZero();
+        assertThat(readAlls.get()).isEqualTo(1);
+        assertThat(repository.listBinaryAssets(rootId, URI.create("/")).collectList().block())
+            .hasSize(10)
+            .allSatisfy(asset -> assertThat(asset.getSha256()).isEqualTo(sha256(asset.getPath())));
+    }
+
+    private static String sha256(Path path) {
+        try {
+            return Base64.getEncoder().encodeToString(MessageDigest.getInstance("SHA-256").digest(Files.readAllBytes(path)));
+        } catch (IOException | NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        final var deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).as("Timed out waiting for condition").isLessThan(deadline);
+            Thread.sleep(50);
+        }
+    }
+
+    private static Path writeFile(Path path, int size) throws IOException {
+        Files.createDirectories(path.getParent());
+        final var bytes = new byte[size];
+        for (var i = 0; i < size; i++) bytes[i] = (byte) (i * 31);
+        return Files.write(path, bytes);
+    }
+}
@@ -0,0 +1,43 @@
+package com.nickermancy.spring.repositories;
+
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ContentHashIndexTests {
+
+    @Test
+    void tracksDuplicateGroupsAndReclaimableBytes() {
+        final var index = new ContentHashIndex();
+        final var a = asset("/a.bin", "x", 10);
+        final var b = asset("/b.bin", "x", 10);
+        final var c = asset("/c.bin", "x", 10);
+        index.replace(null, a);
+        index.replace(null, b);
+        index.replace(null, c);
+        index.replace(null, asset("/d.bin", "y", 20));
+
+        assertThat(index.get("x")).containsExactly(a, b, c);
+        assertThat(index.getDuplicates()).hasSize(1);
+        assertThat(index.getReclaimableBytes()).isEqualTo(20);
+
+        index.replace(c, asset("/c.bin", "y", 20));
+        assertThat(index.getDuplicates()).hasSize(2);
+        assertThat(index.getReclaimableBytes()).isEqualTo(30);
+
+        index.replace(b, null);
+        assertThat(index.get("x")).containsExactly(a);
+        assertThat(index.getDuplicates()).hasSize(1);
+        assertThat(index.getReclaimableBytes()).isEqualTo(20);
+    }
+
+    private static BinaryFileAsset asset(String path, String digest, long size) {
+        final var asset = new BinaryFileAsset();
+        asset.setPath(Path.of(path));
+        asset.setSha256(digest);
+        asset.setSize(size);
+        return asset;
+    }
+}
@@ -0,0 +1,132 @@
+package com.nickermancy.spring.repositories;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FolderIndexTests {
+
+    private static final Path ROOT = Path.of("/assets");
+
+    @Test
+    void countsAndListsSubtrees() {
+        final var index = new FolderIndex(ROOT);
+        index.put(asset("a/x.bin"));
+        index.put(asset("a/b/y.bin"));
+        index.put(asset("a/b/c/z.bin"));
+        index.put(asset("d/w.bin"));
+        index.put(asset("v.bin"));
+
+        assertThat(index.countFiles(ROOT)).isEqualTo(5);
+        assertThat(index.countFiles(ROOT.resolve("a"))).isEqualTo(3);
+        assertThat(index.countFiles(ROOT.resolve("a/b/c"))).isEqualTo(1);
+        assertThat(index.countFolders(ROOT)).isEqualTo(5);
+        assertThat(index.countFolders(ROOT.resolve("a"))).isEqualTo(3);
+        assertThat(index.countFolders(ROOT.resolve("missing"))).isZero();
+
+        assertThat(index.listFiles(ROOT.resolve("a")).stream().map(FileAsset::getPath).collect(Collectors.toList()))
+            .containsExactly(ROOT.resolve("a/b/c/z.bin"), ROOT.resolve("a/b/y.bin"), ROOT.resolve("a/x.bin"));
+        assertThat(index.listFolders(ROOT))
+            .containsExactly(ROOT, ROOT.resolve("a"), ROOT.resolve("a/b"), ROOT.resolve("a/b/c"), ROOT.resolve("d"));
+        assertThat(index.get(ROOT.resolve("a/b/y.bin"))).isNotNull();
+        assertThat(index.get(ROOT.resolve("a/b"))).isNull();
+    }
+
+    @Test
+    void replacesAssetsWithoutChangingCounts() {
+        final var index = new FolderIndex(ROOT);
+        final var original = asset("a/x.bin");
+        index.put(original);
+
+        assertThat(index.put(asset("a/x.bin"))).isSameAs(original);
+        assertThat(index.countFiles(ROOT)).isEqualTo(1);
+        assertThat(index.countFolders(ROOT)).isEqualTo(2);
+    }
+
+    @Test
+    void prunesFoldersLeftWithoutAssets() {
+        final var index = new FolderIndex(ROOT);
+        index.put(asset("a/b/c/z.bin"));
+        index.put(asset("a/x.bin"));
+        index.put(asset("d/e/w.bin"));
+
+        assertThat(index.remove(ROOT.resolve("a/b/c/z.bin"))).isNotNull();
+        assertThat(index.remove(ROOT.resolve("a/b/c/z.bin"))).isNull();
+        assertThat(index.containsFolder(ROOT.resolve("a/b"))).isFalse();
+        assertThat(index.countFolders(ROOT)).isEqualTo(4);
+
+        assertThat(index.removeFolder(ROOT.resolve("d"))).hasSize(1);
+        assertThat(index.listFolders(ROOT)).containsExactly(ROOT, ROOT.resolve("a"));
+        assertThat(index.countFiles(ROOT)).isEqualTo(1);
+    }
+
+    @Test
+    void listsSortedOrdersFromPosition() {
+        final var index = new FolderIndex(ROOT);
+        index.put(asset("a/x.bin", 30));
+        index.put(asset("a/b/y.bin", 10));
+        index.put(asset("a/b/c/z.bin", 20));
+        index.put(asset("d/w.bin", 10));
+
+        assertThat(sizes(index.listFiles(ROOT, AssetOrder.SIZE, true, null, 10))).containsExactly(10L, 10L, 20L, 30L);
+        assertThat(sizes(index.listFiles(ROOT, AssetOrder.SIZE, false, null, 2))).containsExactly(30L, 20L);
+        assertThat(sizes(index.listFiles(ROOT.resolve("a"), AssetOrder.SIZE, true, null, 10))).containsExactly(10L, 20L, 30L);
+
+        // The position need not be indexed, and ties are broken by path
+        assertThat(index.listFiles(ROOT, AssetOrder.SIZE, true, asset("a/c.bin", 10), 10))
+            .extracting(FileAsset::getPath)
+            .containsExactly(ROOT.resolve("d/w.bin"), ROOT.resolve("a/b/c/z.bin"), ROOT.resolve("a/x.bin"));
+    }
+
+    @Test
+    void keepsSubtreeOrdersWhenAssetsChange() {
+        final var index = new FolderIndex(ROOT);
+        index.put(asset("a/x.bin", 30));
+        index.put(asset("a/b/y.bin", 10));
+        index.put(asset("a/b/c/z.bin", 20));
+        index.put(asset("d/w.bin", 40));
+
+        index.put(asset("a/b/y.bin", 50));
+        index.remove(ROOT.resolve("a/x.bin"));
+        assertThat(sizes(index.listFiles(ROOT, AssetOrder.SIZE, true, null, 10))).containsExactly(20L, 40L, 50L);
+        assertThat(sizes(index.listFiles(ROOT.resolve("a"), AssetOrder.SIZE, false, null, 10))).containsExactly(50L, 20L);
+
+        assertThat(index.removeFolder(ROOT.resolve("a/b"))).extracting(FileAsset::getPath)
+            .containsExactlyInAnyOrder(ROOT.resolve("a/b/c/z.bin"), ROOT.resolve("a/b/y.bin"));
+        assertThat(sizes(index.listFiles(ROOT, AssetOrder.SIZE, true, null, 10))).containsExactly(40L);
+        assertThat(index.listFiles(ROOT.resolve("a"), AssetOrder.SIZE, true, null, 10)).isEmpty();
+    }
+
+    @Test
+    void holdsEachAssetOncePerOrder() {
+        final var index = new FolderIndex(ROOT);
+        index.put(asset("a/b/c/d/e/z.bin", 10));
+        index.put(asset("a/b/c/y.bin", 20));
+        index.put(asset("a/x.bin", 30));
+        index.put(asset("a/x.bin", 40));
+        index.remove(ROOT.resolve("a/b/c/y.bin"));
+
+        for (final var order : AssetOrder.values()) {
+            assertThat(index.countSorted(order)).as(order.name()).isEqualTo(index.countFiles(ROOT)).isEqualTo(2);
+        }
+    }
+
+    private static List<Long> sizes(List<BinaryFileAsset> assets) {
+        return assets.stream().map(BinaryFileAsset::getSize).collect(Collectors.toList());
+    }
+
+    private static BinaryFileAsset asset(String relativePath) {
+        return asset(relativePath, 0);
+    }
+
+    private static BinaryFileAsset asset(String relativePath, long size) {
+        final var asset = new BinaryFileAsset();
+        asset.setPath(ROOT.resolve(relativePath));
+        asset.setSize(size);
+        return asset;
+    }
+}
@@ -0,0 +1,181 @@
+package com.nickermancy.spring.repositories;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LogStructuredMetaDataStoreTests {
+
+    private static final UUID ROOT_ID = UUID.randomUUID();
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void readsWritesAndDeletesAcrossSegments() throws IOException {
+        try (final var store = openStore(1024)) {
+            for (var i = 0; i < 100; i++) {
+                store.write(asset("/file-" + i + ".bin", i));
+            }
+            store.delete(asset("/file-7.bin", 7));
+            store.write(asset("/file-8.bin", 800));
+
+            assertThat(store.read(ROOT_ID, FileAsset.generateId(URI.create("/file-7.bin")))).isNull();
+            assertThat(store.read(ROOT_ID, FileAsset.generateId(URI.create("/file-8.bin"))).getSize()).isEqualTo(800L);
+            assertThat(store.readAll().collectList().block()).hasSize(99);
+        }
+        assertThat(listSegments()).hasSizeGreaterThan(1);
+    }
+
+    @Test
+    void recoversIndexAfterReopening() throws IOException {
+        try (final var store = openStore(1024 * 1024)) {
+            store.write(asset("/a.bin", 1));
+            store.write(asset("/b.bin", 2));
+            store.delete(asset("/a.bin", 1));
+        }
+        try (final var store = openStore(1024 * 1024)) {
+            assertThat(store.read(ROOT_ID, FileAsset.generateId(URI.create("/a.bin")))).isNull();
+            assertThat(store.read(ROOT_ID, FileAsset.generateId(URI.create("/b.bin"))).getSize()).isEqualTo(2L);
+        }
+    }
+
+    @Test
+    void truncatesTornRecordOnRecovery() throws IOException {
+        try (final var store = openStore(1024 * 1024)) {
+            store.write(asset("/a.bin", 1));
+            store.write(asset("/b.bin", 2));
+        }
+        final var segment = listSegments().get(0);
+        final var size = Files.size(segment);
+        try (final var channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.truncate(size - 3);
+        }
+        try (final var store = openStore(1024 * 1024)) {
+            assertThat(store.read(ROOT_ID, FileAsset.generateId(URI.create("/a.bin")))).isNotNull();
+            assertThat(store.read(ROOT_ID, FileAsset.generateId(URI.create("/b.bin")))).isNull();
+            store.write(asset("/c.bin", 3));
+        }
+        try (final var store = openStore(1024 * 1024)) {
+            assertThat(store.readAll().map(FileAsset::getUri).collectList().block())
+                .containsExactly(URI.create("/a.bin"), URI.create("/c.bin"));
+        }
+    }
+
+    @Test
+    void compactsSealedSegments() throws IOException {
+        try (final var store = openStore(512)) {
+            for (var round = 0; round < 5; round++) {
+                for (var i = 0; i < 10; i++) {
+                    store.write(asset("/file-" + i + ".bin", round));
+                }
+            }
+            final var segmentsBefore = listSegments().size();
+            store.compact();
+
+            assertThat(listSegments().size()).isLessThan(segmentsBefore);
+            assertThat(store.readAll().collectList().block())
+                .hasSize(10)
+                .allSatisfy(asset -> assertThat(asset.getSize()).isEqualTo(4L));
+        }
+        try (final var store = openStore(512)) {
+            assertThat(store.readAll().collectList().block()).hasSize(10);
+        }
+    }
+
+    @Test
+    void readsAllRecordsOfRootInWriteOrder() throws IOException {
+        final var otherRoot = UUID.randomUUID();
+        try (final var store = openStore(2048)) {
+            for (var i = 0; i < 50; i++) {
+                store.write(asset("/file-" + i + ".bin", i));
+                final var other = asset("/other-" + i + ".bin", i);
+                other.setRootId(otherRoot);
+                store.write(other);
+            }
+            store.delete(asset("/file-3.bin", 3));
+            store.flush();
+            // Still batched, and thus not in the segment files yet
+            store.write(asset("/file-50.bin", 50));
+
+            assertThat(store.readAll(ROOT_ID).map(FileAsset::getUri).collectList().block())
+                .hasSize(50)
+                .doesNotContain(URI.create("/file-3.bin"))
+                .startsWith(URI.create("/file-0.bin"), URI.create("/file-1.bin"), URI.create("/file-2.bin"))
+                .endsWith(URI.create("/file-49.bin"), URI.create("/file-50.bin"));
+            assertThat(store.readAll(otherRoot).collectList().block()).hasSize(50);
+        }
+        assertThat(listSegments()).hasSizeGreaterThan(1);
+    }
+
+    @Test
+    void compactsOnceAtATime() throws IOException, InterruptedException {
+        try (final var store = openStore(512)) {
+            for (var round = 0; round < 5; round++) {
+                for (var i = 0; i < 10; i++) {
+                    store.write(asset("/file-" + i + ".bin", round));
+                }
+            }
+            final var failures = new ConcurrentLinkedQueue<Throwable>();
+            final var threads = new Thread[4];
+            for (var i = 0; i < threads.length; i++) {
+                threads[i] = new Thread(() -> {
+                    try {
+                        store.compact();
+                    } catch (IOException | RuntimeException ex) {
+                        failures.add(ex);
+                    }
+                });
+                threads[i].start();
+            }
+            for (final var thread : threads) {
+                thread.join();
+            }
+
+            assertThat(failures).isEmpty();
+            assertThat(store.readAll().collectList().block()).hasSize(10);
+        }
+        try (final var store = openStore(512)) {
+            assertThat(store.readAll().collectList().block())
+                .hasSize(10)
+                .allSatisfy(asset -> assertThat(asset.getSize()).isEqualTo(4L));
+        }
+    }
+
+    private LogStructuredMetaDataStore openStore(long segmentSize) throws IOException {
+        return new LogStructuredMetaDataStore(directory, objectMapper, segmentSize, Duration.ofHours(1));
+    }
+
+    private List<Path> listSegments() throws IOException {
+        try (final var paths = Files.list(directory)) {
+            return paths.filter(path -> path.toString().endsWith(".log")).sorted().collect(Collectors.toList());
+        }
+    }
+
+    private static BinaryFileAsset asset(String uri, long size) {
+        final var asset = new BinaryFileAsset();
+        asset.setUri(URI.create(uri));
+        asset.setId(FileAsset.generateId(asset.getUri()));
+        asset.setRootId(ROOT_ID);
+        asset.setSize(size);
+        asset.setSha256("digest-" + size);
+        return asset;
+    }
+}